@@ -0,0 +1,105 @@
+package logic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import logic.model.Tarefa;
+import logic.util.EscritorJson;
+import logic.util.JsonInvalidoException;
+import logic.util.LeitorJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The JSON helpers of Server. Lives in package 'logic' because they are package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerBench {
+
+    private byte[] corpo;
+    private byte[] corpoEscapado;
+    private byte[] corpoInvalido;
+    private Tarefa tarefa;
+    private String texto;
+    private List<Tarefa> listagem;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        // Body of POST /api/tarefas as sent by view/script.js
+        corpo = utf8("{\"descricao\":\"Comprar pão, leite e café\",\"dia\":15,\"mes\":6,\"ano\":2026}");
+        corpoEscapado = utf8("{\"descricao\":\"Ler \\\"O Cortiço\\\"\\nem C:\\\\livros \\u2014 cap. 3\",\"dia\":15,\"mes\":6,\"ano\":2026}");
+        // Broken near the end, so the whole body is scanned before it is rejected
+        corpoInvalido = utf8("{\"descricao\":\"Comprar pão, leite e café\",\"dia\":15,\"mes\":6,\"ano\":2026,}");
+        tarefa = new Tarefa(4821, 12, "Revisar o \"relatório\" C:\\docs antes da reunião", 15, 6, 2026);
+        texto = tarefa.descricao;
+
+        // A heavy dashboard: one user's 1000 tasks
+        listagem = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            listagem.add(new Tarefa(i + 1, 12, "Tarefa número " + (i + 1) + " com \"aspas\"", 1 + i % 28, 1 + i % 12, 2026));
+        }
+    }
+
+    @Benchmark
+    public LeitorJson.Campos lerTarefa() throws JsonInvalidoException {
+        // Body of one POST /api/tarefas, parsed into the fields handleTarefas uses
+        return Server.JSON_TAREFA.ler(corpo);
+    }
+
+    @Benchmark
+    public LeitorJson.Campos lerTarefaEscapada() throws JsonInvalidoException {
+        return Server.JSON_TAREFA.ler(corpoEscapado);
+    }
+
+    @Benchmark
+    public Object rejeitarInvalido() {
+        try {
+            return Server.JSON_TAREFA.ler(corpoInvalido);
+        } catch (JsonInvalidoException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public void escreverTarefa() throws IOException {
+        try (EscritorJson json = new EscritorJson(OutputStream.nullOutputStream())) {
+            Server.escreverTarefa(json, tarefa);
+        }
+    }
+
+    @Benchmark
+    public void escreverListagem() throws IOException {
+        // Same calls as the GET /api/tarefas handler, minus the socket
+        try (EscritorJson json = new EscritorJson(OutputStream.nullOutputStream())) {
+            json.inicioLista();
+            for (Tarefa t : listagem) Server.escreverTarefa(json, t);
+            json.fimLista();
+        }
+    }
+
+    @Benchmark
+    public String esc() {
+        return Server.esc(texto);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package logic.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import logic.dao.CampoTexto;
+import logic.dao.CodecTarefa;
+import logic.dao.CodecUsuario;
+import logic.dao.ConsultaTarefas;
+import logic.dao.TarefaDAO;
+import logic.dao.UsuarioDAO;
+import logic.model.Tarefa;
+import logic.model.Usuario;
+import logic.util.BinInput;
+import logic.util.BinOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Record decoding: the buffer codecs used by the DAOs (v2 records with inline texts), and
+ * BinInput.readString on a small file, the v1 way of reading a fixed-length string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBench {
+
+    private ByteBuffer tarefa;
+    private ByteBuffer usuario;
+    private File arquivo;
+    private BinInput in;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        // Every text fits inline, so decoding never needs a heap
+        tarefa = ByteBuffer.allocate(TarefaDAO.TAM_REGISTRO);
+        CodecTarefa.codificar(tarefa, 0, 42, 7, CodecTarefa.flags(false, true), ConsultaTarefas.chaveData(15, 6, 2026));
+        CampoTexto.escrever(tarefa, CodecTarefa.OFF_DESC, TarefaDAO.TAM_CAMPO_DESC, CampoTexto.utf8("Comprar pão, leite e café"));
+
+        usuario = ByteBuffer.allocate(UsuarioDAO.TAM_REGISTRO);
+        CodecUsuario.codificar(usuario, 0, 7, "Maria Brito", "maria@example.com", UsuarioDAO.xor("segredo"), null, null);
+
+        arquivo = File.createTempFile("codec-bench", ".bin");
+        BinOutput out = new BinOutput(arquivo.getPath(), false);
+        out.writeString("Comprar pão, leite e café", TarefaDAO.TAM_DESC);
+        out.close();
+        in = new BinInput(arquivo.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws IOException {
+        in.close();
+        arquivo.delete();
+    }
+
+    @Benchmark
+    public Tarefa decodificarTarefa() throws IOException {
+        return CodecTarefa.decodificar(tarefa, 0, null);
+    }
+
+    @Benchmark
+    public int filtrarTarefa() {
+        // What listings and index rebuilds decode for records they skip
+        return CodecTarefa.ativo(tarefa, 0) ? CodecTarefa.idUsuario(tarefa, 0) : -1;
+    }
+
+    @Benchmark
+    public Usuario decodificarUsuario() throws IOException {
+        return CodecUsuario.decodificar(usuario, 0, null);
+    }
+
+    @Benchmark
+    public String binInputReadString() throws IOException {
+        in.seek(0);
+        return in.readString(TarefaDAO.TAM_DESC);
+    }
+}
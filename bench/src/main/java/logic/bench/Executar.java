@@ -0,0 +1,32 @@
+package logic.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar: the usual JMH command line, plus the gc profiler
+ * (allocation rate per operation) and a JSON result file by default, so runs can be compared
+ * release to release.
+ */
+public class Executar {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions linha = new CommandLineOptions(args);
+        if (linha.shouldHelp() || linha.shouldList() || linha.shouldListProfilers()
+                || linha.shouldListResultFormats() || linha.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder opcoes = new OptionsBuilder().parent(linha).addProfiler(GCProfiler.class);
+        if (!linha.getResultFormat().hasValue()) {
+            opcoes.resultFormat(ResultFormatType.JSON);
+            if (!linha.getResult().hasValue()) opcoes.result("jmh-result.json");
+        }
+        new Runner(opcoes.build()).run();
+    }
+}
@@ -0,0 +1,164 @@
+package logic.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import logic.dao.Cabecalho;
+import logic.dao.CampoTexto;
+import logic.dao.CodecTarefa;
+import logic.dao.CodecUsuario;
+import logic.dao.ConsultaTarefas;
+import logic.dao.Credenciais;
+import logic.dao.TarefaDAO;
+import logic.dao.UsuarioDAO;
+
+/**
+ * Generates tarefas.bin / usuarios.bin fixtures in ./files for the DAO benchmarks.
+ * Records are written straight in the on-disk layout (much faster than going through the
+ * DAOs); the sidecar indexes are left to be rebuilt by inicializar().
+ *
+ * A fixture holds 'registros' tasks and 'registros' users. Tasks are spread round-robin over
+ * the first registros / TAREFAS_POR_USUARIO users, every user has the password SENHA (all
+ * sharing one credential, stored once in the heap). The size is recorded in files/.fixture so
+ * forks reuse an existing fixture, and a files/ directory holding real data (no marker) is
+ * never touched.
+ *
+ * Also runnable on its own: java -cp target/benchmarks.jar logic.bench.Fixtures 1000000
+ */
+public class Fixtures {
+
+    public static final int TAREFAS_POR_USUARIO = 100;
+    public static final String SENHA = "bench123";
+
+    private static final String DIRETORIO = "files";
+    private static final String MARCADOR = DIRETORIO + "/.fixture";
+    private static final int LOTE = 4096; // Records per write
+    // Bumped when the generated records change, so fixtures of an older layout are regenerated
+    private static final int VERSAO = 2;
+
+    /**
+     * Makes sure ./files holds a fixture of the given size, generating it if needed.
+     */
+    public static synchronized void preparar(int registros) throws IOException {
+        File marcador = new File(MARCADOR);
+        if (marcador.exists()) {
+            String atual = new String(Files.readAllBytes(marcador.toPath()), StandardCharsets.UTF_8).trim();
+            if (atual.equals(marca(registros))) return;
+        } else if (new File(TarefaDAO.ARQUIVO).exists() || new File(UsuarioDAO.ARQUIVO).exists()) {
+            throw new IllegalStateException(new File(DIRETORIO).getAbsolutePath()
+                + " holds data that is not a benchmark fixture; run the benchmarks from another directory (e.g. bench/)");
+        }
+
+        new File(DIRETORIO).mkdirs();
+        // Marks the directory as a fixture first, so an interrupted generation is redone next time
+        Files.write(marcador.toPath(), "gerando".getBytes(StandardCharsets.UTF_8));
+        // Indexes, logs, change feeds and heaps of a previous fixture would not match the new files
+        File[] antigos = new File(DIRETORIO).listFiles((d, nome) ->
+            nome.endsWith(".idx") || nome.endsWith(".wal") || nome.endsWith(".chg") || nome.endsWith(".heap"));
+        if (antigos != null) for (File f : antigos) f.delete();
+
+        long inicio = System.nanoTime();
+        gerarTarefas(registros);
+        gerarUsuarios(registros);
+        Files.write(marcador.toPath(), marca(registros).getBytes(StandardCharsets.UTF_8));
+        System.out.printf("# Fixture of %d records generated in %.1f s%n", registros, (System.nanoTime() - inicio) / 1e9);
+    }
+
+    private static String marca(int registros) {
+        return VERSAO + ":" + registros;
+    }
+
+    /**
+     * Forgets the current fixture (after a benchmark that changed it), so the next trial regenerates it.
+     */
+    public static synchronized void invalidar() throws IOException {
+        // The marker stays (the directory still holds a fixture) but no longer matches any size
+        if (new File(MARCADOR).exists()) Files.write(Paths.get(MARCADOR), "alterado".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Number of users that own tasks in a fixture of 'registros' records.
+     */
+    public static int donos(int registros) {
+        return Math.max(1, registros / TAREFAS_POR_USUARIO);
+    }
+
+    public static String email(int idUsuario) {
+        return "usuario" + idUsuario + "@bench.local";
+    }
+
+    private static void gerarTarefas(int n) throws IOException {
+        int donos = donos(n);
+        try (FileChannel canal = abrir(TarefaDAO.ARQUIVO)) {
+            escreverCabecalho(canal, n);
+            ByteBuffer b = ByteBuffer.allocate(LOTE * TarefaDAO.TAM_REGISTRO);
+            for (int i = 0; i < n; i++) {
+                int id = i + 1;
+                int base = b.position();
+                CodecTarefa.codificar(b, base, id, 1 + i % donos, CodecTarefa.flags(i % 3 == 0, true),
+                    ConsultaTarefas.chaveData(1 + i % 28, 1 + i % 12, 2026));
+                // Short enough to always fit inline, so no heap is needed
+                CampoTexto.escrever(b, base + CodecTarefa.OFF_DESC, TarefaDAO.TAM_CAMPO_DESC,
+                    CampoTexto.utf8("Tarefa de benchmark " + id));
+                b.position(base + TarefaDAO.TAM_REGISTRO);
+                if (!b.hasRemaining()) descarregar(canal, b);
+            }
+            descarregar(canal, b);
+        }
+    }
+
+    private static void gerarUsuarios(int n) throws IOException {
+        // Too long to fit inline: every record points at the same text at the start of the heap
+        byte[] credencial = CampoTexto.utf8(Credenciais.gerar(SENHA));
+        try (FileChannel heap = abrir(UsuarioDAO.ARQUIVO_HEAP)) {
+            descarregar(heap, ByteBuffer.allocate(credencial.length).put(credencial));
+        }
+        try (FileChannel canal = abrir(UsuarioDAO.ARQUIVO)) {
+            escreverCabecalho(canal, n);
+            ByteBuffer b = ByteBuffer.allocate(LOTE * UsuarioDAO.TAM_REGISTRO);
+            for (int i = 0; i < n; i++) {
+                int id = i + 1;
+                int base = b.position();
+                CodecUsuario.codificar(b, base, id, "Usuario " + id, email(id), "", null, null);
+                CampoTexto.escreverReferencia(b, base + CodecUsuario.OFF_SENHA, UsuarioDAO.TAM_CAMPO_SENHA, 0,
+                    credencial.length);
+                b.position(base + UsuarioDAO.TAM_REGISTRO);
+                if (!b.hasRemaining()) descarregar(canal, b);
+            }
+            descarregar(canal, b);
+        }
+    }
+
+    private static FileChannel abrir(String arquivo) throws IOException {
+        return FileChannel.open(Paths.get(arquivo), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Header of a fully packed file: Total, LastID and ActiveCount are all 'n'.
+     */
+    private static void escreverCabecalho(FileChannel canal, int n) throws IOException {
+        ByteBuffer cab = ByteBuffer.allocate(Cabecalho.TAMANHO);
+        cab.putInt(Cabecalho.MAGICO).putInt(Cabecalho.VERSAO).putInt(n).putInt(n).putInt(n).flip();
+        while (cab.hasRemaining()) canal.write(cab);
+    }
+
+    private static void descarregar(FileChannel canal, ByteBuffer b) throws IOException {
+        b.flip();
+        while (b.hasRemaining()) canal.write(b);
+        b.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Uso: Fixtures <registros>");
+            return;
+        }
+        preparar(Integer.parseInt(args[0]));
+    }
+}
@@ -0,0 +1,130 @@
+package logic.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import logic.dao.ConsultaTarefas;
+import logic.dao.OperacaoTarefa;
+import logic.dao.Pagina;
+import logic.dao.TarefaDAO;
+import logic.model.Tarefa;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * TarefaDAO operations against a generated fixture (see Fixtures).
+ * Each benchmark runs in its own fork, so the DAO statics (indexes, caches) start cold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TarefaDAOBench {
+
+    // Operations per executarLote call in the batch benchmark
+    private static final int LOTE = 100;
+    private static final ConsultaTarefas PRIMEIRA_PAGINA = new ConsultaTarefas(
+        ConsultaTarefas.Status.PENDENTES, ConsultaTarefas.DESDE_SEMPRE, ConsultaTarefas.PARA_SEMPRE,
+        ConsultaTarefas.Ordem.ID, 50, 0);
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int registros;
+
+    // false runs with both record caches disabled, to measure the file path
+    @Param({ "true", "false" })
+    public boolean cache;
+
+    private int donos;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        // Must happen before TarefaDAO is initialized, which is when the caches are sized
+        if (!cache) {
+            System.setProperty("todolist.cache.tarefas", "0");
+            System.setProperty("todolist.cache.listas", "0");
+        }
+        Fixtures.preparar(registros);
+        TarefaDAO.inicializar();
+        donos = Fixtures.donos(registros);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar(BenchmarkParams params) throws IOException {
+        // Inserts change the record count, so the fixture must be regenerated for the next trial
+        if (params.getBenchmark().endsWith(".inserir")) Fixtures.invalidar();
+    }
+
+    private int idAleatorio() {
+        return ThreadLocalRandom.current().nextInt(1, registros + 1);
+    }
+
+    @Benchmark
+    public Tarefa buscarPorId() throws IOException {
+        return TarefaDAO.buscarPorId(idAleatorio());
+    }
+
+    @Benchmark
+    public List<Tarefa> listarPorUsuario() throws IOException {
+        return TarefaDAO.listarPorUsuario(ThreadLocalRandom.current().nextInt(1, donos + 1));
+    }
+
+    /**
+     * First 50 pending tasks of a user, in id order.
+     */
+    @Benchmark
+    public Pagina primeiraPagina() throws IOException {
+        return TarefaDAO.consultar(ThreadLocalRandom.current().nextInt(1, donos + 1), PRIMEIRA_PAGINA);
+    }
+
+    /**
+     * First 100 pending tasks of any user due in the next 30 days (the reminder job's query).
+     */
+    @Benchmark
+    public List<Tarefa> proximasDeTodos() throws IOException {
+        return TarefaDAO.proximasDeTodos(30, 100);
+    }
+
+    @Benchmark
+    public boolean marcarConcluida() throws IOException {
+        return TarefaDAO.marcarConcluida(idAleatorio());
+    }
+
+    @Benchmark
+    public Tarefa alternarConcluida() throws IOException {
+        return TarefaDAO.alternarConcluida(idAleatorio());
+    }
+
+    /**
+     * The same work as marcarConcluida, LOTE tasks per call; scores are per task.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public int[] marcarConcluidaEmLote() throws IOException {
+        List<OperacaoTarefa> ops = new ArrayList<>(LOTE);
+        for (int i = 0; i < LOTE; i++) ops.add(OperacaoTarefa.concluir(idAleatorio(), true));
+        return TarefaDAO.executarLote(ops);
+    }
+
+    @Benchmark
+    public int inserir() throws IOException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return TarefaDAO.inserir(r.nextInt(1, donos + 1), "Tarefa inserida pelo benchmark", 15, 6, 2026);
+    }
+}
@@ -0,0 +1,54 @@
+package logic.bench;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import logic.dao.UsuarioDAO;
+import logic.model.Usuario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UsuarioDAO.login against a generated fixture (see Fixtures). A user's first login derives
+ * the password hash; later ones within the cache lifetime are answered from the verification
+ * cache, so the mix depends on how many users the run manages to touch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UsuarioDAOBench {
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int registros;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        Fixtures.preparar(registros);
+        UsuarioDAO.inicializar();
+    }
+
+    @Benchmark
+    public Usuario login() throws IOException {
+        int id = ThreadLocalRandom.current().nextInt(1, registros + 1);
+        return UsuarioDAO.login(Fixtures.email(id), Fixtures.SENHA);
+    }
+
+    @Benchmark
+    public Usuario loginSenhaErrada() throws IOException {
+        int id = ThreadLocalRandom.current().nextInt(1, registros + 1);
+        return UsuarioDAO.login(Fixtures.email(id), "errada");
+    }
+}
@@ -1,85 +1,255 @@
 package logic;
 
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import logic.dao.Alteracoes;
+import logic.dao.ConsultaTarefas;
+import logic.dao.CredenciaisOcupadasException;
+import logic.dao.OperacaoTarefa;
+import logic.dao.Pagina;
 import logic.dao.TarefaDAO;
 import logic.dao.UsuarioDAO;
 import logic.model.Tarefa;
 import logic.model.Usuario;
+import logic.util.CacheEstaticos;
+import logic.util.EscritorJson;
+import logic.util.JsonInvalidoException;
+import logic.util.LeitorJson;
+import logic.util.Metricas;
+import logic.util.Sessoes;
 
 /**
- * Backend Server using Java's built-in HttpServer.
+ * Backend Server using Java's built-in HttpServer, or the NIO front end with -Dtodolist.http=nio.
  * Routes HTTP requests to the appropriate DAO (Data Access Object) logic.
  */
 public class Server {
 
     private static final int PORT = 8080;
+    private static final int MAX_PAGINA = 1000; // Largest 'limit' of a task listing
+    private static final int MAX_DIAS = 366;    // Farthest look-ahead of /api/tarefas/vencimentos
+
+    // Bearer token of /api/admin/stats; the endpoint answers 404 unless it is set (-Dtodolist.admin.token)
+    private static final String TOKEN_ADMIN = System.getProperty("todolist.admin.token");
+    // How long a stats result is reused before scanning again (-Dtodolist.admin.cache.segundos, default 10)
+    private static final long VALIDADE_STATS_NANOS =
+        TimeUnit.SECONDS.toNanos(Long.getLong("todolist.admin.cache.segundos", 10));
+
+    /**
+     * Result of the scans behind /api/admin/stats, reused for a few seconds.
+     */
+    private static class Estatisticas {
+        final int usuarios;
+        final long tarefas, atrasadas;
+        final int usuariosComTarefas;
+        // The MAX_PAGINA users with the most tasks, most first, then lowest id
+        final List<Map.Entry<Integer, Long>> maiores;
+        final long ms;
+        final long expira;
+
+        Estatisticas(int usuarios, long tarefas, long atrasadas, int usuariosComTarefas,
+                List<Map.Entry<Integer, Long>> maiores, long ms, long expira) {
+            this.usuarios = usuarios;
+            this.tarefas = tarefas;
+            this.atrasadas = atrasadas;
+            this.usuariosComTarefas = usuariosComTarefas;
+            this.maiores = maiores;
+            this.ms = ms;
+            this.expira = expira;
+        }
+    }
+
+    private static Estatisticas estatisticas;
+
+    // The web client, served from memory (-Dtodolist.estaticos.recarregar=true reloads edited files)
+    private static CacheEstaticos estaticos;
+    // Logged-in users; task endpoints take the user from here (-Dtodolist.sessao.minutos, default 30)
+    private static final Sessoes sessoes = new Sessoes(Long.getLong("todolist.sessao.minutos", 30));
+    // Handler of each context path, served by whichever front end is chosen
+    private static final Map<String, HttpHandler> rotas = new LinkedHashMap<>();
+
+    // Fields read from each request body
+    static final LeitorJson JSON_LOGIN    = new LeitorJson().texto("email").texto("senha");
+    static final LeitorJson JSON_REGISTRO = new LeitorJson().texto("nome").texto("email").texto("senha");
+    static final LeitorJson JSON_TAREFA   = new LeitorJson()
+        .inteiroOpcional("idUsuario").texto("descricao").inteiro("dia").inteiro("mes").inteiro("ano");
+    static final LeitorJson JSON_ID       = new LeitorJson().inteiro("id");
+    static final LeitorJson JSON_EDICAO   = new LeitorJson().inteiro("id").texto("descricao");
+    static final LeitorJson JSON_LOTE     = new LeitorJson().lista("operacoes", new LeitorJson()
+        .texto("op").inteiroOpcional("id").inteiroOpcional("idUsuario").texto("descricao").logico("concluida")
+        .inteiroOpcional("dia").inteiroOpcional("mes").inteiroOpcional("ano"));
 
     public static void main(String[] args) throws IOException {
         // Ensure the directory for binary files exists
         new File("files").mkdirs();
 
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        // Load (or rebuild) the sidecar indexes before accepting requests
+        TarefaDAO.inicializar();
+        UsuarioDAO.inicializar();
+
+        estaticos = new CacheEstaticos("view", "/view");
+        if (Boolean.getBoolean("todolist.estaticos.recarregar")) estaticos.observar();
+        sessoes.iniciarLimpeza();
 
         // API Endpoint Mapping - connects URLs to Java methods
-        server.createContext("/api/login",           Server::handleLogin);
-        server.createContext("/api/register",        Server::handleRegister);
-        server.createContext("/api/tarefas/concluir",Server::handleConcluir);
-        server.createContext("/api/tarefas/editar",  Server::handleEditar);
-        server.createContext("/api/tarefas/deletar", Server::handleDeletar);
-        server.createContext("/api/tarefas",         Server::handleTarefas);
+        rota("/api/login",           Server::handleLogin);
+        rota("/api/register",        Server::handleRegister);
+        rota("/api/logout",          Server::handleLogout);
+        rota("/api/tarefas/concluir",Server::handleConcluir);
+        rota("/api/tarefas/editar",  Server::handleEditar);
+        rota("/api/tarefas/deletar", Server::handleDeletar);
+        rota("/api/tarefas/batch",   Server::handleBatch);
+        rota("/api/tarefas/changes", Server::handleChanges);
+        rota("/api/tarefas/vencimentos", Server::handleVencimentos);
+        rota("/api/tarefas",         Server::handleTarefas);
+        rota("/api/admin/stats",     Server::handleStats);
+        rota("/api/metrics",         Server::handleMetrics);
 
         // Fallback context for serving index.html, styles, and scripts
-        server.createContext("/",                    Server::handleStatic);
+        rota("/",                    Server::handleStatic);
+
+        // Requests run concurrently; the DAOs handle their own locking
+        ExecutorService executor = criarExecutor();
+        String frente = System.getProperty("todolist.http", "jdk");
+        if (frente.equals("nio")) {
+            new ServidorNio(PORT, rotas, executor).iniciar();
+        } else if (frente.equals("jdk")) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+            for (Map.Entry<String, HttpHandler> r : rotas.entrySet()) server.createContext(r.getKey(), r.getValue());
+            server.setExecutor(executor);
+            server.start();
+        } else {
+            throw new IllegalArgumentException("todolist.http deve ser jdk ou nio: " + frente);
+        }
+        System.out.println("Servidor (" + frente + ") rodando em http://localhost:" + PORT);
+    }
+
+    /**
+     * Registers a route whose requests are counted (by status class) and timed.
+     * The series are created here, once per route, so a request only adds to them.
+     */
+    private static void rota(String caminho, HttpHandler handler) {
+        String rotulo = Metricas.rotulos("rota", caminho);
+        Metricas.Histograma tempo = Metricas.duracao("todolist_http_duracao_segundos",
+            "Time spent handling HTTP requests, until the response body is closed", rotulo);
+        Metricas.Contador[] porClasse = new Metricas.Contador[5];
+        for (int i = 0; i < 5; i++) {
+            porClasse[i] = Metricas.contador("todolist_http_requisicoes_total", "HTTP requests by response status class",
+                Metricas.rotulos("rota", caminho, "classe", (i + 1) + "xx"));
+        }
+        rotas.put(caminho, ex -> {
+            long inicio = System.nanoTime();
+            boolean falhou = true;
+            try {
+                handler.handle(ex);
+                falhou = false;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Erro em " + caminho + ": " + e);
+                throw e;
+            } finally {
+                tempo.registrarDesde(inicio);
+                int classe = ex.getResponseCode() / 100;
+                // A handler that threw before responding counts as a server error
+                if (classe < 1 || classe > 5) classe = falhou ? 5 : 2;
+                porClasse[classe - 1].incrementar();
+            }
+        });
+    }
 
-        server.setExecutor(null); // Uses a default implementation
-        server.start();
-        System.out.println("Servidor rodando em http://localhost:" + PORT);
+    /**
+     * One virtual thread per request when the JDK has them (21+),
+     * otherwise a fixed pool sized to the machine.
+     */
+    private static ExecutorService criarExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            return Executors.newFixedThreadPool(threads);
+        }
     }
 
     /**
-     * Serves static files (HTML, CSS, JS). 
-     * Translates URL paths to local file system paths.
+     * Serves the web client (HTML, CSS, JS) from memory. Files are revalidated on every use
+     * (Cache-Control: no-cache) and answered with 304 while their ETag matches; the gzip
+     * variant is sent to clients whose Accept-Encoding admits it.
      */
     private static void handleStatic(HttpExchange ex) throws IOException {
+        String metodo = ex.getRequestMethod();
+        boolean head = metodo.equalsIgnoreCase("HEAD");
+        if (!head && !metodo.equalsIgnoreCase("GET")) {
+            ex.getResponseHeaders().set("Allow", "GET, HEAD");
+            ex.sendResponseHeaders(405, -1);
+            ex.close();
+            return;
+        }
+
         String path = ex.getRequestURI().getPath();
-        if (path.equals("/")) path = "/index.html";
+        if (path.equals("/") || path.equals("/view") || path.equals("/view/")) path = "/view/index.html";
 
-        File file = new File("." + path);
-        if (!file.exists() || file.isDirectory()) {
+        CacheEstaticos.Arquivo arquivo = estaticos.buscar(path);
+        if (arquivo == null) {
             byte[] body = "404 Not Found".getBytes(StandardCharsets.UTF_8);
-            ex.sendResponseHeaders(404, body.length);
-            try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+            ex.sendResponseHeaders(404, head ? -1 : body.length);
+            try (OutputStream os = ex.getResponseBody()) { if (!head) os.write(body); }
             return;
         }
 
-        // Set MIME type so the browser knows how to process the file
-        String mime = "text/plain";
-        if (path.endsWith(".html")) mime = "text/html; charset=UTF-8";
-        else if (path.endsWith(".css")) mime = "text/css";
-        else if (path.endsWith(".js"))  mime = "application/javascript";
+        boolean gzip = arquivo.gzip != null
+            && CacheEstaticos.aceitaGzip(ex.getRequestHeaders().getFirst("Accept-Encoding"));
+        String etag = gzip ? arquivo.etagGzip : arquivo.etag;
+        ex.getResponseHeaders().set("ETag", etag);
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        // Caches must keep the plain and gzip variants apart
+        if (arquivo.gzip != null) ex.getResponseHeaders().set("Vary", "Accept-Encoding");
+
+        if (CacheEstaticos.coincide(ex.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
 
-        byte[] bytes = Files.readAllBytes(file.toPath());
-        ex.getResponseHeaders().set("Content-Type", mime);
+        byte[] bytes = gzip ? arquivo.gzip : arquivo.corpo;
+        ex.getResponseHeaders().set("Content-Type", arquivo.tipo);
+        if (gzip) ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        if (head) {
+            ex.getResponseHeaders().set("Content-Length", Integer.toString(bytes.length));
+            ex.sendResponseHeaders(200, -1);
+            ex.close();
+            return;
+        }
         ex.sendResponseHeaders(200, bytes.length);
+        if (ex instanceof ServidorNio.Troca) {
+            // Written to the socket straight from the cache's direct buffer
+            ((ServidorNio.Troca) ex).enviar(arquivo.direto(gzip));
+            return;
+        }
         try (OutputStream os = ex.getResponseBody()) { os.write(bytes); }
     }
 
     /**
-     * Authenticates a user.
+     * Authenticates a user and opens a session; its token goes in the Authorization header of later requests.
      */
     private static void handleLogin(HttpExchange ex) throws IOException {
         if (handleOptions(ex)) return;
         if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
 
-        String body = readBody(ex);
-        String email = parseJson(body, "email");
-        String senha = parseJson(body, "senha");
+        LeitorJson.Campos body = readBody(ex, JSON_LOGIN);
+        if (body == null) return;
+        String email = body.texto("email");
+        String senha = body.texto("senha");
 
         try {
             Usuario u = UsuarioDAO.login(email, senha);
@@ -87,26 +257,40 @@ public class Server {
                 send(ex, 401, "{\"erro\":\"email ou senha incorretos.\"}");
             } else {
                 send(ex, 200, String.format(
-                    "{\"id\":%d,\"nome\":\"%s\",\"email\":\"%s\"}",
-                    u.id, esc(u.nome), esc(u.email)
+                    "{\"id\":%d,\"nome\":\"%s\",\"email\":\"%s\",\"token\":\"%s\"}",
+                    u.id, esc(u.nome), esc(u.email), sessoes.criar(u.id)
                 ));
             }
+        } catch (CredenciaisOcupadasException e) {
+            sendOcupado(ex, e);
         } catch (Exception e) {
             send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
         }
     }
 
     /**
-     * Registers a new user account.
+     * Ends the session of the request's token.
+     */
+    private static void handleLogout(HttpExchange ex) throws IOException {
+        if (handleOptions(ex)) return;
+        if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
+
+        sessoes.encerrar(token(ex));
+        send(ex, 200, "{\"ok\":true}");
+    }
+
+    /**
+     * Registers a new user account and opens its session.
      */
     private static void handleRegister(HttpExchange ex) throws IOException {
         if (handleOptions(ex)) return;
         if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
 
-        String body = readBody(ex);
-        String nome  = parseJson(body, "nome");
-        String email = parseJson(body, "email");
-        String senha = parseJson(body, "senha");
+        LeitorJson.Campos body = readBody(ex, JSON_REGISTRO);
+        if (body == null) return;
+        String nome  = body.texto("nome");
+        String email = body.texto("email");
+        String senha = body.texto("senha");
 
         try {
             int id = UsuarioDAO.inserir(nome, email, senha);
@@ -114,17 +298,20 @@ public class Server {
                 send(ex, 409, "{\"erro\":\"email já cadastrado.\"}");
             } else {
                 send(ex, 200, String.format(
-                    "{\"id\":%d,\"nome\":\"%s\",\"email\":\"%s\"}",
-                    id, esc(nome), esc(email)
+                    "{\"id\":%d,\"nome\":\"%s\",\"email\":\"%s\",\"token\":\"%s\"}",
+                    id, esc(nome), esc(email), sessoes.criar(id)
                 ));
             }
+        } catch (CredenciaisOcupadasException e) {
+            sendOcupado(ex, e);
         } catch (Exception e) {
             send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
         }
     }
 
     /**
-     * GET: Lists tasks for a user.
+     * GET: Lists the session user's tasks, optionally filtered, sorted and paged (see parseConsulta).
+     * When a page is not the last one, the cursor of the next is sent in the X-Proximo header.
      * POST: Creates a new task.
      */
     private static void handleTarefas(HttpExchange ex) throws IOException {
@@ -132,33 +319,60 @@ public class Server {
 
         if (ex.getRequestMethod().equalsIgnoreCase("GET")) {
             String query = ex.getRequestURI().getQuery();
-            int idUsuario = parseQueryInt(query, "idUsuario");
+            int idUsuario = usuarioDaSessao(ex, parseQuery(query, "idUsuario"));
+            if (idUsuario == Sessoes.SEM_SESSAO) return;
+            ConsultaTarefas consulta;
+            try {
+                consulta = parseConsulta(query);
+            } catch (IllegalArgumentException e) {
+                send(ex, 400, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+                return;
+            }
 
+            List<Tarefa> lista;
             try {
-                List<Tarefa> lista = TarefaDAO.listarPorUsuario(idUsuario);
-                StringBuilder sb = new StringBuilder("[");
-                for (int i = 0; i < lista.size(); i++) {
-                    if (i > 0) sb.append(",");
-                    sb.append(tarefaToJson(lista.get(i)));
+                if (consulta == null) {
+                    lista = TarefaDAO.listarPorUsuario(idUsuario);
+                } else {
+                    Pagina p = TarefaDAO.consultar(idUsuario, consulta);
+                    lista = p.tarefas;
+                    if (p.proximo != 0) {
+                        ex.getResponseHeaders().set("X-Proximo", Long.toString(p.proximo));
+                        ex.getResponseHeaders().set("Access-Control-Expose-Headers", "X-Proximo");
+                    }
                 }
-                sb.append("]");
-                send(ex, 200, sb.toString());
             } catch (Exception e) {
                 send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+                return;
+            }
+            // Streamed as UTF-8 straight into the response, chunk by chunk
+            startJson(ex, 200);
+            try (EscritorJson json = new EscritorJson(ex.getResponseBody())) {
+                json.inicioLista();
+                for (Tarefa t : lista) escreverTarefa(json, t);
+                json.fimLista();
             }
 
         } else if (ex.getRequestMethod().equalsIgnoreCase("POST")) {
-            String body      = readBody(ex);
-            int    idUsuario = Integer.parseInt(parseJson(body, "idUsuario"));
-            String descricao = parseJson(body, "descricao");
-            int    dia       = Integer.parseInt(parseJson(body, "dia"));
-            int    mes       = Integer.parseInt(parseJson(body, "mes"));
-            int    ano       = Integer.parseInt(parseJson(body, "ano"));
+            int idUsuario = usuarioDaSessao(ex, null);
+            if (idUsuario == Sessoes.SEM_SESSAO) return;
+            LeitorJson.Campos body = readBody(ex, JSON_TAREFA);
+            if (body == null) return;
+            if (body.presente("idUsuario") && body.inteiro("idUsuario") != idUsuario) { sendProibido(ex); return; }
+            String descricao = body.texto("descricao");
+            int    dia       = body.inteiro("dia");
+            int    mes       = body.inteiro("mes");
+            int    ano       = body.inteiro("ano");
 
             try {
                 int id = TarefaDAO.inserir(idUsuario, descricao, dia, mes, ano);
-                Tarefa t = TarefaDAO.buscarPorId(id);
-                send(ex, 200, tarefaToJson(t));
+                Tarefa t = TarefaDAO.buscarPorId(id); // Served by the task cache the insert wrote to
+                // A concurrent delete may have removed it already; answer before the headers go out
+                if (t == null) { send(ex, 404, "{\"erro\":\"tarefa não encontrada.\"}"); return; }
+                startJson(ex, 200);
+                try (EscritorJson json = new EscritorJson(ex.getResponseBody())) {
+                    escreverTarefa(json, t);
+                }
             } catch (Exception e) {
                 send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
             }
@@ -174,14 +388,17 @@ public class Server {
         if (handleOptions(ex)) return;
         if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
 
-        String body = readBody(ex);
-        int id = Integer.parseInt(parseJson(body, "id"));
+        int idUsuario = usuarioDaSessao(ex, null);
+        if (idUsuario == Sessoes.SEM_SESSAO) return;
+        LeitorJson.Campos body = readBody(ex, JSON_ID);
+        if (body == null) return;
+        int id = body.inteiro("id");
 
         try {
-            Tarefa t = TarefaDAO.buscarPorId(id);
+            if (!pertence(id, idUsuario)) { send(ex, 404, "{\"erro\":\"tarefa não encontrada.\"}"); return; }
+            // Read and flip in one locked step instead of a lookup followed by a second one
+            Tarefa t = TarefaDAO.alternarConcluida(id);
             if (t == null) { send(ex, 404, "{\"erro\":\"tarefa não encontrada.\"}"); return; }
-            if (t.concluida) TarefaDAO.desmarcarConcluida(id);
-            else             TarefaDAO.marcarConcluida(id);
             send(ex, 200, "{\"ok\":true}");
         } catch (Exception e) {
             send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
@@ -195,12 +412,15 @@ public class Server {
         if (handleOptions(ex)) return;
         if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
 
-        String body      = readBody(ex);
-        int    id        = Integer.parseInt(parseJson(body, "id"));
-        String descricao = parseJson(body, "descricao");
+        int idUsuario = usuarioDaSessao(ex, null);
+        if (idUsuario == Sessoes.SEM_SESSAO) return;
+        LeitorJson.Campos body = readBody(ex, JSON_EDICAO);
+        if (body == null) return;
+        int    id        = body.inteiro("id");
+        String descricao = body.texto("descricao");
 
         try {
-            boolean ok = TarefaDAO.atualizarDescricao(id, descricao);
+            boolean ok = pertence(id, idUsuario) && TarefaDAO.atualizarDescricao(id, descricao);
             send(ex, ok ? 200 : 404, ok ? "{\"ok\":true}" : "{\"erro\":\"não encontrada.\"}");
         } catch (Exception e) {
             send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
@@ -214,17 +434,286 @@ public class Server {
         if (handleOptions(ex)) return;
         if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
 
-        String body = readBody(ex);
-        int id = Integer.parseInt(parseJson(body, "id"));
+        int idUsuario = usuarioDaSessao(ex, null);
+        if (idUsuario == Sessoes.SEM_SESSAO) return;
+        LeitorJson.Campos body = readBody(ex, JSON_ID);
+        if (body == null) return;
+        int id = body.inteiro("id");
 
         try {
-            boolean ok = TarefaDAO.deletar(id);
+            boolean ok = pertence(id, idUsuario) && TarefaDAO.deletar(id);
             send(ex, ok ? 200 : 404, ok ? "{\"ok\":true}" : "{\"erro\":\"não encontrada.\"}");
         } catch (Exception e) {
             send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
         }
     }
 
+    /**
+     * Incremental sync: the session user's tasks created, changed or deleted after version 'since'.
+     * Response: {"versao":n,"completo":false,"tarefas":[...],"removidas":[ids]}, where 'versao'
+     * is the 'since' of the next call. With "completo":true, 'tarefas' is the whole list and
+     * replaces what the client has (first call with since=0, or a cursor too old to serve).
+     */
+    private static void handleChanges(HttpExchange ex) throws IOException {
+        if (handleOptions(ex)) return;
+        if (!ex.getRequestMethod().equalsIgnoreCase("GET")) { send(ex, 405, ""); return; }
+
+        String query = ex.getRequestURI().getQuery();
+        int idUsuario = usuarioDaSessao(ex, parseQuery(query, "idUsuario"));
+        if (idUsuario == Sessoes.SEM_SESSAO) return;
+        String valor = parseQuery(query, "since");
+        long desde;
+        try {
+            desde = valor == null ? 0 : parseNumero(valor, "since");
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+        if (desde < 0) {
+            send(ex, 400, "{\"erro\":\"since inválido.\"}");
+            return;
+        }
+        Alteracoes a;
+        try {
+            a = TarefaDAO.alteracoesDesde(idUsuario, desde);
+        } catch (Exception e) {
+            send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+        startJson(ex, 200);
+        try (EscritorJson json = new EscritorJson(ex.getResponseBody())) {
+            json.inicioObjeto()
+                .campo("versao", a.versao)
+                .campo("completo", a.completo)
+                .campo("tarefas").inicioLista();
+            for (Tarefa t : a.tarefas) escreverTarefa(json, t);
+            json.fimLista().campo("removidas").inicioLista();
+            for (int id : a.removidas) json.valor(id);
+            json.fimLista().fimObjeto();
+        }
+    }
+
+    /**
+     * Reminders of the session user: pending tasks that are overdue, and those due from today to 'dias'
+     * days ahead (default 7). Response: {"atrasadas":[...],"proximas":[...]}, both by date.
+     */
+    private static void handleVencimentos(HttpExchange ex) throws IOException {
+        if (handleOptions(ex)) return;
+        if (!ex.getRequestMethod().equalsIgnoreCase("GET")) { send(ex, 405, ""); return; }
+
+        String query = ex.getRequestURI().getQuery();
+        int idUsuario = usuarioDaSessao(ex, parseQuery(query, "idUsuario"));
+        if (idUsuario == Sessoes.SEM_SESSAO) return;
+        String valor = parseQuery(query, "dias");
+        long dias;
+        try {
+            dias = valor == null ? 7 : parseNumero(valor, "dias");
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+        if (dias < 0 || dias > MAX_DIAS) {
+            send(ex, 400, "{\"erro\":\"dias deve estar entre 0 e " + MAX_DIAS + ".\"}");
+            return;
+        }
+
+        List<Tarefa> atrasadas, proximas;
+        try {
+            atrasadas = TarefaDAO.atrasadas(idUsuario);
+            proximas = TarefaDAO.proximas(idUsuario, (int) dias);
+        } catch (Exception e) {
+            send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+        startJson(ex, 200);
+        try (EscritorJson json = new EscritorJson(ex.getResponseBody())) {
+            json.inicioObjeto().campo("atrasadas").inicioLista();
+            for (Tarefa t : atrasadas) escreverTarefa(json, t);
+            json.fimLista().campo("proximas").inicioLista();
+            for (Tarefa t : proximas) escreverTarefa(json, t);
+            json.fimLista().fimObjeto();
+        }
+    }
+
+    /**
+     * Operational counters: active users and tasks (from the headers), overdue tasks and the
+     * users with the most tasks (both from parallel full scans, see Varredura).
+     * 'top' (default 10) sets how many users are listed.
+     * Response: {"usuarios":n,"tarefas":n,"atrasadas":n,"usuariosComTarefas":n,
+     * "maiores":[{"idUsuario":1,"tarefas":n}],"ms":n}
+     * Only served with -Dtodolist.admin.token, to requests bearing that token; the scans are
+     * reused for a few seconds, so repeated calls cannot keep every core busy.
+     */
+    private static void handleStats(HttpExchange ex) throws IOException {
+        if (handleOptions(ex)) return;
+        if (TOKEN_ADMIN == null) { send(ex, 404, "{\"erro\":\"não encontrado.\"}"); return; }
+        String token = token(ex);
+        if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                TOKEN_ADMIN.getBytes(StandardCharsets.UTF_8))) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            send(ex, 401, "{\"erro\":\"token de administração inválido.\"}");
+            return;
+        }
+        if (!ex.getRequestMethod().equalsIgnoreCase("GET")) { send(ex, 405, ""); return; }
+
+        String valor = parseQuery(ex.getRequestURI().getQuery(), "top");
+        long top;
+        try {
+            top = valor == null ? 10 : parseNumero(valor, "top");
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+        if (top < 0 || top > MAX_PAGINA) {
+            send(ex, 400, "{\"erro\":\"top deve estar entre 0 e " + MAX_PAGINA + ".\"}");
+            return;
+        }
+
+        Estatisticas s;
+        try {
+            s = estatisticas();
+        } catch (Exception e) {
+            send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+
+        startJson(ex, 200);
+        try (EscritorJson json = new EscritorJson(ex.getResponseBody())) {
+            json.inicioObjeto()
+                .campo("usuarios", s.usuarios)
+                .campo("tarefas", s.tarefas)
+                .campo("atrasadas", s.atrasadas)
+                .campo("usuariosComTarefas", s.usuariosComTarefas)
+                .campo("maiores").inicioLista();
+            for (Map.Entry<Integer, Long> e : s.maiores.subList(0, (int) Math.min(top, s.maiores.size()))) {
+                json.inicioObjeto().campo("idUsuario", e.getKey()).campo("tarefas", e.getValue()).fimObjeto();
+            }
+            json.fimLista().campo("ms", s.ms).fimObjeto();
+        }
+    }
+
+    /**
+     * The last stats result while it is fresh, otherwise a new one. Synchronized, so callers
+     * arriving during a scan wait for its result instead of starting scans of their own.
+     */
+    private static synchronized Estatisticas estatisticas() throws IOException {
+        long inicio = System.nanoTime();
+        if (estatisticas != null && inicio - estatisticas.expira < 0) return estatisticas;
+
+        int usuarios = UsuarioDAO.contar();
+        long tarefas = TarefaDAO.contar();
+        long atrasadas = TarefaDAO.contarAtrasadas();
+        Map<Integer, Long> porUsuario = TarefaDAO.contarPorUsuario();
+        // Most tasks first, then lowest id
+        List<Map.Entry<Integer, Long>> maiores = new ArrayList<>(porUsuario.entrySet());
+        maiores.sort(Map.Entry.<Integer, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        maiores = new ArrayList<>(maiores.subList(0, Math.min(MAX_PAGINA, maiores.size())));
+        long fim = System.nanoTime();
+        estatisticas = new Estatisticas(usuarios, tarefas, atrasadas, porUsuario.size(), maiores,
+            (fim - inicio) / 1_000_000, fim + VALIDADE_STATS_NANOS);
+        return estatisticas;
+    }
+
+    /**
+     * Counters and latency histograms of the server, the DAOs and the file I/O,
+     * in the Prometheus text format (see Metricas).
+     */
+    private static void handleMetrics(HttpExchange ex) throws IOException {
+        if (handleOptions(ex)) return;
+        if (!ex.getRequestMethod().equalsIgnoreCase("GET")) { send(ex, 405, ""); return; }
+
+        byte[] bytes = Metricas.exportar().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) { os.write(bytes); }
+    }
+
+    /**
+     * Runs many task operations in one request and one DAO transaction.
+     * Body: {"operacoes":[{"op":"criar","descricao":"..","dia":1,"mes":2,"ano":2026},
+     * {"op":"concluir","id":5,"concluida":true}, {"op":"editar","id":6,"descricao":".."}, {"op":"deletar","id":7}]}
+     * ("concluida" defaults to true). The response lists one result per operation, in order;
+     * operations on tasks of other users fail like those on missing tasks.
+     */
+    private static void handleBatch(HttpExchange ex) throws IOException {
+        if (handleOptions(ex)) return;
+        if (!ex.getRequestMethod().equalsIgnoreCase("POST")) { send(ex, 405, ""); return; }
+
+        int idUsuario = usuarioDaSessao(ex, null);
+        if (idUsuario == Sessoes.SEM_SESSAO) return;
+        LeitorJson.Campos body = readBody(ex, JSON_LOTE);
+        if (body == null) return;
+        List<LeitorJson.Campos> itens = body.lista("operacoes");
+        if (itens.size() > TarefaDAO.MAX_LOTE) {
+            send(ex, 413, "{\"erro\":\"no máximo " + TarefaDAO.MAX_LOTE + " operações por lote.\"}");
+            return;
+        }
+
+        List<OperacaoTarefa> ops = new ArrayList<>(itens.size());
+        for (int i = 0; i < itens.size(); i++) {
+            LeitorJson.Campos item = itens.get(i);
+            OperacaoTarefa op = operacao(item, idUsuario);
+            if (op == null) {
+                send(ex, 400, "{\"erro\":\"operação " + i + " inválida.\"}");
+                return;
+            }
+            if (item.presente("idUsuario") && item.inteiro("idUsuario") != idUsuario) { sendProibido(ex); return; }
+            ops.add(op);
+        }
+
+        int[] resultados = new int[ops.size()];
+        try {
+            // Operations on other users' tasks are left out and answered as not found
+            boolean[] negadas = new boolean[ops.size()];
+            List<OperacaoTarefa> permitidas = new ArrayList<>(ops.size());
+            for (int i = 0; i < ops.size(); i++) {
+                OperacaoTarefa op = ops.get(i);
+                negadas[i] = op.tipo != OperacaoTarefa.Tipo.CRIAR && !pertence(op.id, idUsuario);
+                if (!negadas[i]) permitidas.add(op);
+            }
+            int[] executadas = TarefaDAO.executarLote(permitidas);
+            for (int i = 0, k = 0; i < ops.size(); i++) {
+                if (!negadas[i]) resultados[i] = executadas[k++];
+            }
+        } catch (Exception e) {
+            send(ex, 500, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return;
+        }
+        startJson(ex, 200);
+        try (EscritorJson json = new EscritorJson(ex.getResponseBody())) {
+            json.inicioObjeto().campo("resultados").inicioLista();
+            for (int id : resultados) {
+                json.inicioObjeto();
+                if (id != 0) json.campo("ok", true).campo("id", id);
+                else json.campo("ok", false).campo("erro", "tarefa não encontrada.");
+                json.fimObjeto();
+            }
+            json.fimLista().fimObjeto();
+        }
+    }
+
+    /**
+     * @param idUsuario Owner of the tasks the batch creates (the session user).
+     * @return The operation described by one item of a batch, or null if it is not valid.
+     */
+    private static OperacaoTarefa operacao(LeitorJson.Campos c, int idUsuario) {
+        switch (c.texto("op")) {
+            case "criar":
+                return OperacaoTarefa.criar(idUsuario, c.texto("descricao"), c.inteiro("dia"), c.inteiro("mes"), c.inteiro("ano"));
+            case "concluir":
+                if (!c.presente("id")) return null;
+                return OperacaoTarefa.concluir(c.inteiro("id"), !c.presente("concluida") || c.logico("concluida"));
+            case "editar":
+                if (!c.presente("id")) return null;
+                return OperacaoTarefa.editar(c.inteiro("id"), c.texto("descricao"));
+            case "deletar":
+                if (!c.presente("id")) return null;
+                return OperacaoTarefa.deletar(c.inteiro("id"));
+            default:
+                return null;
+        }
+    }
+
     /**
      * Handles CORS Pre-flight. Crucial for web browsers to allow cross-origin requests.
      */
@@ -232,7 +721,7 @@ public class Server {
         if (ex.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
             ex.getResponseHeaders().set("Access-Control-Allow-Origin",  "*");
             ex.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-            ex.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+            ex.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, Authorization");
             ex.sendResponseHeaders(204, -1);
             ex.getResponseBody().close();
             return true;
@@ -244,71 +733,201 @@ public class Server {
      * Helper method to send a JSON response to the client.
      */
     private static void send(HttpExchange ex, int status, String body) throws IOException {
-        ex.getResponseHeaders().set("Content-Type",                 "application/json; charset=UTF-8");
-        ex.getResponseHeaders().set("Access-Control-Allow-Origin",  "*");
-        ex.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        ex.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+        setJsonHeaders(ex);
         byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
         ex.sendResponseHeaders(status, bytes.length);
         try (OutputStream os = ex.getResponseBody()) { os.write(bytes); }
     }
 
     /**
-     * Reads the entire string from the request input stream.
+     * Token of the request, from its "Authorization: Bearer <token>" header, or null.
      */
-    private static String readBody(HttpExchange ex) throws IOException {
+    private static String token(HttpExchange ex) {
+        String h = ex.getRequestHeaders().getFirst("Authorization");
+        if (h == null || !h.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return h.substring(7).trim();
+    }
+
+    /**
+     * Resolves the request's session to its user, answering 401 when there is no live session.
+     * A task endpoint may still be given an 'idUsuario' (older clients send one); it must be
+     * the session's, otherwise the request is answered with 403.
+     * @param idUsuario The 'idUsuario' of the query string, or null.
+     * @return The user, or Sessoes.SEM_SESSAO if the response was sent.
+     */
+    private static int usuarioDaSessao(HttpExchange ex, String idUsuario) throws IOException {
+        int id = sessoes.resolver(token(ex));
+        if (id == Sessoes.SEM_SESSAO) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            send(ex, 401, "{\"erro\":\"sessão inválida ou expirada.\"}");
+            return Sessoes.SEM_SESSAO;
+        }
+        if (idUsuario != null && !idUsuario.equals(Integer.toString(id))) {
+            sendProibido(ex);
+            return Sessoes.SEM_SESSAO;
+        }
+        return id;
+    }
+
+    /**
+     * Whether a task exists and belongs to a user (served by the task cache when it can).
+     */
+    private static boolean pertence(int idTarefa, int idUsuario) throws IOException {
+        Tarefa t = TarefaDAO.buscarPorId(idTarefa);
+        return t != null && t.idUsuario == idUsuario;
+    }
+
+    private static void sendProibido(HttpExchange ex) throws IOException {
+        send(ex, 403, "{\"erro\":\"acesso negado.\"}");
+    }
+
+    /**
+     * Answers a request refused because the password pool is saturated.
+     */
+    private static void sendOcupado(HttpExchange ex, CredenciaisOcupadasException e) throws IOException {
+        ex.getResponseHeaders().set("Retry-After", "1");
+        send(ex, 503, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+    }
+
+    /**
+     * Starts a JSON response whose length is not known up front (chunked transfer encoding).
+     * The body is then written with an EscritorJson over ex.getResponseBody().
+     */
+    private static void startJson(HttpExchange ex, int status) throws IOException {
+        setJsonHeaders(ex);
+        ex.sendResponseHeaders(status, 0);
+    }
+
+    private static void setJsonHeaders(HttpExchange ex) {
+        ex.getResponseHeaders().set("Content-Type",                 "application/json; charset=UTF-8");
+        ex.getResponseHeaders().set("Access-Control-Allow-Origin",  "*");
+        ex.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        ex.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, Authorization");
+    }
+
+    /**
+     * Reads the request body and parses the fields of 'formato' from it in a single pass.
+     * A malformed body is answered with a 400 here.
+     * @return The fields, or null if the 400 was sent.
+     */
+    private static LeitorJson.Campos readBody(HttpExchange ex, LeitorJson formato) throws IOException {
+        byte[] body;
         try (InputStream is = ex.getRequestBody()) {
-            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            body = is.readAllBytes();
+        }
+        try {
+            return formato.ler(body);
+        } catch (JsonInvalidoException e) {
+            send(ex, 400, "{\"erro\":\"" + esc(e.getMessage()) + "\"}");
+            return null;
         }
     }
 
     /**
-     * Manual JSON parser logic to extract values by key.
+     * Reads the listing parameters of GET /api/tarefas: status (todas, pendentes or concluidas),
+     * from and to (due-date range, YYYY-MM-DD, inclusive), month (YYYY-MM, a shortcut for the
+     * range of that month), sort (id or date), limit (page size) and after (the X-Proximo
+     * cursor of the previous page).
+     * @return The query, or null if none of them is present (plain listing).
+     * @throws IllegalArgumentException If a value is not valid; the message is meant for the client.
      */
-    private static String parseJson(String json, String key) {
-        String search = "\"" + key + "\"";
-        int idx = json.indexOf(search);
-        if (idx < 0) return "";
-        idx += search.length();
-        while (idx < json.length() && (json.charAt(idx) == ':' || json.charAt(idx) == ' ')) idx++;
-
-        if (json.charAt(idx) == '"') {
-            int start = idx + 1;
-            int end   = json.indexOf('"', start);
-            return json.substring(start, end);
-        } else {
-            int start = idx, end = start;
-            while (end < json.length() && ",} \n\r\t".indexOf(json.charAt(end)) < 0) end++;
-            return json.substring(start, end).trim();
+    private static ConsultaTarefas parseConsulta(String query) {
+        String status = parseQuery(query, "status");
+        String de     = parseQuery(query, "from");
+        String ate    = parseQuery(query, "to");
+        String mes    = parseQuery(query, "month");
+        String ordem  = parseQuery(query, "sort");
+        String limite = parseQuery(query, "limit");
+        String depois = parseQuery(query, "after");
+        if (status == null && de == null && ate == null && mes == null && ordem == null && limite == null
+                && depois == null) return null;
+
+        ConsultaTarefas.Status s;
+        switch (status == null ? "todas" : status) {
+            case "todas":      s = ConsultaTarefas.Status.TODAS; break;
+            case "pendentes":  s = ConsultaTarefas.Status.PENDENTES; break;
+            case "concluidas": s = ConsultaTarefas.Status.CONCLUIDAS; break;
+            default: throw new IllegalArgumentException("status inválido.");
+        }
+        ConsultaTarefas.Ordem o;
+        switch (ordem == null ? "id" : ordem) {
+            case "id":   o = ConsultaTarefas.Ordem.ID; break;
+            case "date": o = ConsultaTarefas.Ordem.DATA; break;
+            default: throw new IllegalArgumentException("sort inválido.");
+        }
+        long n = limite == null ? 0 : parseNumero(limite, "limit");
+        if (limite != null && (n < 1 || n > MAX_PAGINA)) {
+            throw new IllegalArgumentException("limit deve estar entre 1 e " + MAX_PAGINA + ".");
+        }
+        long cursor = depois == null ? 0 : parseNumero(depois, "after");
+        int inicio = parseData(de, "from", ConsultaTarefas.DESDE_SEMPRE);
+        int fim    = parseData(ate, "to", ConsultaTarefas.PARA_SEMPRE);
+        if (mes != null) {
+            if (de != null || ate != null) throw new IllegalArgumentException("use month ou from/to, não ambos.");
+            LocalDate primeiro = parseData(mes + "-01", "month");
+            inicio = (int) primeiro.toEpochDay();
+            fim    = (int) primeiro.plusMonths(1).toEpochDay() - 1;
+        }
+        return new ConsultaTarefas(s, inicio, fim, o, (int) n, cursor);
+    }
+
+    /**
+     * @return The epoch day of a YYYY-MM-DD date, or 'ausente' if it is absent.
+     */
+    private static int parseData(String valor, String nome, int ausente) {
+        return valor == null ? ausente : (int) parseData(valor, nome).toEpochDay();
+    }
+
+    private static LocalDate parseData(String valor, String nome) {
+        try {
+            return LocalDate.parse(valor);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(nome + " inválido.");
+        }
+    }
+
+    private static long parseNumero(String valor, String nome) {
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(nome + " inválido.");
         }
     }
 
     /**
-     * Extracts an integer from the URL query string.
+     * Extracts a raw value from the URL query string, or null if it is absent.
      */
-    private static int parseQueryInt(String query, String key) {
-        if (query == null) return 0;
+    private static String parseQuery(String query, String key) {
+        if (query == null) return null;
         for (String part : query.split("&")) {
             String[] kv = part.split("=");
-            if (kv.length == 2 && kv[0].equals(key)) return Integer.parseInt(kv[1]);
+            if (kv.length == 2 && kv[0].equals(key)) return kv[1];
         }
-        return 0;
+        return null;
     }
 
     /**
-     * Manual serialization of a Task object to a JSON string.
+     * Serializes a Task object straight into a JSON stream (escaped and UTF-8 encoded inline).
+     * Package-private so the benchmarks in bench/ can call it.
      */
-    private static String tarefaToJson(Tarefa t) {
-        return String.format(
-            "{\"id\":%d,\"idUsuario\":%d,\"descricao\":\"%s\",\"concluida\":%b,\"ativo\":%b,\"dia\":%d,\"mes\":%d,\"ano\":%d}",
-            t.id, t.idUsuario, esc(t.descricao), t.concluida, t.ativo, t.dia, t.mes, t.ano
-        );
+    static void escreverTarefa(EscritorJson json, Tarefa t) throws IOException {
+        json.inicioObjeto()
+            .campo("id", t.id)
+            .campo("idUsuario", t.idUsuario)
+            .campo("descricao", t.descricao == null ? "" : t.descricao)
+            .campo("concluida", t.concluida)
+            .campo("ativo", t.ativo)
+            .campo("dia", t.dia)
+            .campo("mes", t.mes)
+            .campo("ano", t.ano)
+            .fimObjeto();
     }
 
     /**
      * Escapes backslashes and double quotes for safe JSON inclusion.
+     * Package-private so the benchmarks in bench/ can call it.
      */
-    private static String esc(String s) {
+    static String esc(String s) {
         if (s == null) return "";
         return s.replace("\\", "\\\\").replace("\"", "\\\"");
     }
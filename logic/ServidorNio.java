@@ -0,0 +1,811 @@
+package logic;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import logic.util.Metricas;
+
+/**
+ * HTTP/1.1 front end on java.nio selectors (-Dtodolist.http=nio), serving the same routes
+ * as the built-in HttpServer through the same handlers.
+ *
+ * One selector thread accepts connections, parses requests out of reusable direct buffers
+ * and writes responses; handlers run on the worker executor and hand their response back
+ * when they close the exchange. Connections are kept alive, and pipelined requests are
+ * answered in order: a connection is not read while its response is pending, and the
+ * requests already buffered behind it are parsed as soon as it is written.
+ * Responses are buffered whole and sent with a Content-Length (never chunked).
+ *
+ * Request bodies grow as their bytes arrive, never ahead of them, and the memory held by
+ * bodies still being received is capped across connections: past the cap a request is
+ * refused with 503, so clients announcing large bodies and then stalling cannot fill the heap.
+ *
+ * -Dtodolist.nio.buffer (read buffer per busy connection, also the largest request head;
+ * default 16 KB), -Dtodolist.nio.corpos.max (bytes of bodies being received, default 64 MB)
+ * and -Dtodolist.nio.ociosa.segundos (idle connections are closed after it; default 30).
+ */
+public class ServidorNio {
+
+    private static final int TAM_BUFFER = Integer.getInteger("todolist.nio.buffer", 16 * 1024);
+    private static final int MAX_CORPO = 16 * 1024 * 1024;
+    private static final long MAX_PENDENTE = Long.getLong("todolist.nio.corpos.max", 64L * 1024 * 1024);
+    // Buffers of idle connections are kept for reuse, up to this many
+    private static final int MAX_LIVRES = 256;
+    private static final long OCIOSA_NANOS =
+        TimeUnit.SECONDS.toNanos(Long.getLong("todolist.nio.ociosa.segundos", 30));
+    private static final long VARREDURA_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final byte[] CONTINUAR = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    // Exported at /api/metrics
+    private static final Metricas.Contador conexoes = Metricas.contador("todolist_nio_conexoes_total",
+        "Connections accepted by the NIO front end", "");
+    private static final Metricas.Contador recusadas = Metricas.contador("todolist_nio_recusadas_total",
+        "Requests the NIO front end answered itself (malformed, too large...), without a route", "");
+    private static final Metricas.Histograma porConexao = Metricas.histograma("todolist_nio_requisicoes_por_conexao",
+        "Requests answered on each connection, recorded when it closes", "");
+
+    // Date header, formatted at most once per second
+    private static volatile String data = "";
+    private static volatile long dataSegundo = -1;
+
+    /**
+     * A parsed request, while its body is read.
+     */
+    private static class Requisicao {
+        final String metodo;
+        final URI uri;
+        final String versao;
+        final Headers cabecalhos;
+        // Declared length; 'corpo' grows towards it as the bytes arrive
+        final int tamanho;
+        byte[] corpo = new byte[0];
+        final boolean manter;
+        boolean continuar;
+        int lidos;
+
+        Requisicao(String metodo, URI uri, String versao, Headers cabecalhos, int tamanho, boolean manter, boolean continuar) {
+            this.metodo = metodo;
+            this.uri = uri;
+            this.versao = versao;
+            this.cabecalhos = cabecalhos;
+            this.tamanho = tamanho;
+            this.manter = manter;
+            this.continuar = continuar;
+        }
+    }
+
+    /**
+     * State of one connection. Touched only by the selector thread, except 'saida' and
+     * 'fecharAposEscrever', which a worker sets before queueing the connection in 'prontas'.
+     */
+    private static class Conexao {
+        final SocketChannel canal;
+        final InetSocketAddress remoto;
+        final InetSocketAddress local;
+        SelectionKey chave;
+        // Bytes received and not parsed yet, in fill mode; null while there are none
+        ByteBuffer entrada;
+        // How far 'entrada' was searched for the end of the head
+        int varrido;
+        Requisicao requisicao;
+        // A request is being handled or its response written; the connection is not read meanwhile
+        boolean ocupada;
+        ByteBuffer[] saida;
+        boolean fecharAposEscrever;
+        int atendidas;
+        long ultimoUso = System.nanoTime();
+
+        Conexao(SocketChannel canal) throws IOException {
+            this.canal = canal;
+            this.remoto = (InetSocketAddress) canal.getRemoteAddress();
+            this.local = (InetSocketAddress) canal.getLocalAddress();
+        }
+    }
+
+    /**
+     * A request that cannot be handled, answered with 'status' before reaching a route.
+     */
+    private static class RequisicaoInvalida extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        RequisicaoInvalida(int status) {
+            super(null, null, false, false);
+            this.status = status;
+        }
+    }
+
+    private final int porta;
+    // Longest path first, so the first prefix that matches is the one HttpServer would pick
+    private final String[] caminhos;
+    private final HttpHandler[] handlers;
+    private final Executor executor;
+    private final Selector seletor;
+    private final Queue<Conexao> prontas = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ByteBuffer> livres = new ArrayDeque<>();
+    // Written by the selector thread only
+    private volatile int abertas;
+    // Bytes allocated to bodies still being received (selector thread only)
+    private long pendente;
+
+    /**
+     * @param rotas Handler of each context path, matched by longest prefix as in HttpServer.
+     * @param executor Runs the handlers.
+     */
+    public ServidorNio(int porta, Map<String, HttpHandler> rotas, Executor executor) throws IOException {
+        this.porta = porta;
+        this.executor = executor;
+        List<String> ordem = new ArrayList<>(rotas.keySet());
+        ordem.sort(Comparator.comparingInt(String::length).reversed());
+        caminhos = ordem.toArray(new String[0]);
+        handlers = new HttpHandler[caminhos.length];
+        for (int i = 0; i < caminhos.length; i++) handlers[i] = rotas.get(caminhos[i]);
+        seletor = Selector.open();
+        Metricas.medidor("todolist_nio_conexoes_abertas", "Connections open on the NIO front end", "", () -> abertas);
+    }
+
+    /**
+     * Binds the port and starts the selector thread.
+     */
+    public void iniciar() throws IOException {
+        ServerSocketChannel servidor = ServerSocketChannel.open();
+        servidor.bind(new InetSocketAddress(porta), 1024);
+        servidor.configureBlocking(false);
+        servidor.register(seletor, SelectionKey.OP_ACCEPT);
+        new Thread(this::executar, "http-nio").start();
+    }
+
+    private void executar() {
+        long varredura = System.nanoTime();
+        while (true) {
+            try {
+                seletor.select(1000);
+                Iterator<SelectionKey> it = seletor.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue;
+                    if (k.isAcceptable()) {
+                        aceitar((ServerSocketChannel) k.channel());
+                        continue;
+                    }
+                    Conexao c = (Conexao) k.attachment();
+                    try {
+                        if (k.isWritable()) escrever(c);
+                        else if (k.isReadable()) ler(c);
+                    } catch (IOException e) {
+                        fechar(c); // The client went away
+                    }
+                }
+
+                // Responses finished by the workers
+                Conexao c;
+                while ((c = prontas.poll()) != null) {
+                    try {
+                        escrever(c);
+                    } catch (IOException e) {
+                        fechar(c);
+                    }
+                }
+
+                long agora = System.nanoTime();
+                if (agora - varredura >= VARREDURA_NANOS) {
+                    varredura = agora;
+                    fecharOciosas(agora);
+                }
+            } catch (IOException e) {
+                System.err.println("Erro no servidor NIO: " + e.getMessage());
+            }
+        }
+    }
+
+    private void aceitar(ServerSocketChannel servidor) throws IOException {
+        SocketChannel canal;
+        while ((canal = servidor.accept()) != null) {
+            canal.configureBlocking(false);
+            // Each response leaves in one gathering write; waiting to coalesce only adds latency
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Conexao c = new Conexao(canal);
+            c.chave = canal.register(seletor, SelectionKey.OP_READ, c);
+            abertas++;
+            conexoes.incrementar();
+        }
+    }
+
+    private void ler(Conexao c) throws IOException {
+        if (c.entrada == null) c.entrada = buffer();
+        if (c.canal.read(c.entrada) < 0) {
+            fechar(c);
+            return;
+        }
+        c.ultimoUso = System.nanoTime();
+        processar(c);
+    }
+
+    /**
+     * Parses what the connection has buffered: dispatches the next complete request, or waits
+     * for more bytes. Called again after each response, for the requests pipelined behind it.
+     */
+    private void processar(Conexao c) throws IOException {
+        if (c.requisicao == null) {
+            int fim = c.entrada == null ? -1 : fimDoCabecalho(c);
+            if (fim < 0) {
+                if (c.entrada != null && !c.entrada.hasRemaining()) recusar(c, 431);
+                else aguardar(c);
+                return;
+            }
+            try {
+                c.requisicao = analisar(c.entrada, fim);
+            } catch (RequisicaoInvalida e) {
+                recusar(c, e.status);
+                return;
+            }
+            consumir(c.entrada, fim);
+            c.varrido = 0;
+        }
+
+        Requisicao r = c.requisicao;
+        ByteBuffer b = c.entrada;
+        int n = b == null ? 0 : Math.min(b.position(), r.tamanho - r.lidos);
+        if (n > 0) {
+            if (r.lidos + n > r.corpo.length && !crescer(r, r.lidos + n)) {
+                recusar(c, 503);
+                return;
+            }
+            b.flip();
+            b.get(r.corpo, r.lidos, n);
+            b.compact();
+            r.lidos += n;
+        }
+        if (r.lidos < r.tamanho) {
+            if (r.continuar) {
+                r.continuar = false;
+                // A few bytes on an idle socket; if even they do not fit, give up on the client
+                ByteBuffer continuar = ByteBuffer.wrap(CONTINUAR);
+                c.canal.write(continuar);
+                if (continuar.hasRemaining()) {
+                    fechar(c);
+                    return;
+                }
+            }
+            aguardar(c);
+            return;
+        }
+
+        // From here the body belongs to the handler
+        pendente -= r.corpo.length;
+        c.requisicao = null;
+        despachar(c, r);
+    }
+
+    /**
+     * Grows a body to hold at least 'minimo' bytes, doubling up to its declared length.
+     * @return False if that would take the bodies being received past MAX_PENDENTE.
+     */
+    private boolean crescer(Requisicao r, int minimo) {
+        int novo = (int) Math.min(r.tamanho, Math.max(minimo, Math.max(TAM_BUFFER, r.corpo.length * 2L)));
+        if (pendente + novo - r.corpo.length > MAX_PENDENTE) return false;
+        pendente += novo - r.corpo.length;
+        r.corpo = Arrays.copyOf(r.corpo, novo);
+        return true;
+    }
+
+    /**
+     * Drops the request being received on a connection, if any.
+     */
+    private void descartar(Conexao c) {
+        if (c.requisicao == null) return;
+        pendente -= c.requisicao.corpo.length;
+        c.requisicao = null;
+    }
+
+    private void aguardar(Conexao c) {
+        liberarSeVazio(c);
+        c.chave.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void despachar(Conexao c, Requisicao r) throws IOException {
+        c.ocupada = true;
+        c.chave.interestOps(0);
+        liberarSeVazio(c);
+        Troca t = new Troca(c, r);
+        try {
+            executor.execute(() -> atender(t));
+        } catch (RejectedExecutionException e) {
+            recusar(c, 503);
+        }
+    }
+
+    /**
+     * Runs on a worker: routes the exchange and closes it, if its handler did not.
+     */
+    private void atender(Troca t) {
+        String caminho = t.getRequestURI().getPath();
+        try {
+            HttpHandler h = null;
+            for (int i = 0; i < caminhos.length && h == null; i++) {
+                if (caminho.startsWith(caminhos[i])) h = handlers[i];
+            }
+            if (h == null) t.sendResponseHeaders(404, -1);
+            else h.handle(t);
+            t.close();
+        } catch (IOException | RuntimeException e) {
+            t.falhar(); // The route already logged it
+        }
+    }
+
+    /**
+     * Called by a worker once a response is ready; the selector thread writes it.
+     */
+    private void concluir(Conexao c, ByteBuffer[] saida, boolean fechar) {
+        c.saida = saida;
+        c.fecharAposEscrever = fechar;
+        prontas.add(c);
+        seletor.wakeup();
+    }
+
+    private void escrever(Conexao c) throws IOException {
+        if (!c.canal.isOpen()) return;
+        ByteBuffer[] saida = c.saida;
+        c.canal.write(saida);
+        if (saida[saida.length - 1].hasRemaining()) {
+            c.chave.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        c.saida = null;
+        c.atendidas++;
+        c.ultimoUso = System.nanoTime();
+        if (c.fecharAposEscrever) {
+            fechar(c);
+            return;
+        }
+        c.ocupada = false;
+        processar(c);
+    }
+
+    /**
+     * Answers a request that never reaches a route, and closes the connection after it.
+     */
+    private void recusar(Conexao c, int status) throws IOException {
+        recusadas.incrementar();
+        c.ocupada = true;
+        descartar(c);
+        c.chave.interestOps(0);
+        String corpo = status + " " + motivo(status);
+        String resposta = "HTTP/1.1 " + corpo + "\r\nContent-Type: text/plain; charset=UTF-8\r\nContent-Length: "
+            + corpo.length() + "\r\nDate: " + data() + "\r\nConnection: close\r\n\r\n" + corpo;
+        c.saida = new ByteBuffer[] { ByteBuffer.wrap(resposta.getBytes(StandardCharsets.ISO_8859_1)) };
+        c.fecharAposEscrever = true;
+        escrever(c);
+    }
+
+    private void fechar(Conexao c) {
+        if (!c.canal.isOpen()) return;
+        descartar(c);
+        c.chave.cancel();
+        try {
+            c.canal.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        if (c.entrada != null) {
+            devolver(c.entrada);
+            c.entrada = null;
+        }
+        abertas--;
+        porConexao.registrar(c.atendidas);
+    }
+
+    /**
+     * Closes connections with no request in progress that have been quiet for too long
+     * (including clients stuck halfway through sending one).
+     */
+    private void fecharOciosas(long agora) {
+        for (SelectionKey k : seletor.keys()) {
+            if (!(k.attachment() instanceof Conexao)) continue;
+            Conexao c = (Conexao) k.attachment();
+            if (!c.ocupada && agora - c.ultimoUso > OCIOSA_NANOS) fechar(c);
+        }
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer b = livres.poll();
+        return b != null ? b : ByteBuffer.allocateDirect(TAM_BUFFER);
+    }
+
+    private void devolver(ByteBuffer b) {
+        b.clear();
+        if (livres.size() < MAX_LIVRES) livres.push(b);
+    }
+
+    /**
+     * Gives the read buffer back when nothing is pending in it, so idle keep-alive
+     * connections hold none.
+     */
+    private void liberarSeVazio(Conexao c) {
+        if (c.entrada != null && c.entrada.position() == 0 && c.requisicao == null) {
+            devolver(c.entrada);
+            c.entrada = null;
+        }
+    }
+
+    /**
+     * @return The offset just past the blank line ending the request head, or -1 if it has
+     *         not arrived yet.
+     */
+    private static int fimDoCabecalho(Conexao c) {
+        ByteBuffer b = c.entrada;
+        int fim = b.position();
+        for (int i = Math.max(0, c.varrido - 3); i + 3 < fim; i++) {
+            if (b.get(i) == '\r' && b.get(i + 1) == '\n' && b.get(i + 2) == '\r' && b.get(i + 3) == '\n') return i + 4;
+        }
+        c.varrido = fim;
+        return -1;
+    }
+
+    /**
+     * Drops the first 'n' bytes of a buffer in fill mode.
+     */
+    private static void consumir(ByteBuffer b, int n) {
+        b.flip();
+        b.position(n);
+        b.compact();
+    }
+
+    /**
+     * Parses the request line and headers, the first 'fim' bytes of 'b'.
+     */
+    private static Requisicao analisar(ByteBuffer b, int fim) throws RequisicaoInvalida {
+        byte[] bytes = new byte[fim - 4];
+        ByteBuffer d = b.duplicate();
+        d.flip();
+        d.get(bytes);
+        String[] linhas = new String(bytes, StandardCharsets.ISO_8859_1).split("\r\n");
+
+        String[] partes = linhas[0].split(" ");
+        if (partes.length != 3) throw new RequisicaoInvalida(400);
+        String metodo = partes[0];
+        String versao = partes[2];
+        if (!versao.startsWith("HTTP/")) throw new RequisicaoInvalida(400);
+        if (!versao.equals("HTTP/1.1") && !versao.equals("HTTP/1.0")) throw new RequisicaoInvalida(505);
+        URI uri;
+        try {
+            uri = new URI(partes[1]);
+        } catch (URISyntaxException e) {
+            throw new RequisicaoInvalida(400);
+        }
+        if (uri.getPath() == null || !uri.getPath().startsWith("/")) throw new RequisicaoInvalida(400);
+
+        Headers cabecalhos = new Headers();
+        for (int i = 1; i < linhas.length; i++) {
+            String linha = linhas[i];
+            int dp = linha.indexOf(':');
+            // Also rejects folded lines, which start with whitespace
+            if (dp <= 0 || linha.substring(0, dp).indexOf(' ') >= 0 || linha.charAt(0) == '\t') throw new RequisicaoInvalida(400);
+            cabecalhos.add(linha.substring(0, dp), linha.substring(dp + 1).trim());
+        }
+
+        if (cabecalhos.containsKey("Transfer-Encoding")) throw new RequisicaoInvalida(501);
+        long tamanho = 0;
+        List<String> cl = cabecalhos.get("Content-Length");
+        if (cl != null) {
+            // Repeated Content-Length headers are accepted only when they agree
+            for (int i = 0; i < cl.size(); i++) {
+                long t;
+                try {
+                    t = Long.parseLong(cl.get(i));
+                } catch (NumberFormatException e) {
+                    throw new RequisicaoInvalida(400);
+                }
+                if (t < 0 || (i > 0 && t != tamanho)) throw new RequisicaoInvalida(400);
+                tamanho = t;
+            }
+        }
+        if (tamanho > MAX_CORPO) throw new RequisicaoInvalida(413);
+
+        String conexao = cabecalhos.getFirst("Connection");
+        boolean http10 = versao.equals("HTTP/1.0");
+        boolean manter = http10 ? contem(conexao, "keep-alive") : !contem(conexao, "close");
+        boolean continuar = !http10 && tamanho > 0 && "100-continue".equalsIgnoreCase(cabecalhos.getFirst("Expect"));
+        return new Requisicao(metodo, uri, versao, cabecalhos, (int) tamanho, manter, continuar);
+    }
+
+    /**
+     * Whether a comma-separated header value lists 'token'.
+     */
+    private static boolean contem(String valor, String token) {
+        if (valor == null) return false;
+        for (String parte : valor.split(",")) {
+            if (parte.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    private static String data() {
+        long s = System.currentTimeMillis() / 1000;
+        if (s != dataSegundo) {
+            data = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+            dataSegundo = s;
+        }
+        return data;
+    }
+
+    private static String motivo(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 413: return "Content Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            case 505: return "HTTP Version Not Supported";
+            default:  return "";
+        }
+    }
+
+    /**
+     * One request and its response, as the handlers see it. The response is buffered and
+     * handed to the selector thread when the exchange is closed.
+     */
+    final class Troca extends HttpExchange {
+        private final Conexao conexao;
+        private final Requisicao requisicao;
+        private final Headers cabecalhosResposta = new Headers();
+        private final CorpoResposta corpoResposta = new CorpoResposta();
+        private InputStream entrada;
+        private OutputStream saida;
+        private Map<String, Object> atributos;
+        private int codigo = -1;
+        private long tamanho;
+        // Body sent as is instead of the buffered one (see enviar)
+        private ByteBuffer direto;
+        private boolean concluida;
+
+        Troca(Conexao conexao, Requisicao requisicao) {
+            this.conexao = conexao;
+            this.requisicao = requisicao;
+        }
+
+        /**
+         * Ends the exchange with 'corpo' as the body, written to the socket without being
+         * copied (e.g. a read-only view of a cached file). Headers must have been sent.
+         */
+        void enviar(ByteBuffer corpo) {
+            direto = corpo;
+            close();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (concluida) return;
+            concluida = true;
+            if (codigo < 0) {
+                // Closed without a response
+                codigo = 500;
+                tamanho = -1;
+            }
+            concluir(conexao, resposta(), !requisicao.manter);
+        }
+
+        /**
+         * Abandons the exchange after its handler failed: whatever it buffered is dropped
+         * and the connection closes after a 500, unless the response was already handed over.
+         */
+        synchronized void falhar() {
+            if (concluida) return;
+            concluida = true;
+            codigo = 500;
+            tamanho = -1;
+            direto = null;
+            cabecalhosResposta.clear();
+            concluir(conexao, resposta(), true);
+        }
+
+        private ByteBuffer[] resposta() {
+            ByteBuffer corpo = direto != null ? direto : ByteBuffer.wrap(corpoResposta.buf, 0, corpoResposta.count);
+            boolean semCorpo = codigo < 200 || codigo == 204 || codigo == 304;
+            if (tamanho >= 0 && !semCorpo) {
+                cabecalhosResposta.set("Content-Length", Integer.toString(corpo.remaining()));
+            } else if (!semCorpo && !cabecalhosResposta.containsKey("Content-Length")) {
+                cabecalhosResposta.set("Content-Length", "0");
+            }
+
+            StringBuilder sb = new StringBuilder(256);
+            sb.append("HTTP/1.1 ").append(codigo).append(' ').append(motivo(codigo)).append("\r\n");
+            for (Map.Entry<String, List<String>> e : cabecalhosResposta.entrySet()) {
+                for (String v : e.getValue()) sb.append(e.getKey()).append(": ").append(v).append("\r\n");
+            }
+            sb.append("Date: ").append(data()).append("\r\n");
+            if (!requisicao.manter) sb.append("Connection: close\r\n");
+            else if (requisicao.versao.equals("HTTP/1.0")) sb.append("Connection: keep-alive\r\n");
+            sb.append("\r\n");
+            ByteBuffer cabecalho = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+            boolean enviarCorpo = tamanho >= 0 && !semCorpo && !requisicao.metodo.equals("HEAD") && corpo.hasRemaining();
+            return enviarCorpo ? new ByteBuffer[] { cabecalho, corpo } : new ByteBuffer[] { cabecalho };
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requisicao.cabecalhos;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return cabecalhosResposta;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return requisicao.uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return requisicao.metodo;
+        }
+
+        /**
+         * Routes here are not HttpContexts; no handler asks for one.
+         */
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            if (entrada == null) entrada = new CorpoRequisicao(requisicao.corpo);
+            return entrada;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return saida != null ? saida : corpoResposta;
+        }
+
+        /**
+         * @param tamanho As in HttpServer: -1 for no body, 0 for a body of any length, or its
+         *        exact length. The response always goes out with a Content-Length.
+         */
+        @Override
+        public synchronized void sendResponseHeaders(int codigo, long tamanho) throws IOException {
+            if (this.codigo >= 0) throw new IOException("Cabeçalhos já enviados");
+            this.codigo = codigo;
+            this.tamanho = tamanho;
+            if (tamanho > 0 && tamanho <= MAX_CORPO) corpoResposta.reservar((int) tamanho);
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return conexao.remoto;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return codigo;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return conexao.local;
+        }
+
+        @Override
+        public String getProtocol() {
+            return requisicao.versao;
+        }
+
+        @Override
+        public synchronized Object getAttribute(String nome) {
+            return atributos == null ? null : atributos.get(nome);
+        }
+
+        @Override
+        public synchronized void setAttribute(String nome, Object valor) {
+            if (atributos == null) atributos = new HashMap<>();
+            atributos.put(nome, valor);
+        }
+
+        @Override
+        public void setStreams(InputStream entrada, OutputStream saida) {
+            if (entrada != null) this.entrada = entrada;
+            if (saida != null) this.saida = saida;
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+
+        /**
+         * The response body, grown in memory; closing it closes the exchange.
+         */
+        private class CorpoResposta extends OutputStream {
+            byte[] buf = new byte[0];
+            int count;
+
+            void reservar(int n) {
+                if (buf.length < n) buf = Arrays.copyOf(buf, n);
+            }
+
+            @Override
+            public void write(int b) {
+                if (count == buf.length) reservar(Math.max(8192, buf.length * 2));
+                buf[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (count + len > buf.length) reservar(Math.max(count + len, Math.max(8192, buf.length * 2)));
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+            }
+
+            @Override
+            public void close() {
+                Troca.this.close();
+            }
+        }
+    }
+
+    /**
+     * A request body. The array belongs to this request alone, so readAllBytes hands it
+     * over instead of copying it.
+     */
+    private static class CorpoRequisicao extends ByteArrayInputStream {
+        CorpoRequisicao(byte[] corpo) {
+            super(corpo);
+        }
+
+        @Override
+        public synchronized byte[] readAllBytes() {
+            if (pos == 0 && count == buf.length) {
+                pos = count;
+                return buf;
+            }
+            return super.readAllBytes();
+        }
+    }
+}
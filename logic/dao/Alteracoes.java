@@ -0,0 +1,22 @@
+package logic.dao;
+
+import java.util.List;
+import logic.model.Tarefa;
+
+/**
+ * Answer to TarefaDAO.alteracoesDesde: what a client must apply to catch up.
+ */
+public class Alteracoes {
+
+    public final long versao;           // Cursor for the next request
+    public final boolean completo;      // True: 'tarefas' is the whole list and replaces the client's copy
+    public final List<Tarefa> tarefas;  // Tasks created or changed (current state)
+    public final List<Integer> removidas; // Ids of tasks deleted
+
+    public Alteracoes(long versao, boolean completo, List<Tarefa> tarefas, List<Integer> removidas) {
+        this.versao = versao;
+        this.completo = completo;
+        this.tarefas = tarefas;
+        this.removidas = removidas;
+    }
+}
@@ -0,0 +1,134 @@
+package logic.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import logic.util.BinInput;
+import logic.util.BinOutput;
+
+/**
+ * In-memory copy of a data file header: 4(magic) + 4(format version) followed by
+ * 3 Integers (Total, LastID, ActiveCount). Files of format 1 had only the 3 Integers;
+ * MigradorFormato converts them before they are loaded.
+ * It is loaded once and is authoritative from then on. Every transaction that changes it
+ * logs the new values in the WAL (so recovery restores them), but the header bytes of the
+ * data file are only rewritten by salvar(), which the DAOs run on each checkpoint.
+ */
+public class Cabecalho {
+
+    public static final int TAMANHO = 20;
+    public static final int MAGICO = 0x54444C53; // "TDLS"
+    public static final int VERSAO = 2;
+
+    private final String arquivo;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger ultimoId = new AtomicInteger();
+    private final AtomicInteger ativos = new AtomicInteger();
+
+    private Cabecalho(String arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    /**
+     * Format version of a data file: VERSAO or later when it starts with the magic number,
+     * 1 for a file without it, 0 if the file is empty or missing.
+     */
+    public static int versao(String arquivo) throws IOException {
+        File f = new File(arquivo);
+        if (!f.exists() || f.length() == 0) return 0;
+        if (f.length() < 8) return 1;
+        BinInput in = new BinInput(arquivo);
+        try {
+            return in.readInt() == MAGICO ? in.readInt() : 1;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the header of a data file, or starts from zeros if the file is empty or missing.
+     * @throws IOException If the file is not in the current format.
+     */
+    public static Cabecalho carregar(String arquivo) throws IOException {
+        Cabecalho c = new Cabecalho(arquivo);
+        int versao = versao(arquivo);
+        if (versao == 0) return c;
+        if (versao != VERSAO) throw new IOException(arquivo + ": formato " + versao + " nao suportado");
+        if (new File(arquivo).length() >= TAMANHO) {
+            BinInput in = new BinInput(arquivo);
+            in.seek(8);
+            c.total.set(in.readInt());
+            c.ultimoId.set(in.readInt());
+            c.ativos.set(in.readInt());
+            in.close();
+        }
+        return c;
+    }
+
+    public int total() {
+        return total.get();
+    }
+
+    public int ultimoId() {
+        return ultimoId.get();
+    }
+
+    public int ativos() {
+        return ativos.get();
+    }
+
+    /**
+     * Reserves the id of a new record.
+     */
+    public int alocarId() {
+        return ultimoId.incrementAndGet();
+    }
+
+    /**
+     * Reserves the slot at the end of the file for a new active record.
+     */
+    public int alocarSlot() {
+        ativos.incrementAndGet();
+        return total.getAndIncrement();
+    }
+
+    /**
+     * Accounts for a new active record written over a free slot, which 'total' already counts.
+     */
+    public void reocuparSlot() {
+        ativos.incrementAndGet();
+    }
+
+    /**
+     * Accounts for a record that was logically deleted.
+     */
+    public void registrarRemocao() {
+        ativos.decrementAndGet();
+    }
+
+    /**
+     * Logs the current values into a transaction, as a write deferred to the checkpoint.
+     * Must be called under the lock that serializes header changes, so the log sees them in order.
+     */
+    public void registrar(Transacao tx) throws IOException {
+        tx.seekAdiado(arquivo, 0);
+        tx.writeInt(MAGICO);
+        tx.writeInt(VERSAO);
+        tx.writeInt(total.get());
+        tx.writeInt(ultimoId.get());
+        tx.writeInt(ativos.get());
+    }
+
+    /**
+     * Writes the header back to the data file.
+     */
+    public void salvar() throws IOException {
+        BinOutput out = new BinOutput(arquivo, false);
+        out.writeInt(MAGICO);
+        out.writeInt(VERSAO);
+        out.writeInt(total.get());
+        out.writeInt(ultimoId.get());
+        out.writeInt(ativos.get());
+        out.close();
+    }
+}
@@ -0,0 +1,137 @@
+package logic.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded in-memory cache of decoded records, with hit/miss counters.
+ * Entries are spread over independently locked segments, each one a LinkedHashMap that
+ * evicts its oldest entry once full: by last access (LRU) or by insertion (FIFO).
+ * Eviction is therefore per segment, an approximation of a global policy.
+ * Capacity 0 disables the cache. Callers are responsible for keeping it coherent with the file.
+ */
+public class CacheRegistros<K, V> {
+
+    public enum Politica { LRU, FIFO }
+
+    private static final int SEGMENTOS = 16;
+
+    private final int capacidade;
+    private final Politica politica;
+    private final Map<K, V>[] segmentos;
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public CacheRegistros(int capacidade, Politica politica) {
+        this.capacidade = Math.max(0, capacidade);
+        this.politica = politica;
+        int n = this.capacidade < SEGMENTOS * 4 ? 1 : SEGMENTOS;
+        int porSegmento = (this.capacidade + n - 1) / n;
+        segmentos = new Map[n];
+        for (int i = 0; i < n; i++) {
+            segmentos[i] = new LinkedHashMap<K, V>(16, 0.75f, politica == Politica.LRU) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> maisAntiga) {
+                    return size() > porSegmento;
+                }
+            };
+        }
+    }
+
+    /**
+     * Builds a cache sized by a system property (e.g. -Dtodolist.cache.tarefas=20000), with the
+     * eviction policy taken from -Dtodolist.cache.politica=lru|fifo (default lru).
+     */
+    public static <K, V> CacheRegistros<K, V> configurado(String propriedade, int padrao) {
+        int capacidade = Integer.getInteger(propriedade, padrao);
+        String p = System.getProperty("todolist.cache.politica", "lru");
+        return new CacheRegistros<>(capacidade, p.equalsIgnoreCase("fifo") ? Politica.FIFO : Politica.LRU);
+    }
+
+    private Map<K, V> segmento(Object chave) {
+        int h = chave.hashCode() * 0x9E3779B9;
+        return segmentos[(h ^ (h >>> 16)) & (segmentos.length - 1)];
+    }
+
+    /**
+     * Returns the cached value, or null on a miss.
+     */
+    public V get(K chave) {
+        V v = null;
+        if (capacidade > 0) {
+            Map<K, V> s = segmento(chave);
+            synchronized (s) {
+                v = s.get(chave);
+            }
+        }
+        if (v == null) faltas.increment();
+        else acertos.increment();
+        return v;
+    }
+
+    public void put(K chave, V valor) {
+        if (capacidade == 0) return;
+        Map<K, V> s = segmento(chave);
+        synchronized (s) {
+            s.put(chave, valor);
+        }
+    }
+
+    /**
+     * Replaces a cached value with f(value); does nothing if the key is not cached,
+     * so updates never load cold entries. Values must be treated as immutable: f returns a new one.
+     */
+    public void alterar(K chave, UnaryOperator<V> f) {
+        if (capacidade == 0) return;
+        Map<K, V> s = segmento(chave);
+        synchronized (s) {
+            V atual = s.get(chave);
+            if (atual != null) s.put(chave, f.apply(atual));
+        }
+    }
+
+    public void remover(K chave) {
+        if (capacidade == 0) return;
+        Map<K, V> s = segmento(chave);
+        synchronized (s) {
+            s.remove(chave);
+        }
+    }
+
+    public void limpar() {
+        for (Map<K, V> s : segmentos) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+
+    public int tamanho() {
+        int n = 0;
+        for (Map<K, V> s : segmentos) {
+            synchronized (s) {
+                n += s.size();
+            }
+        }
+        return n;
+    }
+
+    public int capacidade() {
+        return capacidade;
+    }
+
+    public Politica politica() {
+        return politica;
+    }
+
+    public long acertos() {
+        return acertos.sum();
+    }
+
+    public long faltas() {
+        return faltas.sum();
+    }
+}
@@ -0,0 +1,79 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text field of the v2 records: a fixed number of bytes inside the record holding
+ * 1(length) + the UTF-8 bytes when they fit, or 1(LONGO) + 8(offset) + 4(size) of the
+ * bytes in the DAO's HeapTextos. Unused bytes are zero.
+ */
+public class CampoTexto {
+
+    public static final int LONGO = 0xFF;
+    // Smallest field able to hold a heap reference
+    public static final int TAM_MINIMO = 1 + 8 + 4;
+
+    /**
+     * The text as it reads back: truncated to 'max' chars and trimmed, as the v1 fixed-length fields did.
+     */
+    public static String normalizar(String s, int max) {
+        if (s == null) return "";
+        if (s.length() > max) s = s.substring(0, max);
+        return s.trim();
+    }
+
+    public static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether a text of 'n' UTF-8 bytes fits inline in a field of 'tam' bytes.
+     */
+    public static boolean cabe(int n, int tam) {
+        return n < tam && n < LONGO;
+    }
+
+    /**
+     * Writes a text inline into the field at 'pos'. It must fit (see cabe).
+     */
+    public static void escrever(ByteBuffer b, int pos, int tam, byte[] texto) {
+        b.put(pos, (byte) texto.length);
+        for (int i = 0; i < tam - 1; i++) b.put(pos + 1 + i, i < texto.length ? texto[i] : 0);
+    }
+
+    /**
+     * Writes a reference to a text stored in the heap into the field at 'pos'.
+     */
+    public static void escreverReferencia(ByteBuffer b, int pos, int tam, long posHeap, int n) {
+        b.put(pos, (byte) LONGO);
+        b.putLong(pos + 1, posHeap);
+        b.putInt(pos + 9, n);
+        for (int i = TAM_MINIMO; i < tam; i++) b.put(pos + i, (byte) 0);
+    }
+
+    /**
+     * Writes a text into the field at 'pos', logging it into the heap first if it does not fit inline.
+     */
+    public static void escrever(ByteBuffer b, int pos, int tam, byte[] texto, HeapTextos heap, Transacao tx)
+            throws IOException {
+        if (cabe(texto.length, tam)) escrever(b, pos, tam, texto);
+        else escreverReferencia(b, pos, tam, heap.gravar(tx, texto), texto.length);
+    }
+
+    /**
+     * Decodes the field at 'pos'.
+     * @param heap Where long texts are read from.
+     */
+    public static String ler(ByteBuffer b, int pos, HeapTextos heap) throws IOException {
+        int n = b.get(pos) & 0xFF;
+        if (n == LONGO) return heap.ler(b.getLong(pos + 1), b.getInt(pos + 9));
+        if (b.hasArray()) {
+            return new String(b.array(), b.arrayOffset() + pos + 1, n, StandardCharsets.UTF_8);
+        }
+        byte[] texto = new byte[n];
+        for (int i = 0; i < n; i++) texto[i] = b.get(pos + 1 + i);
+        return new String(texto, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import logic.model.Tarefa;
+
+/**
+ * Encodes and decodes task records (format v2) straight from a buffer (see LeitorLote)
+ * with absolute gets. The field accessors let scans filter on cheap fields and only decode
+ * the description of the records they keep.
+ */
+public class CodecTarefa {
+
+    // Field offsets inside a record: 4(id)+4(uId)+1(flags)+4(date)+35(desc, see CampoTexto)
+    public static final int OFF_ID = 0;
+    public static final int OFF_USUARIO = 4;
+    public static final int OFF_FLAGS = 8;
+    public static final int OFF_DATA = 9;
+    public static final int OFF_DESC = 13;
+
+    // Bits of the flags byte
+    public static final int CONCLUIDA = 1;
+    public static final int ATIVO = 2;
+
+    public static int id(ByteBuffer b, int base) {
+        return b.getInt(base + OFF_ID);
+    }
+
+    public static int idUsuario(ByteBuffer b, int base) {
+        return b.getInt(base + OFF_USUARIO);
+    }
+
+    public static boolean concluida(ByteBuffer b, int base) {
+        return (b.get(base + OFF_FLAGS) & CONCLUIDA) != 0;
+    }
+
+    public static boolean ativo(ByteBuffer b, int base) {
+        return (b.get(base + OFF_FLAGS) & ATIVO) != 0;
+    }
+
+    /**
+     * Due date as a ConsultaTarefas.chaveData key (an epoch day, or SEM_DATA).
+     */
+    public static int data(ByteBuffer b, int base) {
+        return b.getInt(base + OFF_DATA);
+    }
+
+    public static String descricao(ByteBuffer b, int base, HeapTextos heap) throws IOException {
+        return CampoTexto.ler(b, base + OFF_DESC, heap);
+    }
+
+    public static int flags(boolean concluida, boolean ativo) {
+        return (concluida ? CONCLUIDA : 0) | (ativo ? ATIVO : 0);
+    }
+
+    /**
+     * Writes the fixed-size fields of a record at 'base'; the description is written with CampoTexto.
+     */
+    public static void codificar(ByteBuffer b, int base, int id, int idUsuario, int flags, int data) {
+        b.putInt(base + OFF_ID, id);
+        b.putInt(base + OFF_USUARIO, idUsuario);
+        b.put(base + OFF_FLAGS, (byte) flags);
+        b.putInt(base + OFF_DATA, data);
+    }
+
+    /**
+     * Sets dia/mes/ano of a task from a chaveData key; 0/0/0 when it has no date.
+     */
+    public static void definirData(Tarefa t, int data) {
+        if (data == ConsultaTarefas.SEM_DATA) {
+            t.dia = t.mes = t.ano = 0;
+            return;
+        }
+        LocalDate d = LocalDate.ofEpochDay(data);
+        t.dia = d.getDayOfMonth();
+        t.mes = d.getMonthValue();
+        t.ano = d.getYear();
+    }
+
+    /**
+     * Builds a Tarefa from the record at 'base'. Scans that only need the id, owner, flags
+     * or date read those fields directly instead.
+     */
+    public static Tarefa decodificar(ByteBuffer b, int base, HeapTextos heap) throws IOException {
+        Tarefa t = new Tarefa();
+        t.id = id(b, base);
+        t.idUsuario = idUsuario(b, base);
+        t.descricao = descricao(b, base, heap);
+        int flags = b.get(base + OFF_FLAGS);
+        t.concluida = (flags & CONCLUIDA) != 0;
+        t.ativo = (flags & ATIVO) != 0;
+        definirData(t, data(b, base));
+        return t;
+    }
+}
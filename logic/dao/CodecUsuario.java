@@ -0,0 +1,64 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import logic.model.Usuario;
+
+/**
+ * Encodes and decodes user records (format v2) straight from a buffer (see LeitorLote)
+ * with absolute gets.
+ */
+public class CodecUsuario {
+
+    // Field offsets inside a record: 4(id) + 1(flags) + 28(name) + 32(e-mail) + 23(password), see CampoTexto
+    public static final int OFF_ID = 0;
+    public static final int OFF_FLAGS = 4;
+    public static final int OFF_NOME = 5;
+    public static final int OFF_EMAIL = OFF_NOME + UsuarioDAO.TAM_CAMPO_NOME;
+    public static final int OFF_SENHA = OFF_EMAIL + UsuarioDAO.TAM_CAMPO_EMAIL;
+
+    // Bits of the flags byte
+    public static final int ATIVO = 1;
+    // The password field holds a Credenciais hash; without it, the legacy XORed password
+    public static final int CREDENCIAL = 2;
+
+    public static int id(ByteBuffer b, int base) {
+        return b.getInt(base + OFF_ID);
+    }
+
+    public static boolean ativo(ByteBuffer b, int base) {
+        return (b.get(base + OFF_FLAGS) & ATIVO) != 0;
+    }
+
+    public static boolean credencial(ByteBuffer b, int base) {
+        return (b.get(base + OFF_FLAGS) & CREDENCIAL) != 0;
+    }
+
+    public static String email(ByteBuffer b, int base, HeapTextos heap) throws IOException {
+        return CampoTexto.ler(b, base + OFF_EMAIL, heap);
+    }
+
+    /**
+     * Writes a whole active record at 'base'. Texts that do not fit inline are logged into the heap
+     * ('heap' and 'tx' may be null when they all fit). The texts must already be normalized.
+     * @param credencial A Credenciais hash of the password.
+     */
+    public static void codificar(ByteBuffer b, int base, int id, String nome, String email, String credencial,
+                                 HeapTextos heap, Transacao tx) throws IOException {
+        b.putInt(base + OFF_ID, id);
+        b.put(base + OFF_FLAGS, (byte) (ATIVO | CREDENCIAL));
+        CampoTexto.escrever(b, base + OFF_NOME, UsuarioDAO.TAM_CAMPO_NOME, CampoTexto.utf8(nome), heap, tx);
+        CampoTexto.escrever(b, base + OFF_EMAIL, UsuarioDAO.TAM_CAMPO_EMAIL, CampoTexto.utf8(email), heap, tx);
+        CampoTexto.escrever(b, base + OFF_SENHA, UsuarioDAO.TAM_CAMPO_SENHA, CampoTexto.utf8(credencial), heap, tx);
+    }
+
+    public static Usuario decodificar(ByteBuffer b, int base, HeapTextos heap) throws IOException {
+        Usuario u = new Usuario();
+        u.id = id(b, base);
+        u.nome = CampoTexto.ler(b, base + OFF_NOME, heap);
+        u.email = email(b, base, heap);
+        u.senha = CampoTexto.ler(b, base + OFF_SENHA, heap);
+        u.ativo = ativo(b, base);
+        return u;
+    }
+}
@@ -0,0 +1,88 @@
+package logic.dao;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Filter, order and page of a task listing run by TarefaDAO.consultar.
+ * Every check works on plain fields, so it is applied to the indexes (or the raw record)
+ * before anything is decoded. Dates are epoch days (see chaveData).
+ */
+public class ConsultaTarefas {
+
+    public enum Status { TODAS, PENDENTES, CONCLUIDAS }
+
+    public enum Ordem { ID, DATA }
+
+    // Date key of tasks without a due date: sorted after every real date
+    public static final int SEM_DATA = Integer.MAX_VALUE / 2;
+    // Latest year kept as a date; its epoch days stay well below SEM_DATA
+    private static final int MAX_ANO = 999999;
+    // Values of 'de' and 'ate' that leave that end of the range open
+    public static final int DESDE_SEMPRE = Integer.MIN_VALUE;
+    public static final int PARA_SEMPRE = Integer.MAX_VALUE;
+
+    public final Status status;
+    public final int de, ate;   // Due-date range, inclusive
+    public final Ordem ordem;
+    public final int limite;    // Page size; 0 returns every match
+    public final long depois;   // Cursor: key of the last task of the previous page, 0 for the first page
+
+    public ConsultaTarefas(Status status, int de, int ate, Ordem ordem, int limite, long depois) {
+        this.status = status;
+        this.de = de;
+        this.ate = ate;
+        this.ordem = ordem;
+        this.limite = limite;
+        this.depois = depois;
+    }
+
+    /**
+     * Every task with a given status, in id order.
+     */
+    public static ConsultaTarefas comStatus(Status status) {
+        return new ConsultaTarefas(status, DESDE_SEMPRE, PARA_SEMPRE, Ordem.ID, 0, 0);
+    }
+
+    /**
+     * Tasks due between two days (inclusive), by date.
+     */
+    public static ConsultaTarefas entre(Status status, int de, int ate) {
+        return new ConsultaTarefas(status, de, ate, Ordem.DATA, 0, 0);
+    }
+
+    /**
+     * Key of a due date: its epoch day, or SEM_DATA when the task has none. The web client
+     * sends 0 for an empty day or month (with the year still filled in), so any field out of
+     * range, or a day the month does not have (31/02), means no date rather than a guess.
+     */
+    public static int chaveData(int dia, int mes, int ano) {
+        if (dia < 1 || mes < 1 || ano < 1 || ano > MAX_ANO) return SEM_DATA;
+        try {
+            return (int) LocalDate.of(ano, mes, dia).toEpochDay();
+        } catch (DateTimeException e) {
+            return SEM_DATA;
+        }
+    }
+
+    /**
+     * Whether a pending task with this date key is overdue; one without a due date never is.
+     */
+    public static boolean atrasada(int data, int hoje) {
+        return data != SEM_DATA && data < hoje;
+    }
+
+    public static int hoje() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Whether a task with this status and date key passes the filter (the cursor is not checked).
+     */
+    public boolean aceita(boolean concluida, int data) {
+        if (status == Status.PENDENTES && concluida) return false;
+        if (status == Status.CONCLUIDAS && !concluida) return false;
+        if (data == SEM_DATA) return de == DESDE_SEMPRE && ate == PARA_SEMPRE;
+        return data >= de && data <= ate;
+    }
+}
@@ -0,0 +1,209 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import logic.util.Metricas;
+
+/**
+ * Salted password hashes (PBKDF2-HMAC-SHA256), stored as text in the password field of a
+ * user record: "pbkdf2-sha256$<iterations>$<salt>$<hash>", salt and hash in base64.
+ *
+ * Deriving a key is deliberately slow, so it runs on a small bounded pool instead of the
+ * request threads: a burst of logins queues there (and is refused with
+ * CredenciaisOcupadasException once the queue is full) while task requests keep running.
+ * Successful verifications are remembered for a while, keyed by user, as an HMAC of the
+ * credential and password under a key that lives only in this process, so repeating a
+ * check costs one HMAC instead of a derivation.
+ *
+ * -Dtodolist.senha.iteracoes (default 310000), -Dtodolist.senha.threads (default: number of
+ * cores), -Dtodolist.senha.fila (default 64), -Dtodolist.cache.senhas (entries, default 1024)
+ * and -Dtodolist.senha.cache.segundos (default 300).
+ */
+public class Credenciais {
+
+    private static final String PREFIXO = "pbkdf2-sha256";
+    private static final String ALGORITMO = "PBKDF2WithHmacSHA256";
+    private static final int TAM_SAL = 16;
+    private static final int TAM_HASH = 32;
+    // Longest credential gerar() produces: the iterations take at most 10 digits, and salt and
+    // hash are unpadded base64
+    public static final int TAM_MAXIMO =
+        PREFIXO.length() + 1 + 10 + 1 + (TAM_SAL * 4 + 2) / 3 + 1 + (TAM_HASH * 4 + 2) / 3;
+
+    // Credentials derived with fewer iterations are re-derived on the next successful login
+    public static final int ITERACOES = Integer.getInteger("todolist.senha.iteracoes", 310000);
+    private static final long VALIDADE_NANOS =
+        TimeUnit.SECONDS.toNanos(Long.getLong("todolist.senha.cache.segundos", 300));
+
+    private static final SecureRandom aleatorio = new SecureRandom();
+    private static final ThreadPoolExecutor pool = criarPool();
+
+    /**
+     * A successful verification: the HMAC of credential and password, and when it expires.
+     */
+    private static class Verificacao {
+        final byte[] marca;
+        final long expira;
+
+        Verificacao(byte[] marca, long expira) {
+            this.marca = marca;
+            this.expira = expira;
+        }
+    }
+
+    private static final CacheRegistros<Integer, Verificacao> verificadas =
+        CacheRegistros.configurado("todolist.cache.senhas", 1024);
+    private static final byte[] chaveMarcas = new byte[32];
+
+    // Exported at /api/metrics
+    private static final Metricas.Contador verificacoesCache = Metricas.contador("todolist_senhas_verificacoes_total",
+        "Password verifications, by how they were answered", Metricas.rotulos("via", "cache"));
+    private static final Metricas.Contador verificacoesKdf = Metricas.contador("todolist_senhas_verificacoes_total",
+        "Password verifications, by how they were answered", Metricas.rotulos("via", "kdf"));
+    private static final Metricas.Contador recusadas = Metricas.contador("todolist_senhas_recusadas_total",
+        "Key derivations refused because the pool queue was full", "");
+    private static final Metricas.Histograma tempoKdf = Metricas.duracao("todolist_senhas_kdf_duracao_segundos",
+        "Time spent deriving one key, excluding the wait in the queue", "");
+    private static final Metricas.Histograma tempoEspera = Metricas.duracao("todolist_senhas_espera_segundos",
+        "Time a key derivation waited in the pool queue", "");
+
+    static {
+        aleatorio.nextBytes(chaveMarcas);
+        Metricas.medidor("todolist_senhas_fila", "Key derivations waiting for a pool thread", "", () -> pool.getQueue().size());
+    }
+
+    private static ThreadPoolExecutor criarPool() {
+        int threads = Integer.getInteger("todolist.senha.threads", Runtime.getRuntime().availableProcessors());
+        int fila = Integer.getInteger("todolist.senha.fila", 64);
+        AtomicInteger n = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(fila), r -> {
+            Thread t = new Thread(r, "senhas-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Derives the credential of a new password, with a fresh salt. Runs on the pool.
+     */
+    public static String gerar(String senha) throws IOException {
+        byte[] sal = new byte[TAM_SAL];
+        aleatorio.nextBytes(sal);
+        int iteracoes = ITERACOES;
+        byte[] hash = derivar(senha, sal, iteracoes, TAM_HASH);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIXO + "$" + iteracoes + "$" + b64.encodeToString(sal) + "$" + b64.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against the stored credential of user 'idUsuario', from the cache of
+     * recent successes when possible, otherwise by deriving the key on the pool.
+     */
+    public static boolean verificar(int idUsuario, String credencial, String senha) throws IOException {
+        String[] partes = credencial.split("\\$");
+        if (partes.length != 4 || !partes[0].equals(PREFIXO)) return false;
+
+        byte[] marca = marca(credencial, senha);
+        Verificacao v = verificadas.get(idUsuario);
+        if (v != null && System.nanoTime() - v.expira < 0 && MessageDigest.isEqual(v.marca, marca)) {
+            verificacoesCache.incrementar();
+            return true;
+        }
+
+        byte[] sal, esperado;
+        int iteracoes;
+        try {
+            iteracoes = Integer.parseInt(partes[1]);
+            sal = Base64.getDecoder().decode(partes[2]);
+            esperado = Base64.getDecoder().decode(partes[3]);
+        } catch (IllegalArgumentException e) {
+            return false; // Corrupt credential: nothing matches it
+        }
+        verificacoesKdf.incrementar();
+        boolean ok = MessageDigest.isEqual(derivar(senha, sal, iteracoes, esperado.length), esperado);
+        if (ok) verificadas.put(idUsuario, new Verificacao(marca, System.nanoTime() + VALIDADE_NANOS));
+        return ok;
+    }
+
+    /**
+     * Whether a credential should be re-derived: a legacy or unreadable one, or one derived
+     * with fewer iterations than configured.
+     */
+    public static boolean desatualizada(String credencial) {
+        String[] partes = credencial.split("\\$");
+        if (partes.length != 4 || !partes[0].equals(PREFIXO)) return true;
+        try {
+            return Integer.parseInt(partes[1]) < ITERACOES;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Drops a user's cached verification (the user was deleted or changed password).
+     */
+    public static void esquecer(int idUsuario) {
+        verificadas.remover(idUsuario);
+    }
+
+    private static byte[] derivar(String senha, byte[] sal, int iteracoes, int tamanho) throws IOException {
+        long enfileirado = System.nanoTime();
+        return executar(() -> {
+            long inicio = System.nanoTime();
+            tempoEspera.registrar(inicio - enfileirado);
+            PBEKeySpec spec = new PBEKeySpec(senha.toCharArray(), sal, iteracoes, tamanho * 8);
+            try {
+                return SecretKeyFactory.getInstance(ALGORITMO).generateSecret(spec).getEncoded();
+            } finally {
+                spec.clearPassword();
+                tempoKdf.registrarDesde(inicio);
+            }
+        });
+    }
+
+    private static <T> T executar(Callable<T> tarefa) throws IOException {
+        try {
+            return pool.submit(tarefa).get();
+        } catch (RejectedExecutionException e) {
+            recusadas.incrementar();
+            throw new CredenciaisOcupadasException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido aguardando a verificação de senha");
+        } catch (ExecutionException e) {
+            throw new IOException("Erro ao derivar a senha: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * HMAC-SHA256 of credential and password under the process key; cheap, and useless
+     * outside this process.
+     */
+    private static byte[] marca(String credencial, String senha) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(chaveMarcas, "HmacSHA256"));
+            mac.update(credencial.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(senha.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e); // Every JDK ships HmacSHA256
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package logic.dao;
+
+import java.io.IOException;
+
+/**
+ * Too many password verifications are already queued (see Credenciais); the client should
+ * retry later (returned with a 503).
+ */
+public class CredenciaisOcupadasException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CredenciaisOcupadasException() {
+        super("Muitas verificações de senha em andamento; tente novamente em instantes.");
+    }
+
+    /**
+     * No stack trace: refusing work under load should stay cheap.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,86 @@
+package logic.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import logic.util.Metricas;
+
+/**
+ * Append-only file holding the UTF-8 texts too long to fit inline in their record
+ * (see CampoTexto). Texts are written through the DAO's transactions, since the file is a
+ * target of its log, so a record never points at bytes that did not survive a crash.
+ * Overwritten texts stay in place until MigradorFormato compacts the heap at startup,
+ * which it does once at least half of the file is garbage.
+ */
+public class HeapTextos {
+
+    private final String arquivo;
+    private final FileChannel canal;
+    private final AtomicLong fim;
+
+    private static final Metricas.Contador bytesLidos = Metricas.contador("todolist_bytes_lidos_total",
+        "Bytes read from data and index files", Metricas.rotulos("via", "HeapTextos"));
+
+    private HeapTextos(String arquivo, FileChannel canal) throws IOException {
+        this.arquivo = arquivo;
+        this.canal = canal;
+        this.fim = new AtomicLong(canal.size());
+    }
+
+    /**
+     * Opens the heap, creating it if it does not exist. Must run after the WAL was recovered,
+     * so the end of the file covers every text a record refers to.
+     */
+    public static HeapTextos abrir(String arquivo) throws IOException {
+        File f = new File(arquivo);
+        if (f.getParentFile() != null) f.getParentFile().mkdirs();
+        return new HeapTextos(arquivo, FileChannel.open(Paths.get(arquivo),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    public String arquivo() {
+        return arquivo;
+    }
+
+    /**
+     * Reserves space at the end of the file and logs the text there.
+     * @return The offset of the text.
+     */
+    public long gravar(Transacao tx, byte[] texto) throws IOException {
+        long pos = fim.getAndAdd(texto.length);
+        tx.seek(arquivo, pos);
+        tx.write(texto);
+        return pos;
+    }
+
+    /**
+     * Reads back a text written by gravar().
+     */
+    public String ler(long pos, int tamanho) throws IOException {
+        return new String(lerBytes(pos, tamanho), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads back the bytes of a text written by gravar().
+     * @throws IOException If the file ends before the text does.
+     */
+    byte[] lerBytes(long pos, int tamanho) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(tamanho);
+        while (b.hasRemaining()) {
+            if (canal.read(b, pos + b.position()) < 0) {
+                throw new IOException(arquivo + ": texto de " + tamanho + " bytes em " + pos + " passa do fim do arquivo");
+            }
+        }
+        bytesLidos.somar(tamanho);
+        return b.array();
+    }
+
+    void fechar() throws IOException {
+        canal.close();
+    }
+}
@@ -0,0 +1,192 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Persistent due-date index of the tasks.
+ * On disk it is a column with one int per record slot: the due date as an epoch day
+ * (ConsultaTarefas.SEM_DATA if the task has none) times two, plus one if the task is completed.
+ * Values of slots without an active record are meaningless; IndiceUsuario tells them apart.
+ *
+ * Two in-memory views are rebuilt from the column when loading:
+ * each user's tasks sorted by (date, id), which serves date-ordered and date-range listings,
+ * and the pending tasks of every user grouped by due date, which serves the reminder queries
+ * (due soon, overdue) without looking at any user's list.
+ * Both views are ListaOrdenada (ListaOrdenadaLong for the keys): writers are serialized and
+ * publish a new list that shares every block but the one they changed, readers never lock.
+ */
+public class IndiceDatas {
+
+    private static final long[] NENHUMA = new long[0];
+
+    private final VetorIndice valores;
+    private final Map<Integer, ListaOrdenadaLong> porUsuario = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, ListaOrdenada> pendentesPorDia = new ConcurrentSkipListMap<>();
+
+    private IndiceDatas(VetorIndice valores, IndicePrimario indice, IndiceUsuario indiceUsuario,
+            IntUnaryOperator idGlobal) {
+        this.valores = valores;
+        Map<Integer, long[]> listas = new HashMap<>();
+        Map<Integer, Integer> tamanhos = new HashMap<>();
+        Map<Integer, List<Integer>> pendentes = new HashMap<>();
+        for (int local = 1; local <= indice.tamanho(); local++) {
+            int slot = indice.buscar(local);
+            if (slot == IndicePrimario.SEM_SLOT) continue;
+            int id = idGlobal.applyAsInt(local);
+            int idUsuario = indiceUsuario.donoDe(slot);
+            if (idUsuario == IndiceUsuario.SEM_USUARIO) continue;
+            int dia = dia(slot);
+            long[] lista = listas.getOrDefault(idUsuario, NENHUMA);
+            int n = tamanhos.getOrDefault(idUsuario, 0);
+            if (n == lista.length) lista = Arrays.copyOf(lista, Math.max(4, n * 2));
+            lista[n] = chave(dia, id);
+            listas.put(idUsuario, lista);
+            tamanhos.put(idUsuario, n + 1);
+            // Ids are visited in order, so each day's list is already sorted
+            if (dia != ConsultaTarefas.SEM_DATA && !concluida(slot)) {
+                pendentes.computeIfAbsent(dia, d -> new ArrayList<>()).add(id);
+            }
+        }
+        for (Map.Entry<Integer, long[]> e : listas.entrySet()) {
+            long[] lista = e.getValue();
+            int n = tamanhos.get(e.getKey());
+            Arrays.sort(lista, 0, n);
+            porUsuario.put(e.getKey(), ListaOrdenadaLong.de(lista, n));
+        }
+        for (Map.Entry<Integer, List<Integer>> e : pendentes.entrySet()) {
+            int[] ids = e.getValue().stream().mapToInt(Integer::intValue).toArray();
+            pendentesPorDia.put(e.getKey(), ListaOrdenada.de(ids, ids.length));
+        }
+    }
+
+    /**
+     * Loads the index from disk. The primary and user indexes must already be loaded.
+     * @param total Number of record slots stored in the data file header.
+     * @param idGlobal Turns the local ids of the primary index into global ones (see ParticaoTarefas).
+     * @return The index, or null if the file is missing or does not cover exactly 'total' slots.
+     */
+    public static IndiceDatas carregar(String arquivo, int total, IndicePrimario indice,
+            IndiceUsuario indiceUsuario, IntUnaryOperator idGlobal) throws IOException {
+        VetorIndice v = VetorIndice.carregar(arquivo, total);
+        return v == null ? null : new IndiceDatas(v, indice, indiceUsuario, idGlobal);
+    }
+
+    /**
+     * Creates a brand new index file.
+     * @param valores Array where position 'slot' holds valor() of the record at that slot.
+     * @param total How many slots the array covers.
+     */
+    public static IndiceDatas criar(String arquivo, int[] valores, int total, IndicePrimario indice,
+            IndiceUsuario indiceUsuario, IntUnaryOperator idGlobal) throws IOException {
+        return new IndiceDatas(VetorIndice.criar(arquivo, valores, total), indice, indiceUsuario, idGlobal);
+    }
+
+    /**
+     * Column value of a task.
+     */
+    public static int valor(int dia, boolean concluida) {
+        return dia * 2 + (concluida ? 1 : 0);
+    }
+
+    /**
+     * Key of a task in the per-user lists: date in the high half, id in the low one.
+     */
+    public static long chave(int dia, int id) {
+        return ((long) dia << 32) | id;
+    }
+
+    public static int diaDaChave(long chave) {
+        return (int) (chave >> 32);
+    }
+
+    public static int idDaChave(long chave) {
+        return (int) chave;
+    }
+
+    /**
+     * Due date (epoch day) of the task at a slot.
+     */
+    public int dia(int slot) {
+        return valores.get(slot) >> 1;
+    }
+
+    public boolean concluida(int slot) {
+        return (valores.get(slot) & 1) != 0;
+    }
+
+    /**
+     * Iterates chave() of a user's tasks in ascending order, from the first one not below 'inicio'.
+     */
+    ListaOrdenadaLong.Cursor chavesDesde(int idUsuario, long inicio) {
+        return porUsuario.getOrDefault(idUsuario, ListaOrdenadaLong.VAZIA).aPartirDe(inicio);
+    }
+
+    /**
+     * chave() of the pending tasks of every user due between two days (inclusive),
+     * in ascending order, at most 'limite' of them.
+     */
+    public long[] pendentes(int de, int ate, int limite) {
+        long[] chaves = new long[Math.min(limite, 64)];
+        int n = 0;
+        // An open range must not reach the key of tasks without a date, which are never due
+        ate = Math.min(ate, ConsultaTarefas.SEM_DATA - 1);
+        if (de > ate) return NENHUMA;
+        for (Map.Entry<Integer, ListaOrdenada> doDia : pendentesPorDia.subMap(de, true, ate, true).entrySet()) {
+            for (ListaOrdenada.Cursor ids = doDia.getValue().cursor(); ids.temProximo(); ) {
+                if (n == limite) return chaves;
+                if (n == chaves.length) chaves = Arrays.copyOf(chaves, (int) Math.min(limite, n * 2L));
+                chaves[n++] = chave(doDia.getKey(), ids.proximo());
+            }
+        }
+        return Arrays.copyOf(chaves, n);
+    }
+
+    public synchronized void registrar(int slot, int idUsuario, int id, int dia, boolean concluida) throws IOException {
+        valores.set(slot, valor(dia, concluida));
+        porUsuario.put(idUsuario, porUsuario.getOrDefault(idUsuario, ListaOrdenadaLong.VAZIA).com(chave(dia, id)));
+        if (!concluida) adicionarPendente(dia, id);
+    }
+
+    /**
+     * Records a change of the completed flag of the task at a slot.
+     */
+    public synchronized void concluir(int slot, int id, boolean concluida) throws IOException {
+        int dia = dia(slot);
+        if (concluida(slot) == concluida) return;
+        valores.set(slot, valor(dia, concluida));
+        if (concluida) removerPendente(dia, id);
+        else adicionarPendente(dia, id);
+    }
+
+    public synchronized void remover(int slot, int idUsuario, int id) {
+        int dia = dia(slot);
+        ListaOrdenadaLong atual = porUsuario.get(idUsuario);
+        if (atual != null) {
+            ListaOrdenadaLong nova = atual.sem(chave(dia, id));
+            if (nova.tamanho() == 0) porUsuario.remove(idUsuario);
+            else porUsuario.put(idUsuario, nova);
+        }
+        if (!concluida(slot)) removerPendente(dia, id);
+    }
+
+    private void adicionarPendente(int dia, int id) {
+        if (dia == ConsultaTarefas.SEM_DATA) return;
+        pendentesPorDia.put(dia, pendentesPorDia.getOrDefault(dia, ListaOrdenada.VAZIA).com(id));
+    }
+
+    private void removerPendente(int dia, int id) {
+        ListaOrdenada atual = pendentesPorDia.get(dia);
+        if (atual == null) return;
+        ListaOrdenada nova = atual.sem(id);
+        if (nova.tamanho() == 0) pendentesPorDia.remove(dia);
+        else pendentesPorDia.put(dia, nova);
+    }
+}
@@ -0,0 +1,265 @@
+package logic.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import logic.util.BinInput;
+import logic.util.BinOutput;
+
+/**
+ * On-disk open-addressing hash index (linear probing) mapping a key hash to a record slot.
+ * Only the 16-byte header is kept in memory; every probe reads one bucket from disk.
+ * Layout: 4(capacity) + 4(used) + 4(total) + 4(active), then 'capacity' buckets of
+ * 4(hash) + 4(slot). Total/active mirror the data file header so a stale index is detected.
+ * Hashes may collide, so candidates are confirmed against the data file by a Verificador.
+ * Lookups run concurrently with each other; inserts and deletes (which may rewrite the
+ * whole file on rehash) take the lock exclusively.
+ */
+public class IndiceHash {
+
+    public static final int VAZIO = -1;
+    public static final int REMOVIDO = -2;
+
+    private static final int TAM_CABECALHO = 16;
+    private static final int TAM_BUCKET = 8;
+    private static final int CAPACIDADE_MINIMA = 64;
+
+    /**
+     * Confirms that the record stored at a slot really has the searched key.
+     */
+    public interface Verificador {
+        boolean confere(int slot) throws IOException;
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final String arquivo;
+    private int capacidade;
+    private int usados; // Occupied buckets, tombstones included
+
+    private IndiceHash(String arquivo, int capacidade, int usados) {
+        this.arquivo = arquivo;
+        this.capacidade = capacidade;
+        this.usados = usados;
+    }
+
+    /**
+     * Opens the index from disk.
+     * @return The index, or null if the file is missing or was not in sync with the data file header.
+     */
+    public static IndiceHash carregar(String arquivo, int total, int ativos) throws IOException {
+        File f = new File(arquivo);
+        if (!f.exists() || f.length() < TAM_CABECALHO) return null;
+
+        BinInput in = new BinInput(arquivo);
+        int capacidade = in.readInt();
+        int usados = in.readInt();
+        int totalIdx = in.readInt();
+        int ativosIdx = in.readInt();
+        in.close();
+
+        if (totalIdx != total || ativosIdx != ativos) return null;
+        if (f.length() != TAM_CABECALHO + (long) capacidade * TAM_BUCKET) return null;
+        return new IndiceHash(arquivo, capacidade, usados);
+    }
+
+    /**
+     * Writes a brand new index file holding the given (hash, slot) pairs.
+     */
+    public static IndiceHash criar(String arquivo, int[] hashes, int[] slots, int n, int total, int ativos) throws IOException {
+        return criar(arquivo, hashes, slots, n, n, total, ativos);
+    }
+
+    /**
+     * @param reserva Number of entries the table must fit at a load factor of 1/2 (at least 'n').
+     */
+    private static IndiceHash criar(String arquivo, int[] hashes, int[] slots, int n, int reserva, int total, int ativos) throws IOException {
+        int capacidade = CAPACIDADE_MINIMA;
+        while (reserva * 2 > capacidade) capacidade *= 2;
+
+        int[] tabHash = new int[capacidade];
+        int[] tabSlot = new int[capacidade];
+        Arrays.fill(tabSlot, VAZIO);
+        for (int i = 0; i < n; i++) {
+            int b = espalhar(hashes[i]) & (capacidade - 1);
+            while (tabSlot[b] != VAZIO) b = (b + 1) & (capacidade - 1);
+            tabHash[b] = hashes[i];
+            tabSlot[b] = slots[i];
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(arquivo)))) {
+            out.writeInt(capacidade);
+            out.writeInt(n);
+            out.writeInt(total);
+            out.writeInt(ativos);
+            for (int b = 0; b < capacidade; b++) {
+                out.writeInt(tabHash[b]);
+                out.writeInt(tabSlot[b]);
+            }
+        }
+        return new IndiceHash(arquivo, capacidade, n);
+    }
+
+    /**
+     * Returns the slot of the record with the given key hash, or VAZIO if none matches.
+     */
+    public int buscar(int hash, Verificador v) throws IOException {
+        lock.readLock().lock();
+        BinInput in = null;
+        try {
+            in = new BinInput(arquivo);
+            int b = espalhar(hash) & (capacidade - 1);
+            for (int i = 0; i < capacidade; i++) {
+                in.seek(TAM_CABECALHO + (long) b * TAM_BUCKET);
+                int h = in.readInt();
+                int slot = in.readInt();
+                if (slot == VAZIO) return VAZIO;
+                if (slot >= 0 && h == hash && v.confere(slot)) return slot;
+                b = (b + 1) & (capacidade - 1);
+            }
+            return VAZIO;
+        } finally {
+            if (in != null) in.close();
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the set of slots referenced by live buckets, read with one sequential pass.
+     */
+    public BitSet slotsOcupados() throws IOException {
+        lock.readLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+            in.skipBytes(TAM_CABECALHO);
+            BitSet ocupados = new BitSet();
+            for (int b = 0; b < capacidade; b++) {
+                in.readInt();
+                int s = in.readInt();
+                if (s >= 0) ocupados.set(s);
+            }
+            return ocupados;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a (hash, slot) pair. total/ativos are the data file header values after the insert.
+     */
+    public void inserir(int hash, int slot, int total, int ativos) throws IOException {
+        lock.writeLock().lock();
+        try {
+            inserirBucket(hash, slot, total, ativos);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void inserirBucket(int hash, int slot, int total, int ativos) throws IOException {
+        // Keep the load factor (tombstones included) at or below 1/2
+        if ((usados + 1) * 2 > capacidade) reconstruir();
+
+        BinInput in = new BinInput(arquivo);
+        int b = espalhar(hash) & (capacidade - 1);
+        int atual;
+        while (true) {
+            in.seek(TAM_CABECALHO + (long) b * TAM_BUCKET + 4);
+            atual = in.readInt();
+            if (atual == VAZIO || atual == REMOVIDO) break;
+            b = (b + 1) & (capacidade - 1);
+        }
+        in.close();
+        if (atual == VAZIO) usados++;
+
+        BinOutput out = new BinOutput(arquivo, false);
+        out.seek(TAM_CABECALHO + (long) b * TAM_BUCKET);
+        out.writeInt(hash);
+        out.writeInt(slot);
+        salvarCabecalho(out, total, ativos);
+        out.close();
+    }
+
+    /**
+     * Replaces the bucket holding 'slot' with a tombstone. total/ativos are the data file header values after the delete.
+     */
+    public void remover(int hash, int slot, int total, int ativos) throws IOException {
+        lock.writeLock().lock();
+        try {
+            removerBucket(hash, slot, total, ativos);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removerBucket(int hash, int slot, int total, int ativos) throws IOException {
+        BinInput in = new BinInput(arquivo);
+        int b = espalhar(hash) & (capacidade - 1);
+        int achado = VAZIO;
+        for (int i = 0; i < capacidade; i++) {
+            in.seek(TAM_CABECALHO + (long) b * TAM_BUCKET + 4);
+            int s = in.readInt();
+            if (s == VAZIO) break;
+            if (s == slot) { achado = b; break; }
+            b = (b + 1) & (capacidade - 1);
+        }
+        in.close();
+
+        BinOutput out = new BinOutput(arquivo, false);
+        if (achado != VAZIO) {
+            out.seek(TAM_CABECALHO + (long) achado * TAM_BUCKET + 4);
+            out.writeInt(REMOVIDO);
+        }
+        salvarCabecalho(out, total, ativos);
+        out.close();
+    }
+
+    private void salvarCabecalho(BinOutput out, int total, int ativos) throws IOException {
+        out.seek(0);
+        out.writeInt(capacidade);
+        out.writeInt(usados);
+        out.writeInt(total);
+        out.writeInt(ativos);
+    }
+
+    /**
+     * Rehashes the live buckets into a table sized for them, dropping tombstones.
+     */
+    private void reconstruir() throws IOException {
+        int[] hashes, slots;
+        int n = 0, total, ativos;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+            in.readInt();
+            in.readInt();
+            total = in.readInt();
+            ativos = in.readInt();
+            hashes = new int[capacidade];
+            slots = new int[capacidade];
+            for (int b = 0; b < capacidade; b++) {
+                int h = in.readInt();
+                int s = in.readInt();
+                if (s >= 0) { hashes[n] = h; slots[n] = s; n++; }
+            }
+        }
+        // Leave room for the pending insert
+        IndiceHash novo = criar(arquivo, hashes, slots, n, n + 1, total, ativos);
+        this.capacidade = novo.capacidade;
+        this.usados = novo.usados;
+    }
+
+    /**
+     * Mixes the bits of a String hash so that similar keys spread across the table.
+     */
+    private static int espalhar(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+}
@@ -0,0 +1,64 @@
+package logic.dao;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * In-memory idUsuario -> task ids index, each list sorted by id. It lets id-ordered pages
+ * start right after their cursor instead of scanning every task of the user.
+ * Not persisted: it is derived when loading from the primary and user indexes, which are
+ * both in memory, so no record is read. Ids are global (see ParticaoTarefas).
+ * Lists are ListaOrdenada, like the posting lists of IndiceUsuario.
+ */
+public class IndiceIds {
+
+    private static final int[] NENHUM = new int[0];
+
+    private final Map<Integer, ListaOrdenada> ids = new ConcurrentHashMap<>();
+
+    /**
+     * @param idGlobal Turns the local ids of the primary index into global ones.
+     */
+    public IndiceIds(IndicePrimario indice, IndiceUsuario indiceUsuario, IntUnaryOperator idGlobal) {
+        Map<Integer, int[]> listas = new HashMap<>();
+        Map<Integer, Integer> tamanhos = new HashMap<>();
+        for (int local = 1; local <= indice.tamanho(); local++) {
+            int slot = indice.buscar(local);
+            if (slot == IndicePrimario.SEM_SLOT) continue;
+            int idUsuario = indiceUsuario.donoDe(slot);
+            if (idUsuario == IndiceUsuario.SEM_USUARIO) continue;
+            int[] lista = listas.getOrDefault(idUsuario, NENHUM);
+            int n = tamanhos.getOrDefault(idUsuario, 0);
+            if (n == lista.length) lista = Arrays.copyOf(lista, Math.max(4, n * 2));
+            lista[n] = idGlobal.applyAsInt(local); // Ids are visited in order, so each list is already sorted
+            listas.put(idUsuario, lista);
+            tamanhos.put(idUsuario, n + 1);
+        }
+        for (Map.Entry<Integer, int[]> e : listas.entrySet()) {
+            ids.put(e.getKey(), ListaOrdenada.de(e.getValue(), tamanhos.get(e.getKey())));
+        }
+    }
+
+    /**
+     * Iterates the ids of a user's tasks above 'depois', in ascending order.
+     */
+    ListaOrdenada.Cursor idsDepois(int idUsuario, int depois) {
+        ListaOrdenada lista = ids.getOrDefault(idUsuario, ListaOrdenada.VAZIA);
+        return depois == Integer.MAX_VALUE ? ListaOrdenada.VAZIA.cursor() : lista.aPartirDe(depois + 1);
+    }
+
+    public synchronized void registrar(int idUsuario, int id) {
+        ids.put(idUsuario, ids.getOrDefault(idUsuario, ListaOrdenada.VAZIA).com(id));
+    }
+
+    public synchronized void remover(int idUsuario, int id) {
+        ListaOrdenada atual = ids.get(idUsuario);
+        if (atual == null) return;
+        ListaOrdenada nova = atual.sem(id);
+        if (nova.tamanho() == 0) ids.remove(idUsuario);
+        else ids.put(idUsuario, nova);
+    }
+}
@@ -0,0 +1,66 @@
+package logic.dao;
+
+import java.io.IOException;
+
+/**
+ * Persistent id -> slot index. Position (id - 1) of the underlying array holds the
+ * record slot in the data file, or SEM_SLOT when the id was deleted.
+ */
+public class IndicePrimario {
+
+    public static final int SEM_SLOT = VetorIndice.VAZIO;
+
+    private final VetorIndice slots;
+
+    private IndicePrimario(VetorIndice slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * Loads the index from disk.
+     * @param ultimoId Last id stored in the data file header.
+     * @return The index, or null if the file is missing or does not cover exactly 'ultimoId' ids.
+     */
+    public static IndicePrimario carregar(String arquivo, int ultimoId) throws IOException {
+        VetorIndice v = VetorIndice.carregar(arquivo, ultimoId);
+        return v == null ? null : new IndicePrimario(v);
+    }
+
+    /**
+     * Creates a brand new index file.
+     * @param slots Array where position (id - 1) holds the slot of that id.
+     * @param quantidade How many ids the array covers.
+     */
+    public static IndicePrimario criar(String arquivo, int[] slots, int quantidade) throws IOException {
+        return new IndicePrimario(VetorIndice.criar(arquivo, slots, quantidade));
+    }
+
+    /**
+     * Highest id covered by the index.
+     */
+    public int tamanho() {
+        return slots.tamanho();
+    }
+
+    /**
+     * Returns the slot of a given id, or SEM_SLOT if it is unknown or deleted.
+     */
+    public int buscar(int id) {
+        return slots.get(id - 1);
+    }
+
+    /**
+     * Maps a newly inserted id to its slot. Ids skipped in between are left as SEM_SLOT.
+     */
+    public void registrar(int id, int slot) throws IOException {
+        slots.set(id - 1, slot);
+    }
+
+    /**
+     * Marks an id as deleted.
+     */
+    public void remover(int id) throws IOException {
+        if (id < 1 || id > slots.tamanho()) return;
+        slots.set(id - 1, SEM_SLOT);
+    }
+}
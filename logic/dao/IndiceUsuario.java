@@ -0,0 +1,95 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent idUsuario -> slots index (posting lists).
+ * On disk it is a column with one int per record slot holding the owner of that slot,
+ * or SEM_USUARIO if the record was deleted. The per-user posting lists are rebuilt
+ * from this column when loading and kept sorted by slot, so listings read the data
+ * file sequentially.
+ * Posting lists are ListaOrdenada: writers are serialized and publish a new list that
+ * shares every block but the one they changed, so listings read them without locking.
+ */
+public class IndiceUsuario {
+
+    public static final int SEM_USUARIO = VetorIndice.VAZIO;
+    private static final int[] NENHUM = new int[0];
+
+    private final VetorIndice donos;
+    private final Map<Integer, ListaOrdenada> postagens = new ConcurrentHashMap<>();
+
+    private IndiceUsuario(VetorIndice donos) {
+        this.donos = donos;
+        Map<Integer, int[]> listas = new HashMap<>();
+        Map<Integer, Integer> tamanhos = new HashMap<>();
+        for (int slot = 0; slot < donos.tamanho(); slot++) {
+            int idUsuario = donos.get(slot);
+            if (idUsuario == SEM_USUARIO) continue;
+            int[] lista = listas.getOrDefault(idUsuario, NENHUM);
+            int n = tamanhos.getOrDefault(idUsuario, 0);
+            if (n == lista.length) lista = Arrays.copyOf(lista, Math.max(4, n * 2));
+            lista[n] = slot; // Slots are visited in order, so each list is already sorted
+            listas.put(idUsuario, lista);
+            tamanhos.put(idUsuario, n + 1);
+        }
+        for (Map.Entry<Integer, int[]> e : listas.entrySet()) {
+            postagens.put(e.getKey(), ListaOrdenada.de(e.getValue(), tamanhos.get(e.getKey())));
+        }
+    }
+
+    /**
+     * Loads the index from disk.
+     * @param total Number of record slots stored in the data file header.
+     * @return The index, or null if the file is missing or does not cover exactly 'total' slots.
+     */
+    public static IndiceUsuario carregar(String arquivo, int total) throws IOException {
+        VetorIndice v = VetorIndice.carregar(arquivo, total);
+        return v == null ? null : new IndiceUsuario(v);
+    }
+
+    /**
+     * Creates a brand new index file.
+     * @param donos Array where position 'slot' holds the owner of that record, or SEM_USUARIO.
+     * @param total How many slots the array covers.
+     */
+    public static IndiceUsuario criar(String arquivo, int[] donos, int total) throws IOException {
+        return new IndiceUsuario(VetorIndice.criar(arquivo, donos, total));
+    }
+
+    /**
+     * Returns a copy of the slots owned by a user, in ascending order.
+     */
+    public int[] slotsDe(int idUsuario) {
+        ListaOrdenada lista = postagens.get(idUsuario);
+        return lista == null ? NENHUM : lista.paraArray();
+    }
+
+    /**
+     * Returns the owner of a slot, or SEM_USUARIO if it holds no active record.
+     */
+    public int donoDe(int slot) {
+        return donos.get(slot);
+    }
+
+    public synchronized void registrar(int slot, int idUsuario) throws IOException {
+        donos.set(slot, idUsuario);
+        postagens.put(idUsuario, postagens.getOrDefault(idUsuario, ListaOrdenada.VAZIA).com(slot));
+    }
+
+    public synchronized void remover(int slot) throws IOException {
+        int idUsuario = donos.get(slot);
+        if (idUsuario == SEM_USUARIO) return;
+        donos.set(slot, SEM_USUARIO);
+
+        ListaOrdenada atual = postagens.get(idUsuario);
+        if (atual == null) return;
+        ListaOrdenada nova = atual.sem(slot);
+        if (nova.tamanho() == 0) postagens.remove(idUsuario);
+        else postagens.put(idUsuario, nova);
+    }
+}
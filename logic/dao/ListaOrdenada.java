@@ -0,0 +1,195 @@
+package logic.dao;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of ints stored as a list of blocks of at most TAM_BLOCO values, used for the
+ * posting lists of the indexes. A list is never changed once built: com() and sem() return a
+ * new list that copies only the block they touch and the array of blocks, so a change costs
+ * O(TAM_BLOCO + size / TAM_BLOCO) instead of a copy of the whole list. Readers holding an
+ * older list never lock and never see a half-made change.
+ */
+final class ListaOrdenada {
+
+    static final int TAM_BLOCO = 256;
+    static final ListaOrdenada VAZIA = new ListaOrdenada(new int[0][], 0);
+
+    // Non-empty sorted blocks, each one above the previous
+    private final int[][] blocos;
+    private final int tamanho;
+
+    private ListaOrdenada(int[][] blocos, int tamanho) {
+        this.blocos = blocos;
+        this.tamanho = tamanho;
+    }
+
+    /**
+     * Builds a list from the first 'n' values of an array, which must be sorted and distinct.
+     */
+    static ListaOrdenada de(int[] valores, int n) {
+        if (n == 0) return VAZIA;
+        int[][] blocos = new int[(n + TAM_BLOCO - 1) / TAM_BLOCO][];
+        for (int b = 0; b < blocos.length; b++) {
+            blocos[b] = Arrays.copyOfRange(valores, b * TAM_BLOCO, Math.min(n, (b + 1) * TAM_BLOCO));
+        }
+        return new ListaOrdenada(blocos, n);
+    }
+
+    int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * The list with 'valor' added (this one if it is already there).
+     */
+    ListaOrdenada com(int valor) {
+        if (blocos.length == 0) return new ListaOrdenada(new int[][] {{valor}}, 1);
+        int b = bloco(valor);
+        int[] bloco = blocos[b];
+        int pos = Arrays.binarySearch(bloco, valor);
+        if (pos >= 0) return this;
+        pos = -pos - 1;
+
+        int[][] novos;
+        if (bloco.length < TAM_BLOCO) {
+            novos = blocos.clone();
+            novos[b] = inserir(bloco, pos, valor);
+        } else if (b == blocos.length - 1 && pos == bloco.length) {
+            // Appending past a full last block starts a new one, so appended lists stay dense
+            novos = Arrays.copyOf(blocos, blocos.length + 1);
+            novos[b + 1] = new int[] {valor};
+        } else {
+            int[] cheio = inserir(bloco, pos, valor);
+            int meio = cheio.length / 2;
+            novos = new int[blocos.length + 1][];
+            System.arraycopy(blocos, 0, novos, 0, b);
+            novos[b] = Arrays.copyOfRange(cheio, 0, meio);
+            novos[b + 1] = Arrays.copyOfRange(cheio, meio, cheio.length);
+            System.arraycopy(blocos, b + 1, novos, b + 2, blocos.length - b - 1);
+        }
+        return new ListaOrdenada(novos, tamanho + 1);
+    }
+
+    /**
+     * The list without 'valor' (this one if it is not there).
+     */
+    ListaOrdenada sem(int valor) {
+        if (blocos.length == 0) return this;
+        int b = bloco(valor);
+        int[] bloco = blocos[b];
+        int pos = Arrays.binarySearch(bloco, valor);
+        if (pos < 0) return this;
+        if (tamanho == 1) return VAZIA;
+
+        int[] novo = new int[bloco.length - 1];
+        System.arraycopy(bloco, 0, novo, 0, pos);
+        System.arraycopy(bloco, pos + 1, novo, pos, bloco.length - pos - 1);
+        if (novo.length == 0) {
+            int[][] novos = new int[blocos.length - 1][];
+            System.arraycopy(blocos, 0, novos, 0, b);
+            System.arraycopy(blocos, b + 1, novos, b, blocos.length - b - 1);
+            return new ListaOrdenada(novos, tamanho - 1);
+        }
+        // A block left small is merged into its next (or previous) neighbor when they fit in one
+        int vizinho = b + 1 < blocos.length ? b + 1 : b - 1;
+        if (novo.length <= TAM_BLOCO / 4 && vizinho >= 0 && novo.length + blocos[vizinho].length <= TAM_BLOCO) {
+            int primeiro = Math.min(b, vizinho);
+            int[] antes = primeiro == b ? novo : blocos[vizinho];
+            int[] depois = primeiro == b ? blocos[vizinho] : novo;
+            int[] junto = Arrays.copyOf(antes, antes.length + depois.length);
+            System.arraycopy(depois, 0, junto, antes.length, depois.length);
+            int[][] novos = new int[blocos.length - 1][];
+            System.arraycopy(blocos, 0, novos, 0, primeiro);
+            novos[primeiro] = junto;
+            System.arraycopy(blocos, primeiro + 2, novos, primeiro + 1, blocos.length - primeiro - 2);
+            return new ListaOrdenada(novos, tamanho - 1);
+        }
+        int[][] novos = blocos.clone();
+        novos[b] = novo;
+        return new ListaOrdenada(novos, tamanho - 1);
+    }
+
+    /**
+     * A copy of the values, in ascending order.
+     */
+    int[] paraArray() {
+        int[] valores = new int[tamanho];
+        int n = 0;
+        for (int[] bloco : blocos) {
+            System.arraycopy(bloco, 0, valores, n, bloco.length);
+            n += bloco.length;
+        }
+        return valores;
+    }
+
+    /**
+     * Iterates the values from the first one not below 'valor'.
+     */
+    Cursor aPartirDe(int valor) {
+        Cursor c = new Cursor(blocos);
+        if (blocos.length == 0) return c;
+        c.b = bloco(valor);
+        int pos = Arrays.binarySearch(blocos[c.b], valor);
+        c.i = pos >= 0 ? pos : -pos - 1;
+        if (c.i == blocos[c.b].length) {
+            c.b++;
+            c.i = 0;
+        }
+        return c;
+    }
+
+    /**
+     * Iterates all the values.
+     */
+    Cursor cursor() {
+        return new Cursor(blocos);
+    }
+
+    /**
+     * Ascending iteration over the values of one list.
+     */
+    static final class Cursor {
+        private final int[][] blocos;
+        private int b;
+        private int i;
+
+        private Cursor(int[][] blocos) {
+            this.blocos = blocos;
+        }
+
+        boolean temProximo() {
+            return b < blocos.length;
+        }
+
+        int proximo() {
+            int valor = blocos[b][i];
+            if (++i == blocos[b].length) {
+                b++;
+                i = 0;
+            }
+            return valor;
+        }
+    }
+
+    /**
+     * Index of the block where 'valor' is or would go: the last one starting at or below it.
+     */
+    private int bloco(int valor) {
+        int lo = 0;
+        int hi = blocos.length - 1;
+        while (lo < hi) {
+            int meio = (lo + hi + 1) >>> 1;
+            if (blocos[meio][0] <= valor) lo = meio;
+            else hi = meio - 1;
+        }
+        return lo;
+    }
+
+    private static int[] inserir(int[] bloco, int pos, int valor) {
+        int[] novo = new int[bloco.length + 1];
+        System.arraycopy(bloco, 0, novo, 0, pos);
+        novo[pos] = valor;
+        System.arraycopy(bloco, pos, novo, pos + 1, bloco.length - pos);
+        return novo;
+    }
+}
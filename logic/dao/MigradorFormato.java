@@ -0,0 +1,312 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import logic.util.Armazenamento;
+import logic.util.BinInput;
+import logic.util.LeitorLote;
+import logic.util.Varredura;
+
+/**
+ * Converts data files from format 1 (12-byte header, fixed-length UTF-16 strings, one byte
+ * per boolean, dates as three ints) to the current one (see Cabecalho, CodecTarefa and
+ * CodecUsuario). Slots are kept, so ids and record positions do not change.
+ *
+ * Runs online from the DAOs' inicializar(), right after their log was replayed, and offline
+ * with the server stopped: java -cp ... logic.dao.MigradorFormato
+ * The new data file and heap are written aside and renamed over the old ones, the data
+ * file last, so a crash midway leaves the v1 file in place and the migration runs again.
+ *
+ * The same runs compact the heap of a v2 file (see compactar), which only ever grows
+ * while the server runs.
+ */
+public class MigradorFormato {
+
+    private static final int TAM_CABECALHO_V1 = 12;
+    // v1 task record: 4(id)+4(uId)+(100*2)(desc)+1(done)+1(active)+4+4+4(date)
+    private static final int TAM_TAREFA_V1 = 222;
+    // v1 user record: 4(id) + (60*2) + (40*2) + (20*2) + 1(active)
+    private static final int TAM_USUARIO_V1 = 245;
+    // Records converted per read
+    private static final int LOTE = 4096;
+    // Heaps up to this size are never compacted
+    private static final long HEAP_MINIMO = 1 << 20;
+
+    /**
+     * Converts the v1 record at 'base' of 'v1' into the v2 record at 'baseV2' of 'v2'.
+     */
+    private interface Conversor {
+        void converter(ByteBuffer v1, int base, ByteBuffer v2, int baseV2, SaidaHeap heap) throws IOException;
+    }
+
+    /**
+     * Heap file written front to back during a migration.
+     */
+    private static class SaidaHeap {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long pos;
+
+        SaidaHeap(Path arquivo) throws IOException {
+            canal = abrir(arquivo);
+        }
+
+        /**
+         * Appends a text.
+         * @return Its offset in the heap.
+         */
+        long anexar(byte[] texto) throws IOException {
+            long inicio = pos;
+            if (texto.length > buffer.remaining()) descarregar();
+            if (texto.length > buffer.capacity()) {
+                escrever(canal, ByteBuffer.wrap(texto));
+            } else {
+                buffer.put(texto);
+            }
+            pos += texto.length;
+            return inicio;
+        }
+
+        void descarregar() throws IOException {
+            buffer.flip();
+            escrever(canal, buffer);
+            buffer.clear();
+        }
+
+        void fechar() throws IOException {
+            descarregar();
+            canal.force(true);
+            canal.close();
+        }
+    }
+
+    /**
+     * Migrates a task data file if it is in format 1. Its log must have been replayed.
+     * @return Whether the file was migrated.
+     */
+    public static boolean migrarTarefas(String arquivo, String arquivoHeap) throws IOException {
+        return migrar(arquivo, arquivoHeap, TAM_TAREFA_V1, TarefaDAO.TAM_REGISTRO,
+            (v1, base, v2, baseV2, heap) -> {
+                boolean ativo = v1.get(base + 209) != 0;
+                // Same rule as new tasks: a v1 date with an empty day or month, or an invalid one, becomes no date
+                int data = ConsultaTarefas.chaveData(v1.getInt(base + 210), v1.getInt(base + 214), v1.getInt(base + 218));
+                CodecTarefa.codificar(v2, baseV2, v1.getInt(base), v1.getInt(base + 4),
+                    CodecTarefa.flags(v1.get(base + 208) != 0, ativo), data);
+                // Texts of deleted records are dropped
+                String descricao = ativo ? LeitorLote.lerString(v1, base + 8, TarefaDAO.TAM_DESC) : "";
+                texto(v2, baseV2 + CodecTarefa.OFF_DESC, TarefaDAO.TAM_CAMPO_DESC, descricao, heap);
+            });
+    }
+
+    /**
+     * Migrates files/usuarios.bin if it is in format 1. Its log must have been replayed.
+     * @return Whether the file was migrated.
+     */
+    public static boolean migrarUsuarios() throws IOException {
+        return migrar(UsuarioDAO.ARQUIVO, UsuarioDAO.ARQUIVO_HEAP, TAM_USUARIO_V1, UsuarioDAO.TAM_REGISTRO,
+            (v1, base, v2, baseV2, heap) -> {
+                boolean ativo = v1.get(base + 244) != 0;
+                v2.putInt(baseV2 + CodecUsuario.OFF_ID, v1.getInt(base));
+                v2.put(baseV2 + CodecUsuario.OFF_FLAGS, (byte) (ativo ? CodecUsuario.ATIVO : 0));
+                texto(v2, baseV2 + CodecUsuario.OFF_NOME, UsuarioDAO.TAM_CAMPO_NOME,
+                    ativo ? LeitorLote.lerString(v1, base + 4, UsuarioDAO.TAM_NOME) : "", heap);
+                texto(v2, baseV2 + CodecUsuario.OFF_EMAIL, UsuarioDAO.TAM_CAMPO_EMAIL,
+                    ativo ? LeitorLote.lerString(v1, base + 124, UsuarioDAO.TAM_EMAIL) : "", heap);
+                texto(v2, baseV2 + CodecUsuario.OFF_SENHA, UsuarioDAO.TAM_CAMPO_SENHA,
+                    ativo ? LeitorLote.lerString(v1, base + 204, UsuarioDAO.TAM_SENHA) : "", heap);
+            });
+    }
+
+    private static void texto(ByteBuffer b, int pos, int tam, String s, SaidaHeap heap) throws IOException {
+        byte[] texto = CampoTexto.utf8(s);
+        if (CampoTexto.cabe(texto.length, tam)) CampoTexto.escrever(b, pos, tam, texto);
+        else CampoTexto.escreverReferencia(b, pos, tam, heap.anexar(texto), texto.length);
+    }
+
+    private static boolean migrar(String arquivo, String arquivoHeap, int tamV1, int tamV2, Conversor conversor)
+            throws IOException {
+        if (Cabecalho.versao(arquivo) != 1) return false;
+
+        BinInput in = new BinInput(arquivo);
+        int total = in.readInt();
+        int ultimoId = in.readInt();
+        int ativos = in.readInt();
+        in.close();
+
+        Path dados = Paths.get(arquivo);
+        Path novo = Paths.get(arquivo + ".v2");
+        Path heapNovo = Paths.get(arquivoHeap + ".v2");
+        SaidaHeap heap = new SaidaHeap(heapNovo);
+        try (FileChannel saida = abrir(novo)) {
+            ByteBuffer cab = ByteBuffer.allocate(Cabecalho.TAMANHO);
+            cab.putInt(Cabecalho.MAGICO).putInt(Cabecalho.VERSAO).putInt(total).putInt(ultimoId).putInt(ativos).flip();
+            escrever(saida, cab);
+
+            LeitorLote lote = new LeitorLote(arquivo, TAM_CABECALHO_V1, tamV1, LOTE);
+            ByteBuffer v1 = lote.buffer();
+            ByteBuffer v2 = ByteBuffer.allocate(LOTE * tamV2);
+            try {
+                for (int i = 0; i < total; ) {
+                    int n = lote.carregar(i, Math.min(LOTE, total - i));
+                    if (n == 0) break;
+                    v2.clear();
+                    for (int k = 0; k < n; k++) conversor.converter(v1, lote.base(k), v2, k * tamV2, heap);
+                    v2.limit(n * tamV2);
+                    escrever(saida, v2);
+                    i += n;
+                }
+            } finally {
+                lote.close();
+            }
+            saida.force(true);
+        } finally {
+            heap.fechar();
+        }
+
+        // The old file may be memory mapped (recovery or the version check touched it)
+        Armazenamento.liberar(arquivo);
+        Files.move(heapNovo, Paths.get(arquivoHeap), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(novo, dados, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println(arquivo + ": " + total + " registros migrados para o formato " + Cabecalho.VERSAO);
+        return true;
+    }
+
+    /**
+     * Compacts the heap of a task data file in the current format, if it is mostly garbage.
+     * Its log must have been replayed.
+     * @return Whether the heap was compacted.
+     */
+    public static boolean compactarTarefas(String arquivo, String arquivoHeap) throws IOException {
+        // A char takes at most 3 UTF-8 bytes (a surrogate pair, 2 chars, takes 4)
+        return compactar(arquivo, arquivoHeap, TarefaDAO.TAM_REGISTRO, 3 * TarefaDAO.TAM_DESC,
+            CodecTarefa::ativo, CodecTarefa.OFF_DESC);
+    }
+
+    /**
+     * Compacts the heap of files/usuarios.bin, if it is mostly garbage. Its log must have been replayed.
+     * @return Whether the heap was compacted.
+     */
+    public static boolean compactarUsuarios() throws IOException {
+        return compactar(UsuarioDAO.ARQUIVO, UsuarioDAO.ARQUIVO_HEAP, UsuarioDAO.TAM_REGISTRO,
+            3 * (UsuarioDAO.TAM_NOME + UsuarioDAO.TAM_EMAIL) + Math.max(3 * UsuarioDAO.TAM_SENHA, Credenciais.TAM_MAXIMO),
+            CodecUsuario::ativo, CodecUsuario.OFF_NOME, CodecUsuario.OFF_EMAIL, CodecUsuario.OFF_SENHA);
+    }
+
+    /**
+     * Rewrites a data file and its heap so that the heap only holds the texts of active records,
+     * in slot order. Texts of deleted records are dropped (their fields become empty), and slots,
+     * ids and the header are kept, so the indexes stay valid.
+     * It runs when the heap is over twice as large as the texts of all active records could be,
+     * which proves at least half of it is garbage without reading the records first.
+     * The data file is renamed first; a crash between the two renames is finished on the next run.
+     * @param maxPorRegistro Most heap bytes the texts of one record can take.
+     * @param campos Offsets of the record's text fields.
+     */
+    private static boolean compactar(String arquivo, String arquivoHeap, int tamRegistro, int maxPorRegistro,
+                                     Varredura.Filtro ativo, int... campos) throws IOException {
+        Path dados = Paths.get(arquivo);
+        Path heap = Paths.get(arquivoHeap);
+        Path novo = Paths.get(arquivo + ".compacto");
+        Path heapNovo = Paths.get(arquivoHeap + ".compacto");
+        if (Files.exists(novo)) {
+            // Crashed before the data file was renamed: the old pair is still in place
+            Files.delete(novo);
+            Files.deleteIfExists(heapNovo);
+        } else if (Files.exists(heapNovo)) {
+            // Crashed between the renames: the data file already points into the new heap
+            Files.move(heapNovo, heap, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        if (Cabecalho.versao(arquivo) != Cabecalho.VERSAO || !Files.exists(heap)) return false;
+        Cabecalho cab = Cabecalho.carregar(arquivo);
+        long antes = Files.size(heap);
+        if (antes <= Math.max(HEAP_MINIMO, 2L * cab.ativos() * maxPorRegistro)) return false;
+
+        int total = cab.total();
+        HeapTextos antigo = HeapTextos.abrir(arquivoHeap);
+        long depois;
+        // The data file is created first, so a new heap without it means the rename was done
+        try (FileChannel saida = abrir(novo)) {
+            SaidaHeap saidaHeap = new SaidaHeap(heapNovo);
+            try {
+                ByteBuffer c = ByteBuffer.allocate(Cabecalho.TAMANHO);
+                c.putInt(Cabecalho.MAGICO).putInt(Cabecalho.VERSAO).putInt(total).putInt(cab.ultimoId()).putInt(cab.ativos()).flip();
+                escrever(saida, c);
+
+                LeitorLote lote = new LeitorLote(arquivo, Cabecalho.TAMANHO, tamRegistro, LOTE);
+                ByteBuffer b = lote.buffer();
+                try {
+                    for (int i = 0; i < total; ) {
+                        int n = lote.carregar(i, Math.min(LOTE, total - i));
+                        if (n == 0) break;
+                        for (int k = 0; k < n; k++) {
+                            int base = lote.base(k);
+                            boolean vivo = ativo.aceita(b, base);
+                            for (int campo : campos) {
+                                int pos = base + campo;
+                                if ((b.get(pos) & 0xFF) != CampoTexto.LONGO) continue;
+                                if (vivo) {
+                                    int tamanho = b.getInt(pos + 9);
+                                    long nova = saidaHeap.anexar(antigo.lerBytes(b.getLong(pos + 1), tamanho));
+                                    CampoTexto.escreverReferencia(b, pos, CampoTexto.TAM_MINIMO, nova, tamanho);
+                                } else {
+                                    CampoTexto.escrever(b, pos, CampoTexto.TAM_MINIMO, new byte[0]);
+                                }
+                            }
+                        }
+                        b.position(0).limit(n * tamRegistro);
+                        escrever(saida, b);
+                        i += n;
+                    }
+                } finally {
+                    lote.close();
+                }
+                depois = saidaHeap.pos;
+            } finally {
+                saidaHeap.fechar();
+            }
+            saida.force(true);
+        } finally {
+            antigo.fechar();
+        }
+
+        Armazenamento.liberar(arquivo);
+        Files.move(novo, dados, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(heapNovo, heap, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println(arquivoHeap + ": compactado de " + antes + " para " + depois + " bytes");
+        return true;
+    }
+
+    private static FileChannel abrir(Path arquivo) throws IOException {
+        return FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void escrever(FileChannel canal, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) canal.write(b);
+    }
+
+    /**
+     * Offline migration: replays the logs, migrates the data files and rebuilds their indexes.
+     * Takes the same -Dtodolist.particoes as the server.
+     */
+    public static void main(String[] args) throws IOException {
+        int particoes = Integer.getInteger("todolist.particoes", 1);
+        int[] tarefas = new int[particoes];
+        for (int k = 0; k < particoes; k++) tarefas[k] = Cabecalho.versao(TarefaDAO.arquivo(k, particoes));
+        int usuarios = Cabecalho.versao(UsuarioDAO.ARQUIVO);
+        TarefaDAO.inicializar();
+        UsuarioDAO.inicializar();
+        for (int k = 0; k < particoes; k++) {
+            String arquivo = TarefaDAO.arquivo(k, particoes);
+            System.out.println(arquivo + ": formato " + tarefas[k] + " -> " + Cabecalho.versao(arquivo));
+        }
+        System.out.println(UsuarioDAO.ARQUIVO + ": formato " + usuarios + " -> " + Cabecalho.versao(UsuarioDAO.ARQUIVO));
+    }
+}
@@ -0,0 +1,282 @@
+package logic.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Change feed of a data file: every insert, update and delete of a record gets the next
+ * version of a global, monotonically increasing counter, so clients can ask for what changed
+ * after the version they last saw.
+ *
+ * On disk it is 8(horizonte) followed by one 16-byte entry per change:
+ * 8(version) + 4(idUsuario) + 4(record id). Entries are logged in the same WAL transaction
+ * as the change itself (the file is a target of the DAO's log), so they survive exactly when
+ * the change does. In memory each user has its changed ids sorted by version.
+ *
+ * A version is only published (visible to desde() and counted by estavel()) once its change
+ * is applied everywhere readers look. estavel() is the highest version with no unpublished
+ * version at or below it, which is the cursor handed to clients: nothing below it can show up later.
+ *
+ * Old entries are compacted away at checkpoints; horizonte() is the newest version dropped,
+ * so a client asking for changes since an older version must reload everything.
+ */
+public class Mudancas {
+
+    public static final int TAM_CABECALHO = 8;
+    public static final int TAM_ENTRADA = 16;
+    // Compaction keeps the newest half of the entries once the file holds more than this
+    private static final int MAX_ENTRADAS = 1 << 20;
+
+    /**
+     * Ids of one user's changed records, sorted by version.
+     */
+    private static class Lista {
+        long[] versoes = new long[4];
+        int[] ids = new int[4];
+        int n;
+
+        void adicionar(long versao, int id) {
+            if (n == ids.length) {
+                versoes = Arrays.copyOf(versoes, n * 2);
+                ids = Arrays.copyOf(ids, n * 2);
+            }
+            // Versions are published almost in order, so this rarely moves anything
+            int i = n;
+            while (i > 0 && versoes[i - 1] > versao) {
+                versoes[i] = versoes[i - 1];
+                ids[i] = ids[i - 1];
+                i--;
+            }
+            versoes[i] = versao;
+            ids[i] = id;
+            n++;
+        }
+
+        /**
+         * Index of the first entry with a version above 'versao'.
+         */
+        int depoisDe(long versao) {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int m = (lo + hi) >>> 1;
+                if (versoes[m] <= versao) lo = m + 1;
+                else hi = m;
+            }
+            return lo;
+        }
+
+        void descartarAte(long versao) {
+            int k = depoisDe(versao);
+            if (k == 0) return;
+            n -= k;
+            System.arraycopy(versoes, k, versoes, 0, n);
+            System.arraycopy(ids, k, ids, 0, n);
+        }
+    }
+
+    private final String arquivo;
+    // Guards everything below; a leaf lock, taken last
+    private final ReentrantLock trava = new ReentrantLock();
+    private final Map<Integer, Lista> porUsuario = new HashMap<>();
+    private final TreeSet<Long> pendentes = new TreeSet<>();
+    private long versao;
+    private long horizonte;
+    private long entradas; // Entries in the file, including those of unpublished versions
+
+    private Mudancas(String arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    /**
+     * Loads the feed, creating it if it does not exist. Must run after the WAL was recovered.
+     * A new feed starts at version 1 with horizonte 1, so version 0 always means "everything".
+     */
+    public static Mudancas carregar(String arquivo) throws IOException {
+        Mudancas m = new Mudancas(arquivo);
+        File f = new File(arquivo);
+        if (!f.exists() || f.length() < TAM_CABECALHO) {
+            m.horizonte = 1;
+            m.versao = 1;
+            m.reescrever(new byte[0], m.horizonte);
+            return m;
+        }
+        try (FileChannel canal = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer cab = ByteBuffer.allocate(TAM_CABECALHO);
+            while (cab.hasRemaining() && canal.read(cab, cab.position()) > 0) { }
+            m.horizonte = cab.getLong(0);
+
+            ByteBuffer b = ByteBuffer.allocate(1 << 20);
+            long pos = TAM_CABECALHO;
+            while (true) {
+                int lido = canal.read(b, pos);
+                if (lido <= 0) break;
+                pos += lido;
+                b.flip();
+                while (b.remaining() >= TAM_ENTRADA) {
+                    long v = b.getLong();
+                    int idUsuario = b.getInt();
+                    int id = b.getInt();
+                    m.entradas++;
+                    if (v == 0) continue; // Never written (a transaction that failed before its log append)
+                    m.lista(idUsuario).adicionar(v, id);
+                    m.versao = Math.max(m.versao, v);
+                }
+                b.compact();
+            }
+        }
+        m.versao = Math.max(m.versao, m.horizonte);
+        return m;
+    }
+
+    private Lista lista(int idUsuario) {
+        return porUsuario.computeIfAbsent(idUsuario, u -> new Lista());
+    }
+
+    /**
+     * Gives a change of a record its version and logs the entry in the change's transaction.
+     * Must be called between Wal.entrar() and the append, so a checkpoint cannot compact the
+     * file in between. The version stays unpublished until publicar().
+     */
+    public long registrar(Transacao tx, int idUsuario, int id) throws IOException {
+        long v;
+        long pos;
+        trava.lock();
+        try {
+            v = ++versao;
+            pendentes.add(v);
+            pos = TAM_CABECALHO + entradas++ * TAM_ENTRADA;
+        } finally {
+            trava.unlock();
+        }
+        tx.seek(arquivo, pos);
+        tx.writeLong(v);
+        tx.writeInt(idUsuario);
+        tx.writeInt(id);
+        return v;
+    }
+
+    /**
+     * Makes a version visible, once its change can be read back. Callers run this even when
+     * the change failed, so the stable version is never held back.
+     */
+    public void publicar(long v, int idUsuario, int id) {
+        trava.lock();
+        try {
+            if (pendentes.remove(v)) lista(idUsuario).adicionar(v, id);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Highest version such that every version up to it is published.
+     */
+    public long estavel() {
+        trava.lock();
+        try {
+            return pendentes.isEmpty() ? versao : pendentes.first() - 1;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public long horizonte() {
+        trava.lock();
+        try {
+            return horizonte;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Ids of a user's records changed after a version, each with its latest version,
+     * in version order. Only published versions are included.
+     */
+    public Map<Integer, Long> desde(int idUsuario, long desde) {
+        Map<Integer, Long> ids = new LinkedHashMap<>();
+        trava.lock();
+        try {
+            Lista l = porUsuario.get(idUsuario);
+            if (l == null) return ids;
+            for (int i = l.depoisDe(desde); i < l.n; i++) {
+                ids.remove(l.ids[i]); // Re-inserted, so the order follows the latest version
+                ids.put(l.ids[i], l.versoes[i]);
+            }
+        } finally {
+            trava.unlock();
+        }
+        return ids;
+    }
+
+    /**
+     * Drops the oldest half of the entries once the file grew past MAX_ENTRADAS.
+     * Runs as a checkpoint hook: no commit is in flight, so every logged entry is in the file.
+     * The new file is written aside and renamed over the old one.
+     */
+    public void compactar() throws IOException {
+        trava.lock();
+        try {
+            if (entradas <= MAX_ENTRADAS) return;
+            long descartadas = entradas - MAX_ENTRADAS / 2;
+            byte[] mantidas = new byte[(MAX_ENTRADAS / 2) * TAM_ENTRADA];
+            long novoHorizonte = horizonte;
+            try (FileChannel canal = FileChannel.open(Paths.get(arquivo), StandardOpenOption.READ)) {
+                ByteBuffer b = ByteBuffer.allocate(64 * 1024);
+                long pos = TAM_CABECALHO;
+                long fimDescartadas = TAM_CABECALHO + descartadas * TAM_ENTRADA;
+                while (pos < fimDescartadas) {
+                    b.clear().limit((int) Math.min(b.capacity(), fimDescartadas - pos));
+                    int lido = canal.read(b, pos);
+                    if (lido <= 0) break;
+                    pos += lido;
+                    b.flip();
+                    while (b.remaining() >= TAM_ENTRADA) {
+                        novoHorizonte = Math.max(novoHorizonte, b.getLong());
+                        b.position(b.position() + 8);
+                    }
+                }
+                ByteBuffer resto = ByteBuffer.wrap(mantidas);
+                while (resto.hasRemaining() && canal.read(resto, fimDescartadas + resto.position()) > 0) { }
+            }
+            reescrever(mantidas, novoHorizonte);
+            horizonte = novoHorizonte;
+            entradas = MAX_ENTRADAS / 2;
+            for (Lista l : porUsuario.values()) l.descartarAte(novoHorizonte);
+            porUsuario.values().removeIf(l -> l.n == 0);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Replaces the file with a header and the given entries, atomically.
+     */
+    private void reescrever(byte[] corpo, long horizonte) throws IOException {
+        Path destino = Paths.get(arquivo);
+        Path temporario = Paths.get(arquivo + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer cab = ByteBuffer.allocate(TAM_CABECALHO).putLong(horizonte);
+            cab.flip();
+            ByteBuffer dados = ByteBuffer.wrap(corpo);
+            while (cab.hasRemaining()) canal.write(cab);
+            while (dados.hasRemaining()) canal.write(dados);
+            canal.force(true);
+        }
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,43 @@
+package logic.dao;
+
+/**
+ * One operation of a batch run by TarefaDAO.executarLote.
+ */
+public class OperacaoTarefa {
+
+    public enum Tipo { CRIAR, CONCLUIR, EDITAR, DELETAR }
+
+    public final Tipo tipo;
+    public final int id;          // Target task (every type but CRIAR)
+    public final int idUsuario;   // CRIAR
+    public final String descricao; // CRIAR, EDITAR
+    public final boolean concluida; // CONCLUIR
+    public final int dia, mes, ano; // CRIAR
+
+    private OperacaoTarefa(Tipo tipo, int id, int idUsuario, String descricao, boolean concluida, int dia, int mes, int ano) {
+        this.tipo = tipo;
+        this.id = id;
+        this.idUsuario = idUsuario;
+        this.descricao = descricao;
+        this.concluida = concluida;
+        this.dia = dia;
+        this.mes = mes;
+        this.ano = ano;
+    }
+
+    public static OperacaoTarefa criar(int idUsuario, String descricao, int dia, int mes, int ano) {
+        return new OperacaoTarefa(Tipo.CRIAR, 0, idUsuario, descricao, false, dia, mes, ano);
+    }
+
+    public static OperacaoTarefa concluir(int id, boolean concluida) {
+        return new OperacaoTarefa(Tipo.CONCLUIR, id, 0, null, concluida, 0, 0, 0);
+    }
+
+    public static OperacaoTarefa editar(int id, String descricao) {
+        return new OperacaoTarefa(Tipo.EDITAR, id, 0, descricao, false, 0, 0, 0);
+    }
+
+    public static OperacaoTarefa deletar(int id) {
+        return new OperacaoTarefa(Tipo.DELETAR, id, 0, null, false, 0, 0, 0);
+    }
+}
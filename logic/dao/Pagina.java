@@ -0,0 +1,18 @@
+package logic.dao;
+
+import java.util.List;
+import logic.model.Tarefa;
+
+/**
+ * Answer to TarefaDAO.consultar: one page of tasks and the cursor of the next one.
+ */
+public class Pagina {
+
+    public final List<Tarefa> tarefas;
+    public final long proximo; // 'depois' of the next page, or 0 if this is the last one
+
+    public Pagina(List<Tarefa> tarefas, long proximo) {
+        this.tarefas = tarefas;
+        this.proximo = proximo;
+    }
+}
@@ -0,0 +1,247 @@
+package logic.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import logic.util.Armazenamento;
+import logic.util.LeitorLote;
+import logic.util.Varredura;
+
+/**
+ * One shard of the task storage: a data file with its own header, heap, sidecar indexes,
+ * write-ahead log, change feed, allocation lock and free slots. TarefaDAO sends every user
+ * to one shard, so a user's tasks, listings and change feed live in a single shard and
+ * writes to different shards never wait on each other.
+ *
+ * Ids are global: shard k of n hands out ids k + 1, k + 1 + n, k + 1 + 2n... Records, the
+ * in-memory indexes and the change feed hold global ids; the header and IndicePrimario count
+ * local ones (1, 2, 3...), so the primary index stays dense. With a single shard both are the same.
+ */
+public class ParticaoTarefas {
+
+    // Records decoded per read during index rebuilds (~200 KB buffer)
+    private static final int LOTE = 4096;
+
+    private final int numero;
+    private final int particoes;
+    private final String arquivo;
+    private final String arquivoIndice;
+    private final String arquivoIndiceUsuario;
+    private final String arquivoIndiceData;
+    private final String arquivoLog;
+    private final String arquivoMudancas;
+    private final String arquivoHeap;
+
+    private volatile Wal wal;
+    private volatile Cabecalho cabecalho;
+    private volatile Mudancas mudancas;
+    private volatile HeapTextos heap;
+    private volatile IndicePrimario indice;
+    private volatile IndiceUsuario indiceUsuario;
+    private volatile IndiceDatas indiceDatas;
+    private volatile IndiceIds indiceIds;
+
+    // Inserts and deletes allocate ids/slots and change the header under this lock
+    final ReentrantLock alocacao = new ReentrantLock();
+    // Slots of deleted tasks, reused by inserts before the file is extended (guarded by 'alocacao')
+    SlotsLivres livres = new SlotsLivres();
+
+    /**
+     * @param prefixo Path of the shard's files without extension, e.g. "files/tarefas-3".
+     */
+    ParticaoTarefas(int numero, int particoes, String prefixo) {
+        this.numero = numero;
+        this.particoes = particoes;
+        this.arquivo = prefixo + ".bin";
+        this.arquivoIndice = prefixo + ".idx";
+        this.arquivoIndiceUsuario = prefixo + "_usuario.idx";
+        this.arquivoIndiceData = prefixo + "_data.idx";
+        this.arquivoLog = prefixo + ".wal";
+        this.arquivoMudancas = prefixo + ".chg";
+        this.arquivoHeap = prefixo + ".heap";
+        // Eligible for the memory-mapped engine (-Dtodolist.armazenamento=mmap)
+        Armazenamento.registrarDados(arquivo);
+    }
+
+    /**
+     * Replays the write-ahead log, migrates a v1 data file and compacts the heap if it is mostly
+     * garbage, then loads the sidecar indexes, rebuilding them from the data file if they are
+     * missing or stale (or if the log had to be replayed, or the file migrated).
+     */
+    synchronized void inicializar() throws IOException {
+        boolean recuperado = false;
+        if (wal == null) {
+            Wal w = new Wal(arquivoLog, arquivo, arquivoMudancas, arquivoHeap);
+            recuperado = w.recuperar() > 0;
+            // The log is empty now, so no frame refers to v1 offsets any more
+            if (MigradorFormato.migrarTarefas(arquivo, arquivoHeap)) recuperado = true;
+            MigradorFormato.compactarTarefas(arquivo, arquivoHeap);
+            heap = HeapTextos.abrir(arquivoHeap);
+            // Read once, after recovery; from here on the in-memory copy is authoritative
+            Cabecalho cab = Cabecalho.carregar(arquivo);
+            Mudancas m = Mudancas.carregar(arquivoMudancas);
+            w.antesDoCheckpoint(cab::salvar);
+            w.antesDoCheckpoint(m::compactar);
+            w.sincronizarNoCheckpoint(arquivoIndice, arquivoIndiceUsuario, arquivoIndiceData);
+            w.iniciarCheckpoints();
+            cabecalho = cab;
+            mudancas = m;
+            wal = w;
+        }
+
+        Cabecalho cab = cabecalho;
+        indice = recuperado ? null : IndicePrimario.carregar(arquivoIndice, cab.ultimoId());
+        indiceUsuario = recuperado ? null : IndiceUsuario.carregar(arquivoIndiceUsuario, cab.total());
+        indiceDatas = indice == null || indiceUsuario == null ? null
+            : IndiceDatas.carregar(arquivoIndiceData, cab.total(), indice, indiceUsuario, this::idGlobal);
+        if (indiceDatas == null) reconstruirIndices(cab.total(), cab.ultimoId());
+        indiceIds = new IndiceIds(indice, indiceUsuario, this::idGlobal);
+
+        // Every slot without an owner holds a deleted (or never written) record
+        SlotsLivres l = new SlotsLivres();
+        for (int slot = 0; slot < cab.total(); slot++) {
+            if (indiceUsuario.donoDe(slot) == IndiceUsuario.SEM_USUARIO) l.liberar(slot);
+        }
+        alocacao.lock();
+        try {
+            livres = l;
+        } finally {
+            alocacao.unlock();
+        }
+    }
+
+    private void reconstruirIndices(int total, int ultimoId) throws IOException {
+        int[] slots = new int[ultimoId];
+        int[] donos = new int[total];
+        int[] datas = new int[total];
+        Arrays.fill(slots, IndicePrimario.SEM_SLOT);
+        Arrays.fill(donos, IndiceUsuario.SEM_USUARIO);
+
+        if (total > 0) {
+            LeitorLote lote = new LeitorLote(arquivo, TarefaDAO.TAM_CABECALHO, TarefaDAO.TAM_REGISTRO, LOTE);
+            ByteBuffer b = lote.buffer();
+            for (int i = 0; i < total; ) {
+                int n = lote.carregar(i, Math.min(LOTE, total - i));
+                if (n == 0) break;
+                // Only the fixed-size fields are decoded, never the description
+                for (int k = 0; k < n; k++) {
+                    int base = lote.base(k);
+                    if (!CodecTarefa.ativo(b, base)) continue;
+                    int id = idLocal(CodecTarefa.id(b, base));
+                    if (id >= 1 && id <= ultimoId) slots[id - 1] = i + k;
+                    donos[i + k] = CodecTarefa.idUsuario(b, base);
+                    datas[i + k] = IndiceDatas.valor(CodecTarefa.data(b, base), CodecTarefa.concluida(b, base));
+                }
+                i += n;
+            }
+            lote.close();
+        }
+        indice = IndicePrimario.criar(arquivoIndice, slots, ultimoId);
+        indiceUsuario = IndiceUsuario.criar(arquivoIndiceUsuario, donos, total);
+        indiceDatas = IndiceDatas.criar(arquivoIndiceData, datas, total, indice, indiceUsuario, this::idGlobal);
+    }
+
+    public int numero() {
+        return numero;
+    }
+
+    /**
+     * Path of the shard's data file.
+     */
+    public String arquivo() {
+        return arquivo;
+    }
+
+    /**
+     * Every slot of the data file, for full scans.
+     */
+    Varredura.Fonte fonte() {
+        return new Varredura.Fonte(arquivo, TarefaDAO.TAM_CABECALHO, TarefaDAO.TAM_REGISTRO, cabecalho.total());
+    }
+
+    /**
+     * Global id of the shard's local id 'local'.
+     */
+    public int idGlobal(int local) {
+        return (local - 1) * particoes + numero + 1;
+    }
+
+    /**
+     * Local id of a global id of this shard.
+     */
+    public int idLocal(int id) {
+        return (id - 1) / particoes + 1;
+    }
+
+    /**
+     * Slot of a task of this shard, or SEM_SLOT if it is unknown, deleted or not from this shard.
+     */
+    int slot(int id) {
+        if (id < 1 || (id - 1) % particoes != numero) return IndicePrimario.SEM_SLOT;
+        return indice.buscar(idLocal(id));
+    }
+
+    /**
+     * Byte offset of the record stored at a slot.
+     */
+    long posicao(int slot) {
+        return TarefaDAO.TAM_CABECALHO + (long) slot * TarefaDAO.TAM_REGISTRO;
+    }
+
+    /**
+     * Reserves the global id of a new task. Caller holds 'alocacao'.
+     */
+    int alocarId() {
+        return idGlobal(cabecalho.alocarId());
+    }
+
+    /**
+     * Adds a newly written pending task to every index.
+     * @param data Due date as a ConsultaTarefas.chaveData key.
+     */
+    void indexar(int id, int slot, int idUsuario, int data) throws IOException {
+        indice.registrar(idLocal(id), slot);
+        indiceUsuario.registrar(slot, idUsuario);
+        indiceIds.registrar(idUsuario, id);
+        indiceDatas.registrar(slot, idUsuario, id, data, false);
+    }
+
+    /**
+     * Removes a deleted task from every index.
+     */
+    void desindexar(int id, int slot, int idUsuario) throws IOException {
+        indiceUsuario.remover(slot);
+        indice.remover(idLocal(id));
+        indiceIds.remover(idUsuario, id);
+        indiceDatas.remover(slot, idUsuario, id);
+    }
+
+    Wal wal() {
+        return wal;
+    }
+
+    Cabecalho cabecalho() {
+        return cabecalho;
+    }
+
+    Mudancas mudancas() {
+        return mudancas;
+    }
+
+    HeapTextos heap() {
+        return heap;
+    }
+
+    IndiceUsuario indiceUsuario() {
+        return indiceUsuario;
+    }
+
+    IndiceDatas indiceDatas() {
+        return indiceDatas;
+    }
+
+    IndiceIds indiceIds() {
+        return indiceIds;
+    }
+}
@@ -0,0 +1,40 @@
+package logic.dao;
+
+import java.util.BitSet;
+
+/**
+ * Free-slot list of a data file: slots whose records were deleted and may be overwritten
+ * by the next inserts, so the file stops growing while it has garbage to reuse.
+ * It is only kept in memory and derived from the indexes at startup.
+ * The lowest free slot is reused first, keeping live records packed at the front of the file.
+ * Not thread-safe: callers hold the lock that serializes slot allocation.
+ */
+public class SlotsLivres {
+
+    private final BitSet livres = new BitSet();
+    private int quantidade;
+
+    public void liberar(int slot) {
+        if (!livres.get(slot)) {
+            livres.set(slot);
+            quantidade++;
+        }
+    }
+
+    /**
+     * Takes the lowest free slot out of the list.
+     * @return The slot, or -1 if there is none.
+     */
+    public int retirar() {
+        int slot = livres.nextSetBit(0);
+        if (slot >= 0) {
+            livres.clear(slot);
+            quantidade--;
+        }
+        return slot;
+    }
+
+    public int quantidade() {
+        return quantidade;
+    }
+}
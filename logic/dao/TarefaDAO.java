@@ -1,115 +1,716 @@
 package logic.dao;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 import logic.model.Tarefa;
-import logic.util.BinInput;
-import logic.util.BinOutput;
+import logic.util.LeitorLote;
+import logic.util.Metricas;
+import logic.util.Varredura;
 
+/**
+ * Task storage, split into shards (see ParticaoTarefas) by a hash of the owner's id: each
+ * user's tasks live in a single shard, and ids encode their shard, so every operation is
+ * routed to one shard without any lookup. The number of shards is set with
+ * -Dtodolist.particoes=N (default 1, which keeps the single files/tarefas.bin of earlier versions).
+ */
 public class TarefaDAO {
 
+    // Data file when there is a single shard; shard k of N > 1 uses files/tarefas-k.bin
     public static final String ARQUIVO = "files/tarefas.bin";
+    private static final String PREFIXO = "files/tarefas";
+    // Number of shards the files were created with, written when there is more than one
+    public static final String ARQUIVO_PARTICOES = "files/tarefas.particoes";
 
-    // Fixed sizes for binary record calculation
+    // Descriptions keep at most TAM_DESC chars, stored as UTF-8 inline when they fit the
+    // TAM_CAMPO_DESC bytes of their field and in the heap file otherwise (see CampoTexto)
     public static final int TAM_DESC = 100;
-    // Calculation: 4(id)+4(uId)+(100*2)(desc)+1(done)+1(active)+4+4+4(date)
-    public static final int TAM_REGISTRO = 4 + 4 + (TAM_DESC * 2) + 1 + 1 + 4 + 4 + 4;
-    public static final int TAM_CABECALHO = 12; // 3 Integers (Total, LastID, ActiveCount)
+    public static final int TAM_CAMPO_DESC = 35;
+    // Calculation: 4(id)+4(uId)+1(flags)+4(date)+35(desc)
+    public static final int TAM_REGISTRO = 4 + 4 + 1 + 4 + TAM_CAMPO_DESC;
+    public static final int TAM_CABECALHO = Cabecalho.TAMANHO; // Magic, version, Total, LastID, ActiveCount
 
-    private static int[] lerCabecalho() throws IOException {
-        File f = new File(ARQUIVO);
-        if (!f.exists() || f.length() < TAM_CABECALHO) return new int[]{ 0, 0, 0 };
+    // Listings merge two owned slots into one read when at most this many records lie between them
+    private static final int LACUNA_MAXIMA = 8;
+    // Largest run of records read at once
+    private static final int LOTE = 4096;
 
-        BinInput in = new BinInput(ARQUIVO);
-        int[] cab = { in.readInt(), in.readInt(), in.readInt() };
-        in.close();
-        return cab;
+    // Set once every shard is loaded
+    private static volatile ParticaoTarefas[] particoes;
+
+    // Concurrency model: inserts and deletes allocate ids/slots and change the header under
+    // their shard's 'alocacao', but wait for the log fsync after releasing it; in-place updates
+    // of a record hold its stripe; reads take no lock at all. Ids are unique across shards,
+    // so the stripes are shared.
+    private static final Travas travas = new Travas(64);
+
+    // Decoded tasks by id (-Dtodolist.cache.tarefas) and whole listings by user
+    // (-Dtodolist.cache.listas). Mutations write through to the first and invalidate the second.
+    private static final CacheRegistros<Integer, Tarefa> cache =
+        CacheRegistros.configurado("todolist.cache.tarefas", 10000);
+    private static final CacheRegistros<Integer, List<Tarefa>> cacheListas =
+        CacheRegistros.configurado("todolist.cache.listas", 256);
+    // Largest batch accepted by executarLote
+    public static final int MAX_LOTE = 10000;
+
+    // Bumped (per user, striped) whenever a user's tasks change; a listing read across a bump is not cached
+    private static final AtomicLongArray geracoes = new AtomicLongArray(1024);
+
+    // Latency of each public operation, exported at /api/metrics
+    private static final Metricas.Histograma tempoInserir = tempo("inserir");
+    private static final Metricas.Histograma tempoBuscarPorId = tempo("buscarPorId");
+    private static final Metricas.Histograma tempoListarPorUsuario = tempo("listarPorUsuario");
+    private static final Metricas.Histograma tempoConsultar = tempo("consultar");
+    private static final Metricas.Histograma tempoProximasDeTodos = tempo("proximasDeTodos");
+    private static final Metricas.Histograma tempoAtrasadasDeTodos = tempo("atrasadasDeTodos");
+    private static final Metricas.Histograma tempoContarPorUsuario = tempo("contarPorUsuario");
+    private static final Metricas.Histograma tempoContarAtrasadas = tempo("contarAtrasadas");
+    private static final Metricas.Histograma tempoAlteracoesDesde = tempo("alteracoesDesde");
+    private static final Metricas.Histograma tempoSetConcluida = tempo("setConcluida");
+    private static final Metricas.Histograma tempoAlternarConcluida = tempo("alternarConcluida");
+    private static final Metricas.Histograma tempoAtualizarDescricao = tempo("atualizarDescricao");
+    private static final Metricas.Histograma tempoDeletar = tempo("deletar");
+    private static final Metricas.Histograma tempoExecutarLote = tempo("executarLote");
+
+    static {
+        // Read from the caches' own counters when exporting
+        String tarefas = Metricas.rotulos("cache", "tarefas");
+        String listas = Metricas.rotulos("cache", "listas");
+        Metricas.contador("todolist_cache_acertos_total", "Cache lookups that found the entry", tarefas, cache::acertos);
+        Metricas.contador("todolist_cache_acertos_total", "Cache lookups that found the entry", listas, cacheListas::acertos);
+        Metricas.contador("todolist_cache_faltas_total", "Cache lookups that missed", tarefas, cache::faltas);
+        Metricas.contador("todolist_cache_faltas_total", "Cache lookups that missed", listas, cacheListas::faltas);
+        Metricas.medidor("todolist_cache_entradas", "Entries currently cached", tarefas, cache::tamanho);
+        Metricas.medidor("todolist_cache_entradas", "Entries currently cached", listas, cacheListas::tamanho);
+    }
+
+    /**
+     * Opens every shard: replays its write-ahead log, migrates a v1 data file and loads (or
+     * rebuilds) its sidecar indexes. Fails if the files were created with another number of shards.
+     */
+    public static synchronized void inicializar() throws IOException {
+        ParticaoTarefas[] ps = particoes;
+        if (ps == null) {
+            int n = Integer.getInteger("todolist.particoes", 1);
+            if (n < 1) throw new IOException("todolist.particoes deve ser pelo menos 1: " + n);
+            verificarParticoes(n);
+            ps = new ParticaoTarefas[n];
+            for (int k = 0; k < n; k++) ps[k] = new ParticaoTarefas(k, n, prefixo(k, n));
+        }
+        for (ParticaoTarefas p : ps) p.inicializar();
+        particoes = ps;
+    }
+
+    /**
+     * Checks that the files on disk were written with 'n' shards, recording it for new files.
+     * Tasks cannot be moved between shards, so changing the number needs a new files/ directory.
+     */
+    private static void verificarParticoes(int n) throws IOException {
+        Path marcador = Paths.get(ARQUIVO_PARTICOES);
+        int gravadas = 0; // 0: no task files yet
+        if (Files.exists(marcador)) {
+            gravadas = Integer.parseInt(new String(Files.readAllBytes(marcador), StandardCharsets.UTF_8).trim());
+        } else if (Cabecalho.versao(ARQUIVO) != 0) {
+            gravadas = 1;
+        }
+        if (gravadas != 0 && gravadas != n) {
+            throw new IOException("As tarefas foram gravadas em " + gravadas + " particoes, mas todolist.particoes="
+                + n + "; redistribuir tarefas entre particoes nao e suportado");
+        }
+        if (gravadas == 0 && n > 1) {
+            Files.createDirectories(marcador.getParent());
+            Files.write(marcador, String.valueOf(n).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String prefixo(int particao, int n) {
+        return n == 1 ? PREFIXO : PREFIXO + "-" + particao;
+    }
+
+    /**
+     * Data file of a shard, out of 'n'.
+     */
+    public static String arquivo(int particao, int n) {
+        return prefixo(particao, n) + ".bin";
+    }
+
+    private static ParticaoTarefas[] particoes() throws IOException {
+        if (particoes == null) inicializar();
+        return particoes;
+    }
+
+    /**
+     * Number of shards.
+     */
+    public static int numeroParticoes() throws IOException {
+        return particoes().length;
     }
 
-    private static void salvarCabecalho(int total, int ultimoId, int ativos) throws IOException {
-        BinOutput out = new BinOutput(ARQUIVO, false);
-        out.writeInt(total);
-        out.writeInt(ultimoId);
-        out.writeInt(ativos);
-        out.close();
+    /**
+     * Shard holding a user's tasks. Ids are spread with a multiplicative hash, so consecutive
+     * users land in different shards.
+     */
+    public static int particaoDoUsuario(int idUsuario, int n) {
+        return Math.floorMod(idUsuario * 0x9E3779B9, n);
+    }
+
+    /**
+     * Shard a task id was allocated by (see ParticaoTarefas).
+     */
+    public static int particaoDaTarefa(int idTarefa, int n) {
+        return Math.floorMod(idTarefa - 1, n);
+    }
+
+    private static ParticaoTarefas doUsuario(int idUsuario) throws IOException {
+        ParticaoTarefas[] ps = particoes();
+        return ps[particaoDoUsuario(idUsuario, ps.length)];
+    }
+
+    private static ParticaoTarefas daTarefa(int idTarefa) throws IOException {
+        ParticaoTarefas[] ps = particoes();
+        return ps[particaoDaTarefa(idTarefa, ps.length)];
+    }
+
+    /**
+     * Task cache, exposed for its hit/miss counters.
+     */
+    public static CacheRegistros<Integer, Tarefa> cache() {
+        return cache;
+    }
+
+    /**
+     * Listing cache, exposed for its hit/miss counters.
+     */
+    public static CacheRegistros<Integer, List<Tarefa>> cacheListas() {
+        return cacheListas;
+    }
+
+    private static Metricas.Histograma tempo(String operacao) {
+        return Metricas.duracao("todolist_dao_duracao_segundos", "Time spent in DAO operations",
+            Metricas.rotulos("operacao", "TarefaDAO." + operacao));
+    }
+
+    /**
+     * Cached values are shared, so callers always get their own copy.
+     */
+    private static Tarefa copiar(Tarefa t) {
+        Tarefa c = new Tarefa(t.id, t.idUsuario, t.descricao, t.dia, t.mes, t.ano);
+        c.concluida = t.concluida;
+        c.ativo = t.ativo;
+        return c;
+    }
+
+    private static List<Tarefa> copiar(List<Tarefa> lista) {
+        List<Tarefa> copia = new ArrayList<>(lista.size());
+        for (Tarefa t : lista) copia.add(copiar(t));
+        return copia;
+    }
+
+    /**
+     * The description as it reads back from disk: truncated to TAM_DESC and trimmed.
+     */
+    private static String normalizar(String descricao) {
+        return CampoTexto.normalizar(descricao, TAM_DESC);
+    }
+
+    /**
+     * Drops the cached listing of a user. Must be called after the change reached the file.
+     */
+    private static void invalidarLista(int idUsuario) {
+        if (idUsuario == IndiceUsuario.SEM_USUARIO) return;
+        geracoes.incrementAndGet(idUsuario & (geracoes.length() - 1));
+        cacheListas.remover(idUsuario);
     }
 
     public static int inserir(int idUsuario, String descricao, int dia, int mes, int ano) throws IOException {
-        int[] cab = lerCabecalho();
-        int novoId = cab[1] + 1;
+        long comeco = System.nanoTime();
+        try {
+            int novoId = 0;
+            long versao = 0;
+            int data = ConsultaTarefas.chaveData(dia, mes, ano);
+            ParticaoTarefas p = doUsuario(idUsuario);
+            Mudancas m = p.mudancas();
+            Wal w = p.wal();
+            w.entrar();
+            try {
+                int slot;
+                Wal.Pendente pendente;
+                p.alocacao.lock();
+                try {
+                    Cabecalho cab = p.cabecalho();
+                    novoId = p.alocarId();
+                    // Overwrite a deleted record if there is one, otherwise append after the last record
+                    slot = p.livres.retirar();
+                    if (slot >= 0) cab.reocuparSlot();
+                    else slot = cab.alocarSlot();
+
+                    Transacao tx = new Transacao();
+                    escreverRegistro(p, tx, slot, novoId, idUsuario, descricao, data);
+                    // Record, header and feed entry are logged together; the header reaches the file at checkpoint
+                    cab.registrar(tx);
+                    versao = m.registrar(tx, idUsuario, novoId);
+                    pendente = w.anexar(tx);
+                } finally {
+                    p.alocacao.unlock();
+                }
+                // The fsync is awaited outside the lock, so concurrent inserts share it
+                w.concluir(pendente);
+                p.indexar(novoId, slot, idUsuario, data);
+            } catch (IOException | RuntimeException e) {
+                if (versao != 0) m.publicar(versao, idUsuario, novoId);
+                throw e;
+            } finally {
+                w.sair();
+            }
 
-        BinOutput out = new BinOutput(ARQUIVO, false);
-        if (new File(ARQUIVO).length() == 0) {
-            out.writeInt(0); out.writeInt(0); out.writeInt(0);
+            // Write-through, under the stripe (taken outside the commit, as deletar does) so that
+            // a delete of the new id cannot run in between and leave it cached
+            invalidarLista(idUsuario);
+            ReentrantLock trava = travas.de(novoId);
+            trava.lock();
+            try {
+                if (p.slot(novoId) != IndicePrimario.SEM_SLOT) {
+                    Tarefa t = new Tarefa(novoId, idUsuario, normalizar(descricao), 0, 0, 0);
+                    CodecTarefa.definirData(t, data); // As it reads back: invalid dates are normalized
+                    cache.put(novoId, t);
+                }
+            } finally {
+                trava.unlock();
+                m.publicar(versao, idUsuario, novoId);
+            }
+            return novoId;
+        } finally {
+            tempoInserir.registrarDesde(comeco);
         }
-        // Jump to the end of the last record
-        out.seek(TAM_CABECALHO + (long) cab[0] * TAM_REGISTRO);
-        out.writeInt(novoId);
-        out.writeInt(idUsuario);
-        out.writeString(descricao, TAM_DESC);
-        out.writeBoolean(false);
-        out.writeBoolean(true); // Active flag
-        out.writeDate(dia, mes, ano);
-        out.close();
+    }
 
-        salvarCabecalho(cab[0] + 1, novoId, cab[2] + 1);
-        return novoId;
+    /**
+     * Logs a whole new record (pending, active) at a slot.
+     * @param data Due date as a ConsultaTarefas.chaveData key.
+     */
+    private static void escreverRegistro(ParticaoTarefas p, Transacao tx, int slot, int id, int idUsuario,
+                                         String descricao, int data) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(TAM_REGISTRO);
+        CodecTarefa.codificar(b, 0, id, idUsuario, CodecTarefa.flags(false, true), data);
+        // A long description goes to the heap first, so the record never points past the logged text
+        CampoTexto.escrever(b, CodecTarefa.OFF_DESC, TAM_CAMPO_DESC, CampoTexto.utf8(normalizar(descricao)), p.heap(), tx);
+        tx.seek(p.arquivo(), p.posicao(slot));
+        tx.write(b.array());
+    }
+
+    /**
+     * Logs a new description into the field of the record at a slot.
+     */
+    private static void escreverDescricao(ParticaoTarefas p, Transacao tx, int slot, String descricao)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(TAM_CAMPO_DESC);
+        CampoTexto.escrever(b, 0, TAM_CAMPO_DESC, CampoTexto.utf8(normalizar(descricao)), p.heap(), tx);
+        tx.seek(p.arquivo(), p.posicao(slot) + CodecTarefa.OFF_DESC);
+        tx.write(b.array());
     }
 
     public static Tarefa buscarPorId(int idBuscado) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        // Linear search through the binary file
-        for (int i = 0; i < cab[0]; i++) {
-            in.seek(TAM_CABECALHO + (long) i * TAM_REGISTRO);
-            Tarefa t = lerRegistro(in);
-            if (t.id == idBuscado && t.ativo) {
-                in.close();
-                return t;
+        long comeco = System.nanoTime();
+        try {
+            Tarefa t = cache.get(idBuscado);
+            if (t != null) return copiar(t);
+
+            // Misses are filled under the record's stripe, so they cannot interleave with a write-through
+            ReentrantLock trava = travas.de(idBuscado);
+            trava.lock();
+            try {
+                t = lerECachear(idBuscado);
+                return t == null ? null : copiar(t);
+            } finally {
+                trava.unlock();
             }
+        } finally {
+            tempoBuscarPorId.registrarDesde(comeco);
         }
+    }
 
-        in.close();
-        return null;
+    /**
+     * Reads a task from the file and caches it. Caller holds the task's stripe.
+     * @return The cached (shared) instance, or null if the task does not exist.
+     */
+    private static Tarefa lerECachear(int idTarefa) throws IOException {
+        ParticaoTarefas p = daTarefa(idTarefa);
+        int slot = p.slot(idTarefa);
+        if (slot == IndicePrimario.SEM_SLOT) return null;
+
+        // The whole record comes in a single read
+        LeitorLote lote = new LeitorLote(p.arquivo(), TAM_CABECALHO, TAM_REGISTRO, 1);
+        try {
+            lote.carregarUm(slot);
+            if (!CodecTarefa.ativo(lote.buffer(), 0)) return null;
+            Tarefa t = CodecTarefa.decodificar(lote.buffer(), 0, p.heap());
+            cache.put(idTarefa, t);
+            return t;
+        } finally {
+            lote.close();
+        }
     }
 
     public static List<Tarefa> listarPorUsuario(int idUsuario) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            List<Tarefa> cacheada = cacheListas.get(idUsuario);
+            if (cacheada != null) return copiar(cacheada);
+
+            int g = idUsuario & (geracoes.length() - 1);
+            long geracao = geracoes.get(g);
+            List<Tarefa> lista = lerLista(idUsuario);
+            cacheListas.put(idUsuario, lista);
+            // A mutation that landed during the scan bumped the generation: the listing may be stale
+            if (geracoes.get(g) != geracao) cacheListas.remover(idUsuario);
+            return copiar(lista);
+        } finally {
+            tempoListarPorUsuario.registrarDesde(comeco);
+        }
+    }
+
+    private static List<Tarefa> lerLista(int idUsuario) throws IOException {
         List<Tarefa> lista = new ArrayList<>();
-        File f = new File(ARQUIVO);
-        if (!f.exists()) return lista;
+        ParticaoTarefas p = doUsuario(idUsuario);
+        HeapTextos h = p.heap();
+        percorrer(p, p.indiceUsuario().slotsDe(idUsuario), (k, b, base) -> {
+            if (CodecTarefa.ativo(b, base) && CodecTarefa.idUsuario(b, base) == idUsuario) {
+                lista.add(CodecTarefa.decodificar(b, base, h));
+            }
+        });
+        return lista;
+    }
 
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
+    /**
+     * Receives the records read by percorrer: the one of slots[k] is at 'base' in 'b'.
+     */
+    private interface Visita {
+        void registro(int k, ByteBuffer b, int base) throws IOException;
+    }
+
+    /**
+     * Reads the records of sorted slots of a shard front to back; nearby slots share one read.
+     */
+    private static void percorrer(ParticaoTarefas p, int[] slots, Visita visita) throws IOException {
+        if (slots.length == 0) return;
+
+        LeitorLote lote = new LeitorLote(p.arquivo(), TAM_CABECALHO, TAM_REGISTRO, maiorTrecho(slots));
+        ByteBuffer b = lote.buffer();
+        try {
+            for (int i = 0; i < slots.length; ) {
+                int primeiro = slots[i];
+                int j = fimDoTrecho(slots, i);
 
-        for (int i = 0; i < cab[0]; i++) {
-            in.seek(TAM_CABECALHO + (long) i * TAM_REGISTRO);
-            Tarefa t = lerRegistro(in);
-            if (t.ativo && t.idUsuario == idUsuario) {
-                lista.add(t);
+                int n = lote.carregar(primeiro, slots[j - 1] - primeiro + 1);
+                for (int k = i; k < j; k++) {
+                    int rel = slots[k] - primeiro;
+                    if (rel >= n) break;
+                    visita.registro(k, b, lote.base(rel));
+                }
+                i = j;
             }
+        } finally {
+            lote.close();
         }
+    }
 
-        in.close();
-        return lista;
+    /**
+     * Groups sorted slots into runs read together: returns the end (exclusive) of the run starting at 'i'.
+     */
+    private static int fimDoTrecho(int[] slots, int i) {
+        int j = i + 1;
+        while (j < slots.length
+                && slots[j] - slots[j - 1] <= LACUNA_MAXIMA
+                && slots[j] - slots[i] < LOTE) j++;
+        return j;
     }
 
-    public static List<Tarefa> listarPendentes(int idUsuario) throws IOException {
-        List<Tarefa> resultado = new ArrayList<>();
-        for (Tarefa t : listarPorUsuario(idUsuario)) {
-            if (!t.concluida) resultado.add(t);
+    /**
+     * Number of records spanned by the longest run, used to size the read buffer.
+     */
+    private static int maiorTrecho(int[] slots) {
+        int maior = 1;
+        for (int i = 0; i < slots.length; ) {
+            int j = fimDoTrecho(slots, i);
+            maior = Math.max(maior, slots[j - 1] - slots[i] + 1);
+            i = j;
         }
-        return resultado;
+        return maior;
+    }
+
+    public static List<Tarefa> listarPendentes(int idUsuario) throws IOException {
+        return consultar(idUsuario, ConsultaTarefas.comStatus(ConsultaTarefas.Status.PENDENTES)).tarefas;
     }
 
     public static List<Tarefa> listarConcluidas(int idUsuario) throws IOException {
-        List<Tarefa> resultado = new ArrayList<>();
-        for (Tarefa t : listarPorUsuario(idUsuario)) {
-            if (t.concluida) resultado.add(t);
+        return consultar(idUsuario, ConsultaTarefas.comStatus(ConsultaTarefas.Status.CONCLUIDAS)).tarefas;
+    }
+
+    /**
+     * Filtered, sorted and paged listing. Status and due date are checked on IndiceDatas,
+     * which is in memory, so only the tasks of the page are read and decoded.
+     * Pages start right after the cursor in the user's id list, or (by date) at the cursor or
+     * the start of the date range in the user's date list, and stop once full: their cost does
+     * not grow with the number of tasks the user has. Only the user's shard is read.
+     */
+    public static Pagina consultar(int idUsuario, ConsultaTarefas c) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            ParticaoTarefas p = doUsuario(idUsuario);
+            IndiceDatas datas = p.indiceDatas();
+            int limite = c.limite == 0 ? Integer.MAX_VALUE : c.limite;
+            int[] ids = new int[Math.min(limite, 64)];
+            int n = 0;
+            long ultima = 0; // Key of the last task taken, the cursor of the next page
+            boolean mais = false;
+
+            if (c.ordem == ConsultaTarefas.Ordem.ID) {
+                // No real id is 0 (ids start at 1), so a cursor of 0 starts at the first task
+                int depois = (int) Math.min(Math.max(c.depois, 0), Integer.MAX_VALUE);
+                for (ListaOrdenada.Cursor todos = p.indiceIds().idsDepois(idUsuario, depois); todos.temProximo(); ) {
+                    int id = todos.proximo();
+                    int slot = p.slot(id);
+                    if (slot == IndicePrimario.SEM_SLOT || !c.aceita(datas.concluida(slot), datas.dia(slot))) continue;
+                    if (n == limite) {
+                        mais = true;
+                        break;
+                    }
+                    if (n == ids.length) ids = Arrays.copyOf(ids, (int) Math.min(limite, n * 2L));
+                    ids[n++] = id;
+                    ultima = id;
+                }
+            } else {
+                long inicio = IndiceDatas.chave(c.de, 0);
+                if (c.depois != 0) inicio = Math.max(inicio, c.depois + 1);
+                for (ListaOrdenadaLong.Cursor chaves = datas.chavesDesde(idUsuario, inicio); chaves.temProximo(); ) {
+                    long chave = chaves.proximo();
+                    int dia = IndiceDatas.diaDaChave(chave);
+                    if (dia > c.ate) break;
+                    int id = IndiceDatas.idDaChave(chave);
+                    int slot = p.slot(id);
+                    if (slot == IndicePrimario.SEM_SLOT || !c.aceita(datas.concluida(slot), dia)) continue;
+                    if (n == limite) {
+                        mais = true;
+                        break;
+                    }
+                    if (n == ids.length) ids = Arrays.copyOf(ids, (int) Math.min(limite, n * 2L));
+                    ids[n++] = id;
+                    ultima = chave;
+                }
+            }
+
+            return new Pagina(lerTarefas(ids, n, c), mais ? ultima : 0);
+        } finally {
+            tempoConsultar.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * Fetches tasks by id, keeping the given order: cached ones are copied, the others are
+     * read shard by shard in slot order. Tasks deleted in the meantime, or that no longer pass
+     * 'filtro' (if given), are left out.
+     */
+    private static List<Tarefa> lerTarefas(int[] ids, int n, ConsultaTarefas filtro) throws IOException {
+        Tarefa[] achadas = new Tarefa[n];
+        int faltam = 0;
+        for (int k = 0; k < n; k++) {
+            Tarefa t = cache.get(ids[k]);
+            if (t != null) achadas[k] = copiar(t);
+            else faltam++;
+        }
+
+        ParticaoTarefas[] ps = particoes();
+        long[] aLer = new long[faltam];
+        for (ParticaoTarefas p : ps) {
+            if (faltam == 0) break;
+            int nLer = 0;
+            for (int k = 0; k < n; k++) {
+                if (achadas[k] != null || particaoDaTarefa(ids[k], ps.length) != p.numero()) continue;
+                faltam--;
+                int slot = p.slot(ids[k]);
+                if (slot != IndicePrimario.SEM_SLOT) aLer[nLer++] = ((long) slot << 32) | k;
+            }
+            Arrays.sort(aLer, 0, nLer);
+            int[] slots = new int[nLer];
+            for (int i = 0; i < nLer; i++) slots[i] = (int) (aLer[i] >>> 32);
+            HeapTextos h = p.heap();
+            percorrer(p, slots, (i, b, base) -> {
+                int k = (int) aLer[i];
+                if (CodecTarefa.ativo(b, base) && CodecTarefa.id(b, base) == ids[k]) {
+                    achadas[k] = CodecTarefa.decodificar(b, base, h);
+                }
+            });
+        }
+
+        List<Tarefa> tarefas = new ArrayList<>(n);
+        for (Tarefa t : achadas) {
+            if (t == null) continue;
+            if (filtro != null && !filtro.aceita(t.concluida, ConsultaTarefas.chaveData(t.dia, t.mes, t.ano))) continue;
+            tarefas.add(t);
+        }
+        return tarefas;
+    }
+
+    /**
+     * A user's pending tasks due from today to 'dias' days ahead, by date.
+     */
+    public static List<Tarefa> proximas(int idUsuario, int dias) throws IOException {
+        int hoje = ConsultaTarefas.hoje();
+        return consultar(idUsuario, ConsultaTarefas.entre(ConsultaTarefas.Status.PENDENTES, hoje, hoje + dias)).tarefas;
+    }
+
+    /**
+     * A user's pending tasks due before today, oldest first. Tasks without a due date are never overdue.
+     */
+    public static List<Tarefa> atrasadas(int idUsuario) throws IOException {
+        int ontem = ConsultaTarefas.hoje() - 1;
+        return consultar(idUsuario, ConsultaTarefas.entre(ConsultaTarefas.Status.PENDENTES,
+            ConsultaTarefas.DESDE_SEMPRE, ontem)).tarefas;
+    }
+
+    /**
+     * Every task of a user due in a month (1 to 12), by date.
+     * @throws java.time.DateTimeException If the month is out of range.
+     */
+    public static List<Tarefa> doMes(int idUsuario, int ano, int mes) throws IOException {
+        LocalDate primeiro = LocalDate.of(ano, mes, 1);
+        int de = (int) primeiro.toEpochDay();
+        int ate = (int) primeiro.plusMonths(1).toEpochDay() - 1;
+        return consultar(idUsuario, ConsultaTarefas.entre(ConsultaTarefas.Status.TODAS, de, ate)).tarefas;
+    }
+
+    /**
+     * Pending tasks of every user due from today to 'dias' days ahead, by date, at most 'limite'.
+     * Served by the index of pending tasks by date: the cost follows the number of tasks found,
+     * not the number of users or tasks.
+     */
+    public static List<Tarefa> proximasDeTodos(int dias, int limite) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            int hoje = ConsultaTarefas.hoje();
+            return pendentesDeTodos(hoje, hoje + dias, limite);
+        } finally {
+            tempoProximasDeTodos.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * Pending tasks of every user due before today, oldest first, at most 'limite'.
+     * Tasks without a due date are never overdue.
+     */
+    public static List<Tarefa> atrasadasDeTodos(int limite) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            return pendentesDeTodos(ConsultaTarefas.DESDE_SEMPRE, ConsultaTarefas.hoje() - 1, limite);
+        } finally {
+            tempoAtrasadasDeTodos.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * Merges the first 'limite' pending tasks due between two days of each shard.
+     */
+    private static List<Tarefa> pendentesDeTodos(int de, int ate, int limite) throws IOException {
+        ParticaoTarefas[] ps = particoes();
+        long[] chaves = ps[0].indiceDatas().pendentes(de, ate, limite);
+        for (int k = 1; k < ps.length; k++) {
+            long[] daParticao = ps[k].indiceDatas().pendentes(de, ate, limite);
+            int n = chaves.length;
+            chaves = Arrays.copyOf(chaves, n + daParticao.length);
+            System.arraycopy(daParticao, 0, chaves, n, daParticao.length);
+        }
+        // Each shard's keys are sorted; the merged prefix is the global one
+        if (ps.length > 1) Arrays.sort(chaves);
+        int n = Math.min(chaves.length, limite);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) ids[i] = IndiceDatas.idDaChave(chaves[i]);
+        return lerTarefas(ids, n, ConsultaTarefas.comStatus(ConsultaTarefas.Status.PENDENTES));
+    }
+
+    /**
+     * Number of active tasks, from the in-memory headers.
+     */
+    public static long contar() throws IOException {
+        long n = 0;
+        for (ParticaoTarefas p : particoes()) n += p.cabecalho().ativos();
+        return n;
+    }
+
+    /**
+     * Number of active tasks of each user that has any. Full parallel scan (see Varredura).
+     */
+    public static Map<Integer, Long> contarPorUsuario() throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            return Varredura.contarPor(fontes(), CodecTarefa::ativo, CodecTarefa::idUsuario);
+        } finally {
+            tempoContarPorUsuario.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * Number of pending tasks of every user due before today. Full parallel scan (see Varredura).
+     */
+    public static long contarAtrasadas() throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            int hoje = ConsultaTarefas.hoje();
+            return Varredura.contar(fontes(), (b, base) -> CodecTarefa.ativo(b, base) && !CodecTarefa.concluida(b, base)
+                && ConsultaTarefas.atrasada(CodecTarefa.data(b, base), hoje));
+        } finally {
+            tempoContarAtrasadas.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * The data files of every shard, for full scans.
+     */
+    private static List<Varredura.Fonte> fontes() throws IOException {
+        List<Varredura.Fonte> fontes = new ArrayList<>();
+        for (ParticaoTarefas p : particoes()) fontes.add(p.fonte());
+        return fontes;
+    }
+
+    /**
+     * What changed in a user's tasks after version 'desde' (a cursor returned by an earlier call).
+     * The work done is proportional to the number of tasks changed, not to the size of the list.
+     * Falls back to the whole list when 'desde' is 0, older than the compacted part of the feed,
+     * or unknown to this server.
+     * Versions are counted per shard; a user never changes shard, so their cursors stay valid.
+     */
+    public static Alteracoes alteracoesDesde(int idUsuario, long desde) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            Mudancas m = doUsuario(idUsuario).mudancas();
+            // Taken first: every change up to it is already readable, so none can be missed
+            long versao = m.estavel();
+            if (desde < m.horizonte() || desde > versao) {
+                return new Alteracoes(versao, true, listarPorUsuario(idUsuario), new ArrayList<>());
+            }
+
+            List<Tarefa> tarefas = new ArrayList<>();
+            List<Integer> removidas = new ArrayList<>();
+            for (int id : m.desde(idUsuario, desde).keySet()) {
+                Tarefa t = buscarPorId(id);
+                if (t != null) tarefas.add(t);
+                else removidas.add(id);
+            }
+            return new Alteracoes(versao, false, tarefas, removidas);
+        } finally {
+            tempoAlteracoesDesde.registrarDesde(comeco);
         }
-        return resultado;
     }
 
     public static boolean marcarConcluida(int idTarefa) throws IOException {
@@ -120,95 +721,410 @@ public class TarefaDAO {
         return setConcluida(idTarefa, false);
     }
 
+    /**
+     * Flips a task between completed and pending in one locked read-modify-write.
+     * @return The task as it is after the change, or null if it does not exist.
+     */
+    public static Tarefa alternarConcluida(int idTarefa) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            ReentrantLock trava = travas.de(idTarefa);
+            trava.lock();
+            try {
+                Tarefa atual = cache.get(idTarefa);
+                if (atual == null) atual = lerECachear(idTarefa);
+                if (atual == null) return null;
+
+                ParticaoTarefas p = daTarefa(idTarefa);
+                gravarConcluida(p, idTarefa, p.slot(idTarefa), !atual.concluida);
+                Tarefa t = copiar(atual);
+                t.concluida = !atual.concluida;
+                return t;
+            } finally {
+                trava.unlock();
+            }
+        } finally {
+            tempoAlternarConcluida.registrarDesde(comeco);
+        }
+    }
+
     /**
      * Updates only the 'concluida' byte without rewriting the whole record.
      */
     private static boolean setConcluida(int idTarefa, boolean valor) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            long pos = TAM_CABECALHO + (long) i * TAM_REGISTRO;
-            in.seek(pos);
-            Tarefa t = lerRegistro(in);
-
-            if (t.id == idTarefa && t.ativo) {
-                in.close();
-                // Offset calculation: skip id(4), uId(4), and desc(100*2)
-                long offsetConcluida = pos + 4 + 4 + (TAM_DESC * 2);
-                BinOutput out = new BinOutput(ARQUIVO, false);
-                out.seek(offsetConcluida);
-                out.writeBoolean(valor);
-                out.close();
+        long comeco = System.nanoTime();
+        try {
+            ReentrantLock trava = travas.de(idTarefa);
+            trava.lock();
+            try {
+                ParticaoTarefas p = daTarefa(idTarefa);
+                int slot = p.slot(idTarefa);
+                if (slot == IndicePrimario.SEM_SLOT) return false;
+                gravarConcluida(p, idTarefa, slot, valor);
                 return true;
+            } finally {
+                trava.unlock();
             }
+        } finally {
+            tempoSetConcluida.registrarDesde(comeco);
         }
+    }
 
-        in.close();
-        return false;
+    /**
+     * Writes the flags byte and propagates it to the caches. Caller holds the task's stripe.
+     */
+    private static void gravarConcluida(ParticaoTarefas p, int idTarefa, int slot, boolean valor) throws IOException {
+        // The record is active (it is indexed), so both flags are known without reading it
+        Transacao tx = new Transacao();
+        tx.seek(p.arquivo(), p.posicao(slot) + CodecTarefa.OFF_FLAGS);
+        tx.writeByte(CodecTarefa.flags(valor, true));
+        int idUsuario = p.indiceUsuario().donoDe(slot);
+        long versao = confirmar(p, tx, idUsuario, idTarefa, () -> p.indiceDatas().concluir(slot, idTarefa, valor));
+
+        cache.alterar(idTarefa, t -> {
+            Tarefa c = copiar(t);
+            c.concluida = valor;
+            return c;
+        });
+        invalidarLista(idUsuario);
+        p.mudancas().publicar(versao, idUsuario, idTarefa);
+    }
+
+    /**
+     * Index update run by confirmar right after the commit.
+     */
+    private interface AposCommit {
+        void aplicar() throws IOException;
+    }
+
+    /**
+     * Commits an in-place change of one task together with its change-feed entry.
+     * @param indexar Index update of the change, or null. It runs before the log can be
+     *                checkpointed, so a crash cannot leave the index behind the file.
+     * @return The change's version, which the caller publishes once the caches reflect the change.
+     */
+    private static long confirmar(ParticaoTarefas p, Transacao tx, int idUsuario, int idTarefa, AposCommit indexar)
+            throws IOException {
+        Mudancas m = p.mudancas();
+        Wal w = p.wal();
+        w.entrar();
+        try {
+            // Registered after entrar(), so a checkpoint cannot compact the feed before the append
+            long versao = m.registrar(tx, idUsuario, idTarefa);
+            try {
+                w.concluir(w.anexar(tx));
+                if (indexar != null) indexar.aplicar();
+            } catch (IOException | RuntimeException e) {
+                m.publicar(versao, idUsuario, idTarefa);
+                throw e;
+            }
+            return versao;
+        } finally {
+            w.sair();
+        }
     }
 
     public static boolean atualizarDescricao(int idTarefa, String novaDesc) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            long pos = TAM_CABECALHO + (long) i * TAM_REGISTRO;
-            in.seek(pos);
-            Tarefa t = lerRegistro(in);
-
-            if (t.id == idTarefa && t.ativo) {
-                in.close();
-                BinOutput out = new BinOutput(ARQUIVO, false);
-                out.seek(pos + 4 + 4); // Seek to the description field
-                out.writeString(novaDesc, TAM_DESC);
-                out.close();
+        long comeco = System.nanoTime();
+        try {
+            ReentrantLock trava = travas.de(idTarefa);
+            trava.lock();
+            try {
+                ParticaoTarefas p = daTarefa(idTarefa);
+                int slot = p.slot(idTarefa);
+                if (slot == IndicePrimario.SEM_SLOT) return false;
+
+                Transacao tx = new Transacao();
+                escreverDescricao(p, tx, slot, novaDesc);
+                int idUsuario = p.indiceUsuario().donoDe(slot);
+                long versao = confirmar(p, tx, idUsuario, idTarefa, null);
+
+                String descricao = normalizar(novaDesc);
+                cache.alterar(idTarefa, t -> {
+                    Tarefa c = copiar(t);
+                    c.descricao = descricao;
+                    return c;
+                });
+                invalidarLista(idUsuario);
+                p.mudancas().publicar(versao, idUsuario, idTarefa);
                 return true;
+            } finally {
+                trava.unlock();
             }
+        } finally {
+            tempoAtualizarDescricao.registrarDesde(comeco);
         }
-
-        in.close();
-        return false;
     }
 
     public static boolean deletar(int idTarefa) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            long pos = TAM_CABECALHO + (long) i * TAM_REGISTRO;
-            in.seek(pos);
-            Tarefa t = lerRegistro(in);
-
-            if (t.id == idTarefa && t.ativo) {
-                in.close();
-                // Logical deletion: set 'ativo' byte to false
-                long offsetAtivo = pos + 4 + 4 + (TAM_DESC * 2) + 1;
-                BinOutput out = new BinOutput(ARQUIVO, false);
-                out.seek(offsetAtivo);
-                out.writeBoolean(false);
-                out.close();
-                // Update header active count
-                salvarCabecalho(cab[0], cab[1], cab[2] - 1);
-                return true;
+        long comeco = System.nanoTime();
+        try {
+            ReentrantLock trava = travas.de(idTarefa);
+            trava.lock();
+            try {
+                ParticaoTarefas p = daTarefa(idTarefa);
+                int slot = p.slot(idTarefa);
+                if (slot == IndicePrimario.SEM_SLOT) return false;
+
+                // Logical deletion: clear the flags byte, 'ativo' included
+                Transacao tx = new Transacao();
+                tx.seek(p.arquivo(), p.posicao(slot) + CodecTarefa.OFF_FLAGS);
+                tx.writeByte(0);
+
+                int idUsuario = p.indiceUsuario().donoDe(slot);
+                Mudancas m = p.mudancas();
+                long versao = 0;
+                Wal w = p.wal();
+                w.entrar();
+                try {
+                    Wal.Pendente pendente;
+                    p.alocacao.lock();
+                    try {
+                        // Update header active count
+                        Cabecalho cab = p.cabecalho();
+                        cab.registrarRemocao();
+                        cab.registrar(tx);
+                        versao = m.registrar(tx, idUsuario, idTarefa);
+                        pendente = w.anexar(tx);
+                    } finally {
+                        p.alocacao.unlock();
+                    }
+                    w.concluir(pendente);
+                    p.desindexar(idTarefa, slot, idUsuario);
+                    cache.remover(idTarefa);
+                    invalidarLista(idUsuario);
+
+                    // Only now, with the delete logged and unindexed, may an insert take the slot over
+                    p.alocacao.lock();
+                    try {
+                        p.livres.liberar(slot);
+                    } finally {
+                        p.alocacao.unlock();
+                    }
+                    return true;
+                } finally {
+                    w.sair();
+                    if (versao != 0) m.publicar(versao, idUsuario, idTarefa);
+                }
+            } finally {
+                trava.unlock();
+            }
+        } finally {
+            tempoDeletar.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * Runs many operations as one transaction per shard involved (a batch touching a single
+     * user's tasks is atomic). They take effect in list order (an edit after the delete of the
+     * same task finds nothing) and only see tasks that existed before the batch. Each shard's
+     * writes are sorted by slot and applied in one front-to-back pass, together with one header
+     * write and a single fsync.
+     * Tasks created by the batch are not put in the task cache; they are cached when first read.
+     * @return For each operation, the id of the task it applied to (the new id for CRIAR),
+     *         or 0 if the task did not exist.
+     */
+    public static int[] executarLote(List<OperacaoTarefa> ops) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            if (ops.size() > MAX_LOTE) throw new IllegalArgumentException("Lote maior que " + MAX_LOTE + " operações");
+            int[] resultados = new int[ops.size()];
+            if (ops.isEmpty()) return resultados;
+
+            // The stripes of every existing task touched, so no single-task update can interleave
+            int[] alvos = new int[ops.size()];
+            int nAlvos = 0;
+            for (OperacaoTarefa op : ops) {
+                if (op.tipo != OperacaoTarefa.Tipo.CRIAR) alvos[nAlvos++] = op.id;
+            }
+            List<ReentrantLock> tomadas = travas.travar(Arrays.copyOf(alvos, nAlvos));
+            try {
+                ParticaoTarefas[] ps = particoes();
+                if (ps.length == 1) {
+                    aplicarLote(ps[0], ops, resultados);
+                    return resultados;
+                }
+                // Split by shard, keeping list order: new tasks go to their owner's shard
+                List<List<Integer>> posicoes = new ArrayList<>(ps.length);
+                for (int k = 0; k < ps.length; k++) posicoes.add(new ArrayList<>());
+                for (int i = 0; i < ops.size(); i++) {
+                    OperacaoTarefa op = ops.get(i);
+                    int k = op.tipo == OperacaoTarefa.Tipo.CRIAR
+                        ? particaoDoUsuario(op.idUsuario, ps.length) : particaoDaTarefa(op.id, ps.length);
+                    posicoes.get(k).add(i);
+                }
+                for (int k = 0; k < ps.length; k++) {
+                    List<Integer> daParticao = posicoes.get(k);
+                    if (daParticao.isEmpty()) continue;
+                    List<OperacaoTarefa> parte = new ArrayList<>(daParticao.size());
+                    for (int i : daParticao) parte.add(ops.get(i));
+                    int[] r = new int[parte.size()];
+                    aplicarLote(ps[k], parte, r);
+                    for (int j = 0; j < r.length; j++) resultados[daParticao.get(j)] = r[j];
+                }
+                return resultados;
+            } finally {
+                Travas.liberar(tomadas);
+            }
+        } finally {
+            tempoExecutarLote.registrarDesde(comeco);
+        }
+    }
+
+    /**
+     * Resolves the operations on existing tasks, commits the batch and publishes its versions.
+     * Every operation belongs to shard 'p'. Caller holds the stripes of every task the batch names.
+     */
+    private static void aplicarLote(ParticaoTarefas p, List<OperacaoTarefa> ops, int[] resultados) throws IOException {
+        int n = ops.size();
+        int[] slots = new int[n];
+        int[] donos = new int[n];
+        int removidas = 0;
+
+        // Existing tasks are resolved in list order; their slots cannot move while the stripes are held
+        Set<Integer> deletadas = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            OperacaoTarefa op = ops.get(i);
+            if (op.tipo == OperacaoTarefa.Tipo.CRIAR) continue;
+            int slot = p.slot(op.id);
+            if (slot == IndicePrimario.SEM_SLOT || deletadas.contains(op.id)) continue;
+            if (op.tipo == OperacaoTarefa.Tipo.DELETAR) {
+                deletadas.add(op.id);
+                removidas++;
             }
+            slots[i] = slot;
+            donos[i] = p.indiceUsuario().donoDe(slot);
+            resultados[i] = op.id;
         }
 
-        in.close();
-        return false;
+        Mudancas m = p.mudancas();
+        long[] versoes = new long[n];
+        try {
+            gravarLote(p, ops, resultados, slots, donos, versoes, removidas);
+        } finally {
+            // Also after a failure, so the stable version is not held back
+            for (int i = 0; i < n; i++) {
+                if (versoes[i] != 0) m.publicar(versoes[i], donos[i], resultados[i]);
+            }
+        }
     }
 
-    private static Tarefa lerRegistro(BinInput in) throws IOException {
-        Tarefa t = new Tarefa();
-        t.id = in.readInt();
-        t.idUsuario = in.readInt();
-        t.descricao = in.readString(TAM_DESC);
-        t.concluida = in.readBoolean();
-        t.ativo = in.readBoolean();
-        int[] data = in.readDate();
-        t.dia = data[0];
-        t.mes = data[1];
-        t.ano = data[2];
-        return t;
+    /**
+     * Allocates the new tasks, logs and applies every write, then updates indexes and caches.
+     */
+    private static void gravarLote(ParticaoTarefas p, List<OperacaoTarefa> ops, int[] resultados, int[] slots,
+                                   int[] donos, long[] versoes, int removidas) throws IOException {
+        int n = ops.size();
+        Wal w = p.wal();
+        w.entrar();
+        try {
+            Wal.Pendente pendente;
+            p.alocacao.lock();
+            try {
+                Cabecalho cab = p.cabecalho();
+                int aplicadas = 0;
+                long[] ordem = new long[n];
+                for (int i = 0; i < n; i++) {
+                    if (ops.get(i).tipo == OperacaoTarefa.Tipo.CRIAR) {
+                        resultados[i] = p.alocarId();
+                        int slot = p.livres.retirar();
+                        if (slot >= 0) cab.reocuparSlot();
+                        else slot = cab.alocarSlot();
+                        slots[i] = slot;
+                        donos[i] = ops.get(i).idUsuario;
+                    } else if (resultados[i] == 0) {
+                        continue;
+                    }
+                    // Sorting (slot, position in the batch) keeps list order among writes to the same slot
+                    ordem[aplicadas++] = (long) slots[i] << 32 | i;
+                }
+                for (int k = 0; k < removidas; k++) cab.registrarRemocao();
+                Arrays.sort(ordem, 0, aplicadas);
+
+                Transacao tx = new Transacao();
+                cab.registrar(tx); // Offset 0, ahead of every record
+                for (int k = 0; k < aplicadas; k++) {
+                    int i = (int) ordem[k];
+                    OperacaoTarefa op = ops.get(i);
+                    long pos = p.posicao(slots[i]);
+                    switch (op.tipo) {
+                        case CRIAR:
+                            escreverRegistro(p, tx, slots[i], resultados[i], op.idUsuario, op.descricao,
+                                ConsultaTarefas.chaveData(op.dia, op.mes, op.ano));
+                            break;
+                        case CONCLUIR:
+                            tx.seek(p.arquivo(), pos + CodecTarefa.OFF_FLAGS);
+                            tx.writeByte(CodecTarefa.flags(op.concluida, true));
+                            break;
+                        case EDITAR:
+                            escreverDescricao(p, tx, slots[i], op.descricao);
+                            break;
+                        case DELETAR:
+                            tx.seek(p.arquivo(), pos + CodecTarefa.OFF_FLAGS);
+                            tx.writeByte(0);
+                            break;
+                    }
+                }
+                // One feed entry per operation applied, in list order
+                Mudancas m = p.mudancas();
+                for (int i = 0; i < n; i++) {
+                    if (resultados[i] != 0) versoes[i] = m.registrar(tx, donos[i], resultados[i]);
+                }
+                pendente = w.anexar(tx);
+            } finally {
+                p.alocacao.unlock();
+            }
+            w.concluir(pendente);
+
+            // Indexes, then caches, in list order
+            for (int i = 0; i < n; i++) {
+                if (resultados[i] == 0) continue;
+                OperacaoTarefa op = ops.get(i);
+                int id = resultados[i];
+                switch (op.tipo) {
+                    case CRIAR:
+                        p.indexar(id, slots[i], op.idUsuario, ConsultaTarefas.chaveData(op.dia, op.mes, op.ano));
+                        invalidarLista(donos[i]);
+                        break;
+                    case CONCLUIR:
+                        p.indiceDatas().concluir(slots[i], id, op.concluida);
+                        cache.alterar(id, t -> {
+                            Tarefa c = copiar(t);
+                            c.concluida = op.concluida;
+                            return c;
+                        });
+                        invalidarLista(donos[i]);
+                        break;
+                    case EDITAR:
+                        String descricao = normalizar(op.descricao);
+                        cache.alterar(id, t -> {
+                            Tarefa c = copiar(t);
+                            c.descricao = descricao;
+                            return c;
+                        });
+                        invalidarLista(donos[i]);
+                        break;
+                    case DELETAR:
+                        p.desindexar(id, slots[i], donos[i]);
+                        cache.remover(id);
+                        invalidarLista(donos[i]);
+                        break;
+                }
+            }
+        } finally {
+            w.sair();
+        }
+
+        // As in deletar: freed slots only become reusable once the deletes are logged and unindexed
+        if (removidas > 0) {
+            p.alocacao.lock();
+            try {
+                for (int i = 0; i < n; i++) {
+                    if (resultados[i] != 0 && ops.get(i).tipo == OperacaoTarefa.Tipo.DELETAR) p.livres.liberar(slots[i]);
+                }
+            } finally {
+                p.alocacao.unlock();
+            }
+        }
     }
-}
\ No newline at end of file
+}
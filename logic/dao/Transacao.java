@@ -0,0 +1,98 @@
+package logic.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of physical writes (file, offset, bytes) that must reach the disk atomically.
+ * The write methods mirror BinOutput and produce the same encoding, but only buffer the
+ * bytes in memory; the Wal logs the whole group before applying it to the files.
+ */
+public class Transacao {
+
+    /**
+     * One contiguous write: bytes [inicio, fim) of the buffer go to 'arquivo' at offset 'pos'.
+     */
+    static class Escrita {
+        final String arquivo;
+        final long pos;
+        final int inicio;
+        final boolean adiada;
+        int fim;
+
+        Escrita(String arquivo, long pos, int inicio, boolean adiada) {
+            this.arquivo = arquivo;
+            this.pos = pos;
+            this.inicio = inicio;
+            this.adiada = adiada;
+            this.fim = inicio;
+        }
+    }
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final List<Escrita> escritas = new ArrayList<>();
+    private Escrita atual;
+
+    /**
+     * Starts a new write at a given offset of a file. Must be called before any write method.
+     */
+    public void seek(String arquivo, long posicao) {
+        iniciar(arquivo, posicao, false);
+    }
+
+    /**
+     * Like seek, but the write is only logged: recovery replays it, while a normal commit
+     * leaves the file untouched and relies on the owner writing the same bytes at checkpoint.
+     */
+    public void seekAdiado(String arquivo, long posicao) {
+        iniciar(arquivo, posicao, true);
+    }
+
+    private void iniciar(String arquivo, long posicao, boolean adiada) {
+        fecharAtual();
+        atual = new Escrita(arquivo, posicao, bytes.size(), adiada);
+        escritas.add(atual);
+    }
+
+    public void writeInt(int valor) throws IOException {
+        out.writeInt(valor);
+    }
+
+    public void writeLong(long valor) throws IOException {
+        out.writeLong(valor);
+    }
+
+    public void writeBoolean(boolean valor) throws IOException {
+        out.writeBoolean(valor);
+    }
+
+    public void writeByte(int valor) throws IOException {
+        out.writeByte(valor);
+    }
+
+    public void write(byte[] valor) throws IOException {
+        out.write(valor);
+    }
+
+    public boolean vazia() {
+        return escritas.isEmpty();
+    }
+
+    private void fecharAtual() {
+        if (atual != null) atual.fim = bytes.size();
+    }
+
+    List<Escrita> escritas() {
+        fecharAtual();
+        return escritas;
+    }
+
+    byte[] dados() {
+        fecharAtual();
+        return bytes.toByteArray();
+    }
+}
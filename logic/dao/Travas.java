@@ -0,0 +1,56 @@
+package logic.dao;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks: a fixed set of locks shared by all record ids, so in-place updates of
+ * the same record are serialized while updates of different records mostly run in parallel.
+ */
+public class Travas {
+
+    private final ReentrantLock[] travas;
+
+    /**
+     * @param quantidade Number of stripes; rounded up to a power of two.
+     */
+    public Travas(int quantidade) {
+        int n = Integer.highestOneBit(Math.max(1, quantidade - 1)) << 1;
+        travas = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) travas[i] = new ReentrantLock();
+    }
+
+    /**
+     * Returns the lock guarding a given record id.
+     */
+    public ReentrantLock de(int id) {
+        return travas[indice(id)];
+    }
+
+    /**
+     * Locks the stripes of several ids, each once and always in stripe order, so that two
+     * callers locking overlapping sets cannot deadlock.
+     * @return The locks taken, to be released with liberar().
+     */
+    public List<ReentrantLock> travar(int[] ids) {
+        BitSet usadas = new BitSet(travas.length);
+        for (int id : ids) usadas.set(indice(id));
+        List<ReentrantLock> tomadas = new ArrayList<>(usadas.cardinality());
+        for (int i = usadas.nextSetBit(0); i >= 0; i = usadas.nextSetBit(i + 1)) {
+            travas[i].lock();
+            tomadas.add(travas[i]);
+        }
+        return tomadas;
+    }
+
+    public static void liberar(List<ReentrantLock> tomadas) {
+        for (int i = tomadas.size() - 1; i >= 0; i--) tomadas.get(i).unlock();
+    }
+
+    private int indice(int id) {
+        int h = id * 0x9E3779B9; // Spread consecutive ids across stripes
+        return (h ^ (h >>> 16)) & (travas.length - 1);
+    }
+}
@@ -2,45 +2,212 @@ package logic.dao;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
 import logic.model.Usuario;
-import logic.util.BinInput;
-import logic.util.BinOutput;
+import logic.util.Armazenamento;
+import logic.util.LeitorLote;
+import logic.util.Metricas;
+import logic.util.Varredura;
 
 public class UsuarioDAO {
 
     public static final String ARQUIVO = "files/usuarios.bin";
 
+    static {
+        // Eligible for the memory-mapped engine (-Dtodolist.armazenamento=mmap)
+        Armazenamento.registrarDados(ARQUIVO);
+    }
+
+    // Most chars kept of each text, stored as UTF-8 inline when it fits its field and in the heap file otherwise
     public static final int TAM_NOME = 60;
     public static final int TAM_EMAIL = 40;
     public static final int TAM_SENHA = 20;
-    // Calculation: 4(id) + (60*2) + (40*2) + (20*2) + 1(active)
-    public static final int TAM_REGISTRO = 4 + (TAM_NOME * 2) + (TAM_EMAIL * 2) + (TAM_SENHA * 2) + 1;
-    public static final int TAM_CABECALHO = 12;
+    public static final int TAM_CAMPO_NOME = 28;
+    public static final int TAM_CAMPO_EMAIL = 32;
+    public static final int TAM_CAMPO_SENHA = 23;
+    // Calculation: 4(id) + 1(flags) + 28 + 32 + 23
+    public static final int TAM_REGISTRO = 4 + 1 + TAM_CAMPO_NOME + TAM_CAMPO_EMAIL + TAM_CAMPO_SENHA;
+    public static final int TAM_CABECALHO = Cabecalho.TAMANHO;
+    public static final String ARQUIVO_HEAP = "files/usuarios.heap";
+    private static volatile HeapTextos heap;
+
+    // Records decoded per read during scans (~350 KB buffer)
+    private static final int LOTE = 4096;
+
+    private static final char CHAVE_XOR = 'K'; // Key of the legacy password encoding
+
+    // Sidecar hash index on the case-folded e-mail, used by login and registration
+    public static final String ARQUIVO_INDICE_EMAIL = "files/usuarios_email.idx";
+    private static volatile IndiceHash indiceEmail;
+
+    // Write-ahead log: every mutation is logged (and fsynced in groups) before touching usuarios.bin
+    public static final String ARQUIVO_LOG = "files/usuarios.wal";
+    private static volatile Wal wal;
+    // Header kept in memory; written back to usuarios.bin on each checkpoint
+    private static volatile Cabecalho cabecalho;
+
+    // Concurrency model: inserts (with their duplicate check) and deletes change the header
+    // under 'alocacao'; in-place updates of a record hold its stripe; reads take no lock.
+    private static final ReentrantLock alocacao = new ReentrantLock();
+    private static final Travas travas = new Travas(16);
+    // Slots of deleted users, reused by inserts before the file is extended (guarded by 'alocacao')
+    private static SlotsLivres livres = new SlotsLivres();
+
+    // Latency of each public operation, exported at /api/metrics
+    private static final Metricas.Histograma tempoInserir = tempo("inserir");
+    private static final Metricas.Histograma tempoBuscarPorId = tempo("buscarPorId");
+    private static final Metricas.Histograma tempoBuscarPorEmail = tempo("buscarPorEmail");
+    private static final Metricas.Histograma tempoListarTodos = tempo("listarTodos");
+    private static final Metricas.Histograma tempoLogin = tempo("login");
+    private static final Metricas.Histograma tempoAtualizarNome = tempo("atualizarNome");
+    private static final Metricas.Histograma tempoDeletar = tempo("deletar");
+
+    /**
+     * Replays the write-ahead log, migrates a v1 data file and compacts the heap if it is mostly
+     * garbage, then loads the e-mail index, rebuilding it from the data file if it is missing
+     * or stale (or if the log had to be replayed, or the file migrated).
+     */
+    public static synchronized void inicializar() throws IOException {
+        boolean recuperado = false;
+        if (wal == null) {
+            Wal w = new Wal(ARQUIVO_LOG, ARQUIVO, ARQUIVO_HEAP);
+            recuperado = w.recuperar() > 0;
+            if (MigradorFormato.migrarUsuarios()) recuperado = true;
+            MigradorFormato.compactarUsuarios();
+            heap = HeapTextos.abrir(ARQUIVO_HEAP);
+            // Read once, after recovery; from here on the in-memory copy is authoritative
+            Cabecalho cab = Cabecalho.carregar(ARQUIVO);
+            w.antesDoCheckpoint(cab::salvar);
+            w.sincronizarNoCheckpoint(ARQUIVO_INDICE_EMAIL);
+            w.iniciarCheckpoints();
+            cabecalho = cab;
+            wal = w;
+        }
+
+        Cabecalho cab = cabecalho;
+        indiceEmail = recuperado ? null : IndiceHash.carregar(ARQUIVO_INDICE_EMAIL, cab.total(), cab.ativos());
+        if (indiceEmail == null) indiceEmail = reconstruirIndice(cab.total(), cab.ativos());
+
+        // Every slot the e-mail index does not reference holds a deleted (or never written) record
+        BitSet ocupados = indiceEmail.slotsOcupados();
+        SlotsLivres l = new SlotsLivres();
+        for (int slot = ocupados.nextClearBit(0); slot < cab.total(); slot = ocupados.nextClearBit(slot + 1)) {
+            l.liberar(slot);
+        }
+        alocacao.lock();
+        try {
+            livres = l;
+        } finally {
+            alocacao.unlock();
+        }
+    }
+
+    private static Wal wal() throws IOException {
+        if (wal == null) inicializar();
+        return wal;
+    }
+
+    private static Cabecalho cabecalho() throws IOException {
+        if (cabecalho == null) inicializar();
+        return cabecalho;
+    }
+
+    private static HeapTextos heap() throws IOException {
+        if (heap == null) inicializar();
+        return heap;
+    }
 
-    private static final char CHAVE_XOR = 'K'; // Simple key for encryption
+    private static IndiceHash indiceEmail() throws IOException {
+        if (indiceEmail == null) inicializar();
+        return indiceEmail;
+    }
 
-    private static int[] lerCabecalho() throws IOException {
-        File f = new File(ARQUIVO);
-        if (!f.exists() || f.length() < TAM_CABECALHO) return new int[]{ 0, 0, 0 };
+    private static IndiceHash reconstruirIndice(int total, int ativos) throws IOException {
+        int[] hashes = new int[total];
+        int[] slots = new int[total];
+        int n = 0;
+
+        if (total > 0) {
+            HeapTextos h = heap();
+            LeitorLote lote = new LeitorLote(ARQUIVO, TAM_CABECALHO, TAM_REGISTRO, LOTE);
+            ByteBuffer b = lote.buffer();
+            for (int i = 0; i < total; ) {
+                int c = lote.carregar(i, Math.min(LOTE, total - i));
+                if (c == 0) break;
+                // Only the 'ativo' byte and the e-mail are decoded
+                for (int k = 0; k < c; k++) {
+                    int base = lote.base(k);
+                    if (!CodecUsuario.ativo(b, base)) continue;
+                    hashes[n] = hashEmail(CodecUsuario.email(b, base, h));
+                    slots[n] = i + k;
+                    n++;
+                }
+                i += c;
+            }
+            lote.close();
+        }
+        return IndiceHash.criar(ARQUIVO_INDICE_EMAIL, hashes, slots, n, total, ativos);
+    }
 
-        BinInput in = new BinInput(ARQUIVO);
-        int[] cab = { in.readInt(), in.readInt(), in.readInt() };
-        in.close();
-        return cab;
+    /**
+     * Hash of the e-mail as it is stored on disk: truncated to TAM_EMAIL, trimmed and case-folded.
+     */
+    private static int hashEmail(String email) {
+        return CampoTexto.normalizar(email, TAM_EMAIL).toLowerCase(Locale.ROOT).hashCode();
+    }
+
+    /**
+     * Finds the slot of an active user by id with a batched scan that only decodes ids.
+     * @return The slot, or -1 if there is no such user.
+     */
+    private static int localizarPorId(int idBuscado) throws IOException {
+        int total = cabecalho().total();
+        if (total == 0) return -1;
+
+        LeitorLote lote = new LeitorLote(ARQUIVO, TAM_CABECALHO, TAM_REGISTRO, Math.min(LOTE, total));
+        ByteBuffer b = lote.buffer();
+        try {
+            for (int i = 0; i < total; ) {
+                int n = lote.carregar(i, Math.min(LOTE, total - i));
+                if (n == 0) break;
+                for (int k = 0; k < n; k++) {
+                    int base = lote.base(k);
+                    if (CodecUsuario.id(b, base) == idBuscado && CodecUsuario.ativo(b, base)) return i + k;
+                }
+                i += n;
+            }
+            return -1;
+        } finally {
+            lote.close();
+        }
+    }
+
+    /**
+     * Reads and decodes the user stored at a slot with a single read.
+     */
+    private static Usuario lerSlot(int slot) throws IOException {
+        LeitorLote lote = new LeitorLote(ARQUIVO, TAM_CABECALHO, TAM_REGISTRO, 1);
+        try {
+            lote.carregarUm(slot);
+            return CodecUsuario.decodificar(lote.buffer(), 0, heap());
+        } finally {
+            lote.close();
+        }
     }
 
-    private static void salvarCabecalho(int total, int ultimoId, int ativos) throws IOException {
-        BinOutput out = new BinOutput(ARQUIVO, false);
-        out.writeInt(total);
-        out.writeInt(ultimoId);
-        out.writeInt(ativos);
-        out.close();
+    private static Metricas.Histograma tempo(String operacao) {
+        return Metricas.duracao("todolist_dao_duracao_segundos", "Time spent in DAO operations",
+            Metricas.rotulos("operacao", "UsuarioDAO." + operacao));
     }
 
     /**
-     * Primitive encryption/decryption using bitwise XOR.
+     * Legacy password encoding (bitwise XOR), still accepted from records written before
+     * Credenciais; such records are rewritten with a hash on their user's next login.
      */
     public static String xor(String texto) {
         StringBuilder sb = new StringBuilder();
@@ -51,144 +218,234 @@ public class UsuarioDAO {
     }
 
     public static int inserir(String nome, String email, String senha) throws IOException {
-        if (buscarPorEmail(email) != null) return -1; // Prevent duplicate emails
-
-        int[] cab = lerCabecalho();
-        int novoId = cab[1] + 1;
-
-        BinOutput out = new BinOutput(ARQUIVO, false);
-        if (new File(ARQUIVO).length() == 0) {
-            out.writeInt(0); out.writeInt(0); out.writeInt(0);
+        long comeco = System.nanoTime();
+        try {
+            // Derived before taking any lock: it is the slow part of a registration
+            String credencial = Credenciais.gerar(senha);
+            Wal w = wal();
+            // Taken before 'alocacao', so a checkpoint never sees a slot reserved but not yet logged
+            w.entrar();
+            alocacao.lock();
+            try {
+                if (buscarPorEmail(email) != null) return -1; // Prevent duplicate emails
+
+                Cabecalho cab = cabecalho();
+                int novoId = cab.alocarId();
+                // Overwrite a deleted record if there is one, otherwise append after the last record
+                int slot = livres.retirar();
+                if (slot >= 0) cab.reocuparSlot();
+                else slot = cab.alocarSlot();
+
+                Transacao tx = new Transacao();
+                ByteBuffer b = ByteBuffer.allocate(TAM_REGISTRO);
+                // Long texts are logged into the heap ahead of the record that points at them
+                CodecUsuario.codificar(b, 0, novoId, CampoTexto.normalizar(nome, TAM_NOME),
+                    CampoTexto.normalizar(email, TAM_EMAIL),
+                    credencial, heap(), tx);
+                tx.seek(ARQUIVO, TAM_CABECALHO + (long) slot * TAM_REGISTRO);
+                tx.write(b.array());
+                // Record and header are logged together; the header reaches the file at checkpoint
+                cab.registrar(tx);
+                // Still under the lock: the duplicate check must see this e-mail in the index
+                w.concluir(w.anexar(tx));
+
+                indiceEmail().inserir(hashEmail(email), slot, cab.total(), cab.ativos());
+                return novoId;
+            } finally {
+                alocacao.unlock();
+                w.sair();
+            }
+        } finally {
+            tempoInserir.registrarDesde(comeco);
         }
-        out.seek(TAM_CABECALHO + (long) cab[0] * TAM_REGISTRO);
-        out.writeInt(novoId);
-        out.writeString(nome, TAM_NOME);
-        out.writeString(email, TAM_EMAIL);
-        out.writeString(xor(senha), TAM_SENHA); // Encrypt password
-        out.writeBoolean(true);
-        out.close();
-
-        salvarCabecalho(cab[0] + 1, novoId, cab[2] + 1);
-        return novoId;
     }
 
     public static Usuario buscarPorId(int idBuscado) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            in.seek(TAM_CABECALHO + (long) i * TAM_REGISTRO);
-            Usuario u = lerRegistro(in);
-            if (u.id == idBuscado && u.ativo) {
-                in.close();
-                return u;
-            }
+        long comeco = System.nanoTime();
+        try {
+            int slot = localizarPorId(idBuscado);
+            return slot < 0 ? null : lerSlot(slot);
+        } finally {
+            tempoBuscarPorId.registrarDesde(comeco);
         }
-
-        in.close();
-        return null;
     }
 
     public static Usuario buscarPorEmail(String emailBuscado) throws IOException {
-        File f = new File(ARQUIVO);
-        if (!f.exists()) return null;
-
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            in.seek(TAM_CABECALHO + (long) i * TAM_REGISTRO);
-            Usuario u = lerRegistro(in);
-            if (u.ativo && u.email.equalsIgnoreCase(emailBuscado)) {
-                in.close();
-                return u;
-            }
+        long comeco = System.nanoTime();
+        try {
+            int slot = localizarPorEmail(emailBuscado);
+            return slot < 0 ? null : lerSlot(slot);
+        } finally {
+            tempoBuscarPorEmail.registrarDesde(comeco);
         }
+    }
 
-        in.close();
-        return null;
+    /**
+     * Finds the slot of an active user by e-mail through the hash index.
+     * @return The slot, or -1 if there is no such user.
+     */
+    private static int localizarPorEmail(String emailBuscado) throws IOException {
+        if (!new File(ARQUIVO).exists()) return -1;
+
+        int[] achado = { -1 };
+        HeapTextos h = heap();
+        LeitorLote lote = new LeitorLote(ARQUIVO, TAM_CABECALHO, TAM_REGISTRO, 1);
+        ByteBuffer b = lote.buffer();
+        try {
+            // Hash candidates are confirmed against the record itself
+            indiceEmail().buscar(hashEmail(emailBuscado), slot -> {
+                lote.carregarUm(slot);
+                if (!CodecUsuario.ativo(b, 0) || !CodecUsuario.email(b, 0, h).equalsIgnoreCase(emailBuscado)) return false;
+                achado[0] = slot;
+                return true;
+            });
+        } finally {
+            lote.close();
+        }
+        return achado[0];
     }
 
+    /**
+     * Every active user, in slot order. Reads the whole file in parallel segments (see Varredura).
+     */
     public static List<Usuario> listarTodos() throws IOException {
-        List<Usuario> lista = new ArrayList<>();
-        File f = new File(ARQUIVO);
-        if (!f.exists()) return lista;
-
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            in.seek(TAM_CABECALHO + (long) i * TAM_REGISTRO);
-            Usuario u = lerRegistro(in);
-            if (u.ativo) lista.add(u);
+        long comeco = System.nanoTime();
+        try {
+            if (!new File(ARQUIVO).exists()) return new ArrayList<>();
+            HeapTextos h = heap();
+            List<Varredura.Fonte> fonte = List.of(new Varredura.Fonte(ARQUIVO, TAM_CABECALHO, TAM_REGISTRO, cabecalho().total()));
+            return Varredura.filtrar(fonte, CodecUsuario::ativo, (b, base) -> CodecUsuario.decodificar(b, base, h));
+        } finally {
+            tempoListarTodos.registrarDesde(comeco);
         }
+    }
 
-        in.close();
-        return lista;
+    /**
+     * Number of active users, from the in-memory header.
+     */
+    public static int contar() throws IOException {
+        return cabecalho().ativos();
     }
 
     public static Usuario login(String email, String senha) throws IOException {
-        Usuario u = buscarPorEmail(email);
-        // Compare against encrypted password
-        if (u != null && u.senha.equals(xor(senha))) return u;
-        return null;
-    }
+        long comeco = System.nanoTime();
+        try {
+            int slot = localizarPorEmail(email);
+            if (slot < 0) return null;
+
+            Usuario u;
+            boolean legado;
+            LeitorLote lote = new LeitorLote(ARQUIVO, TAM_CABECALHO, TAM_REGISTRO, 1);
+            try {
+                lote.carregarUm(slot);
+                u = CodecUsuario.decodificar(lote.buffer(), 0, heap());
+                legado = !CodecUsuario.credencial(lote.buffer(), 0);
+            } finally {
+                lote.close();
+            }
 
-    public static boolean atualizarNome(int id, String novoNome) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            long pos = TAM_CABECALHO + (long) i * TAM_REGISTRO;
-            in.seek(pos);
-            Usuario u = lerRegistro(in);
-
-            if (u.id == id && u.ativo) {
-                in.close();
-                BinOutput out = new BinOutput(ARQUIVO, false);
-                out.seek(pos + 4); // Seek past ID to Name field
-                out.writeString(novoNome, TAM_NOME);
-                out.close();
-                return true;
+            if (legado) {
+                // Stored truncated and trimmed, like every text field
+                if (!u.senha.equals(CampoTexto.normalizar(xor(senha), TAM_SENHA))) return null;
+            } else if (!Credenciais.verificar(u.id, u.senha, senha)) {
+                return null;
             }
+            // Lazy migration: the password is known to be right, so it can be hashed now
+            if (legado || Credenciais.desatualizada(u.senha)) regravarCredencial(u.id, u.senha, senha);
+            return u;
+        } finally {
+            tempoLogin.registrarDesde(comeco);
         }
+    }
 
-        in.close();
-        return false;
+    /**
+     * Replaces the stored password of a user with a freshly derived credential, unless the
+     * record changed since it was read (deleted, or its password already replaced).
+     * @param anterior The password field as it was read.
+     */
+    private static void regravarCredencial(int id, String anterior, String senha) throws IOException {
+        String credencial = Credenciais.gerar(senha);
+        ReentrantLock trava = travas.de(id);
+        trava.lock();
+        try {
+            int slot = localizarPorId(id);
+            if (slot < 0 || !lerSlot(slot).senha.equals(anterior)) return;
+
+            Transacao tx = new Transacao();
+            long pos = TAM_CABECALHO + (long) slot * TAM_REGISTRO;
+            tx.seek(ARQUIVO, pos + CodecUsuario.OFF_FLAGS);
+            tx.writeByte(CodecUsuario.ATIVO | CodecUsuario.CREDENCIAL);
+            ByteBuffer b = ByteBuffer.allocate(TAM_CAMPO_SENHA);
+            CampoTexto.escrever(b, 0, TAM_CAMPO_SENHA, CampoTexto.utf8(credencial), heap(), tx);
+            tx.seek(ARQUIVO, pos + CodecUsuario.OFF_SENHA);
+            tx.write(b.array());
+            wal().confirmar(tx);
+            Credenciais.esquecer(id);
+        } finally {
+            trava.unlock();
+        }
     }
 
-    public static boolean deletar(int idBuscado) throws IOException {
-        int[] cab = lerCabecalho();
-        BinInput in = new BinInput(ARQUIVO);
-
-        for (int i = 0; i < cab[0]; i++) {
-            long pos = TAM_CABECALHO + (long) i * TAM_REGISTRO;
-            in.seek(pos);
-            Usuario u = lerRegistro(in);
-
-            if (u.id == idBuscado && u.ativo) {
-                in.close();
-                BinOutput out = new BinOutput(ARQUIVO, false);
-                // Seek to the very last byte (Active Boolean)
-                out.seek(pos + TAM_REGISTRO - 1);
-                out.writeBoolean(false);
-                out.close();
-                salvarCabecalho(cab[0], cab[1], cab[2] - 1);
+    public static boolean atualizarNome(int id, String novoNome) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            ReentrantLock trava = travas.de(id);
+            trava.lock();
+            try {
+                int slot = localizarPorId(id);
+                if (slot < 0) return false;
+
+                Transacao tx = new Transacao();
+                ByteBuffer b = ByteBuffer.allocate(TAM_CAMPO_NOME);
+                CampoTexto.escrever(b, 0, TAM_CAMPO_NOME, CampoTexto.utf8(CampoTexto.normalizar(novoNome, TAM_NOME)), heap(), tx);
+                tx.seek(ARQUIVO, TAM_CABECALHO + (long) slot * TAM_REGISTRO + CodecUsuario.OFF_NOME); // Seek past ID and flags to Name field
+                tx.write(b.array());
+                wal().confirmar(tx);
                 return true;
+            } finally {
+                trava.unlock();
             }
+        } finally {
+            tempoAtualizarNome.registrarDesde(comeco);
         }
-
-        in.close();
-        return false;
     }
 
-    private static Usuario lerRegistro(BinInput in) throws IOException {
-        Usuario u = new Usuario();
-        u.id = in.readInt();
-        u.nome = in.readString(TAM_NOME);
-        u.email = in.readString(TAM_EMAIL);
-        u.senha = in.readString(TAM_SENHA);
-        u.ativo = in.readBoolean();
-        return u;
+    public static boolean deletar(int idBuscado) throws IOException {
+        long comeco = System.nanoTime();
+        try {
+            ReentrantLock trava = travas.de(idBuscado);
+            trava.lock();
+            try {
+                int slot = localizarPorId(idBuscado);
+                if (slot < 0) return false;
+
+                Usuario u = lerSlot(slot);
+                Transacao tx = new Transacao();
+                // Clear the flags byte, 'ativo' included
+                tx.seek(ARQUIVO, TAM_CABECALHO + (long) slot * TAM_REGISTRO + CodecUsuario.OFF_FLAGS);
+                tx.writeByte(0);
+
+                Wal w = wal();
+                w.entrar();
+                alocacao.lock();
+                try {
+                    Cabecalho cab = cabecalho();
+                    cab.registrarRemocao();
+                    cab.registrar(tx);
+                    w.concluir(w.anexar(tx));
+                    indiceEmail().remover(hashEmail(u.email), slot, cab.total(), cab.ativos());
+                    livres.liberar(slot);
+                    Credenciais.esquecer(idBuscado);
+                    return true;
+                } finally {
+                    alocacao.unlock();
+                    w.sair();
+                }
+            } finally {
+                trava.unlock();
+            }
+        } finally {
+            tempoDeletar.registrarDesde(comeco);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package logic.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import logic.util.Metricas;
+
+/**
+ * Dense array of ints persisted in a sidecar file, used as the storage of the DAO indexes.
+ * Layout: 4(count) followed by 'count' ints. The whole array is kept in memory and
+ * every change is written through to disk, with positional writes on one channel that is
+ * opened at the first change and kept open for the life of the process.
+ * Writers are serialized; readers never lock and always see a complete array.
+ */
+public class VetorIndice {
+
+    public static final int VAZIO = -1;
+    private static final int TAM_CABECALHO = 4; // 1 Integer (Count)
+
+    private final String arquivo;
+    private volatile AtomicIntegerArray valores;
+    private volatile int quantidade;
+    private FileChannel canal; // Guarded by this; null until the first change
+
+    // Exported at /api/metrics
+    private static final Metricas.Contador aberturas = Metricas.contador("todolist_arquivos_abertos_total",
+        "Files opened (a memory-mapped file is opened once)", Metricas.rotulos("via", "VetorIndice"));
+    private static final Metricas.Contador bytesEscritos = Metricas.contador("todolist_bytes_escritos_total",
+        "Bytes written to data and index files", Metricas.rotulos("via", "VetorIndice"));
+
+    private VetorIndice(String arquivo, int[] valores, int quantidade) {
+        this.arquivo = arquivo;
+        this.valores = new AtomicIntegerArray(valores);
+        this.quantidade = quantidade;
+    }
+
+    /**
+     * Loads the array from disk.
+     * @param esperado Number of entries the caller expects, derived from the data file header.
+     * @return The array, or null if the file is missing or does not hold exactly 'esperado' entries.
+     */
+    public static VetorIndice carregar(String arquivo, int esperado) throws IOException {
+        File f = new File(arquivo);
+        if (!f.exists() || f.length() < TAM_CABECALHO) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            int quantidade = in.readInt();
+            if (quantidade != esperado || f.length() < TAM_CABECALHO + (long) quantidade * 4) return null;
+
+            int[] valores = new int[Math.max(16, quantidade)];
+            for (int i = 0; i < quantidade; i++) valores[i] = in.readInt();
+            return new VetorIndice(arquivo, valores, quantidade);
+        }
+    }
+
+    /**
+     * Writes a brand new file from an already computed array.
+     */
+    public static VetorIndice criar(String arquivo, int[] valores, int quantidade) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(arquivo)))) {
+            out.writeInt(quantidade);
+            for (int i = 0; i < quantidade; i++) out.writeInt(valores[i]);
+        }
+        return new VetorIndice(arquivo, Arrays.copyOf(valores, Math.max(16, quantidade)), quantidade);
+    }
+
+    public int tamanho() {
+        return quantidade;
+    }
+
+    /**
+     * Returns the value at a position, or VAZIO if it is out of range.
+     */
+    public int get(int pos) {
+        // quantidade is read first: an array at least that long was published before it
+        if (pos < 0 || pos >= quantidade) return VAZIO;
+        return valores.get(pos);
+    }
+
+    /**
+     * Stores a value, growing the array (with VAZIO entries) if needed.
+     */
+    public synchronized void set(int pos, int valor) throws IOException {
+        AtomicIntegerArray atual = valores;
+        if (pos >= atual.length()) {
+            AtomicIntegerArray maior = new AtomicIntegerArray(Math.max(pos + 1, atual.length() * 2));
+            for (int i = 0; i < quantidade; i++) maior.set(i, atual.get(i));
+            valores = atual = maior;
+        }
+        int anterior = quantidade;
+        for (int i = anterior; i < pos; i++) atual.set(i, VAZIO);
+        atual.set(pos, valor);
+        if (pos + 1 > anterior) quantidade = pos + 1;
+
+        // The VAZIO entries of a gap and the value are contiguous, so they go out in one write
+        int de = Math.min(anterior, pos);
+        ByteBuffer b = ByteBuffer.allocate((pos - de + 1) * 4);
+        for (int i = de; i < pos; i++) b.putInt(VAZIO);
+        b.putInt(valor);
+        b.flip();
+        escrever(b, TAM_CABECALHO + (long) de * 4);
+        if (quantidade != anterior) {
+            // Count is written last, so a crash in between leaves a detectable stale file
+            ByteBuffer c = ByteBuffer.allocate(4);
+            c.putInt(0, quantidade);
+            escrever(c, 0);
+        }
+    }
+
+    private void escrever(ByteBuffer b, long pos) throws IOException {
+        if (canal == null) {
+            canal = FileChannel.open(Paths.get(arquivo), StandardOpenOption.WRITE);
+            aberturas.incrementar();
+        }
+        bytesEscritos.somar(b.remaining());
+        while (b.hasRemaining()) pos += canal.write(b, pos);
+    }
+}
@@ -0,0 +1,378 @@
+package logic.dao;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import logic.util.Armazenamento;
+import logic.util.BinOutput;
+import logic.util.Metricas;
+
+/**
+ * Append-only write-ahead log for the writes of one DAO.
+ *
+ * A Transacao is appended as one frame: 4(payload size) + payload + 8(CRC32 of the payload),
+ * where the payload is 4(write count) followed by 1(target file) + 8(offset) + 4(size) + bytes
+ * for each write. Commits use group commit: the first writer that needs durability fsyncs
+ * the log on behalf of every frame appended so far, while the others wait for it.
+ * Only after that are the writes applied to the data files, without an fsync of their own;
+ * a background checkpointer forces the data files, and the sidecar indexes written outside
+ * the log, before it truncates the log. On startup, recuperar() replays every complete frame,
+ * which is idempotent because writes are physical.
+ * Deferred writes (Transacao.seekAdiado) are flagged in the high bit of the target byte:
+ * they are only applied by recovery, and their owner rewrites them in antesDoCheckpoint.
+ */
+public class Wal {
+
+    // Checkpoint when the log grows past this size, or on every tick if it holds anything
+    private static final long TAM_CHECKPOINT = 4L << 20;
+    private static final long INTERVALO_CHECKPOINT_MS = 5000;
+    private static final int ADIADA = 0x80;
+
+    // Shared by every log (one per DAO or shard); exported at /api/metrics
+    private static final Metricas.Contador bytesEscritos = Metricas.contador("todolist_bytes_escritos_total",
+        "Bytes written to data and index files", Metricas.rotulos("via", "Wal"));
+    private static final Metricas.Histograma tempoFsync = Metricas.duracao("todolist_wal_fsync_duracao_segundos",
+        "Time spent in one group-commit fsync of a write-ahead log", "");
+    private static final Metricas.Histograma transacoesPorFsync = Metricas.histograma("todolist_wal_transacoes_por_fsync",
+        "Transactions made durable by one group-commit fsync", "");
+    private static final Metricas.Histograma tempoCheckpoint = Metricas.duracao("todolist_wal_checkpoint_duracao_segundos",
+        "Time spent in checkpoints that found a non-empty log", "");
+
+    /**
+     * Work done by a checkpoint before the data files are forced.
+     */
+    public interface Acao {
+        void executar() throws IOException;
+    }
+
+    /**
+     * A transaction already appended to the log, waiting for concluir().
+     */
+    public static class Pendente {
+        private final long lsn;
+        private final byte[] payload;
+
+        private Pendente(long lsn, byte[] payload) {
+            this.lsn = lsn;
+            this.payload = payload;
+        }
+    }
+
+    private final String arquivo;
+    private final List<String> alvos;
+    private final FileChannel canal;
+    private final List<Acao> antesDoCheckpoint = new CopyOnWriteArrayList<>();
+    private final List<String> sidecars = new CopyOnWriteArrayList<>();
+
+    // Held shared while a commit is between its log append and its apply, exclusively by checkpoints
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    // ReentrantLock rather than monitors, so waiting virtual threads do not pin their carriers
+    private final ReentrantLock anexar = new ReentrantLock();
+    private final ReentrantLock monitor = new ReentrantLock();
+    private final Condition duravel = monitor.newCondition();
+
+    private volatile long ultimoLsn;   // Frames appended so far
+    private long lsnDuravel;           // Frames known to be on disk (guarded by monitor)
+    private boolean sincronizando;     // An fsync is in flight (guarded by monitor)
+
+    /**
+     * @param arquivo Path of the log file.
+     * @param alvos Data files the logged writes may target. The order is part of the log format.
+     */
+    public Wal(String arquivo, String... alvos) throws IOException {
+        this.arquivo = arquivo;
+        this.alvos = Arrays.asList(alvos);
+        this.canal = FileChannel.open(Paths.get(arquivo),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Replays the complete frames left by a previous run, forces the data files and empties the log.
+     * Must run before the data files are read. Replay stops at the first torn or corrupt frame
+     * (crash mid-append): that frame was never acknowledged, so neither was anything after it.
+     * The discarded bytes are reported on stderr and dropped with the rest of the log.
+     * @return How many transactions were replayed.
+     */
+    public int recuperar() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            int aplicadas = 0;
+            long lidos = 0;
+            File f = new File(arquivo);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+                while (true) {
+                    byte[] payload;
+                    try {
+                        int tamanho = in.readInt();
+                        if (tamanho <= 0 || tamanho > f.length()) break;
+                        payload = new byte[tamanho];
+                        in.readFully(payload);
+                        long crc = in.readLong();
+                        if (crc != crc32(payload)) break;
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    aplicar(payload, true);
+                    aplicadas++;
+                    lidos += 4 + payload.length + 8;
+                }
+            }
+            long descartados = f.length() - lidos;
+            if (descartados > 0) {
+                System.err.println("Log " + arquivo + ": quadro incompleto ou corrompido após " + aplicadas
+                    + " transações; " + descartados + " bytes descartados.");
+            }
+            if (aplicadas > 0) sincronizarAlvos();
+            canal.truncate(0);
+            canal.force(true);
+            return aplicadas;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes a transaction durable and then applies it to the data files.
+     */
+    public void confirmar(Transacao tx) throws IOException {
+        entrar();
+        try {
+            concluir(anexar(tx));
+        } finally {
+            sair();
+        }
+    }
+
+    /**
+     * Opens a commit: until the matching sair(), no checkpoint can run. Callers that must
+     * append under a lock of their own but wait for durability outside of it use
+     * entrar / anexar / (release their lock) / concluir / sair instead of confirmar.
+     * The caller's lock must be taken after entrar(), never before.
+     */
+    public void entrar() {
+        checkpointLock.readLock().lock();
+    }
+
+    /**
+     * Closes a commit opened by entrar(), checkpointing if the log grew too large.
+     */
+    public void sair() throws IOException {
+        checkpointLock.readLock().unlock();
+        if (canal.size() > TAM_CHECKPOINT) checkpoint();
+    }
+
+    /**
+     * Appends a transaction to the log without waiting for it to be durable. Frames are
+     * replayed in append order, so callers append under whatever lock orders their writes.
+     * @return The handle for concluir(), or null if the transaction is empty.
+     */
+    public Pendente anexar(Transacao tx) throws IOException {
+        if (tx.vazia()) return null;
+        byte[] payload = serializar(tx);
+        return new Pendente(anexar(payload), payload);
+    }
+
+    /**
+     * Waits until an appended transaction is durable, then applies its non-deferred writes.
+     */
+    public void concluir(Pendente p) throws IOException {
+        if (p == null) return;
+        aguardar(p.lsn);
+        aplicar(p.payload, false);
+    }
+
+    /**
+     * Registers work to run at every checkpoint, before the data files are forced.
+     * This is where owners of deferred writes put their current bytes on disk.
+     */
+    public void antesDoCheckpoint(Acao acao) {
+        antesDoCheckpoint.add(acao);
+    }
+
+    /**
+     * Registers files that are written outside the log (sidecar indexes) and must be on disk
+     * before the log is emptied, since their staleness checks assume they match the data files.
+     */
+    public void sincronizarNoCheckpoint(String... arquivos) {
+        sidecars.addAll(Arrays.asList(arquivos));
+    }
+
+    /**
+     * Forces the data files and the sidecars, then empties the log. Blocks new commits while it runs.
+     */
+    public void checkpoint() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            if (canal.size() == 0) return;
+            long inicio = System.nanoTime();
+            for (Acao acao : antesDoCheckpoint) acao.executar();
+            sincronizarAlvos();
+            canal.truncate(0);
+            canal.force(true);
+            tempoCheckpoint.registrarDesde(inicio);
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a daemon thread that checkpoints periodically, plus a final checkpoint at shutdown.
+     */
+    public void iniciarCheckpoints() {
+        ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-" + new File(arquivo).getName());
+            t.setDaemon(true);
+            return t;
+        });
+        agendador.scheduleWithFixedDelay(this::checkpointSilencioso,
+            INTERVALO_CHECKPOINT_MS, INTERVALO_CHECKPOINT_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::checkpointSilencioso));
+    }
+
+    private void checkpointSilencioso() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            System.err.println("Erro no checkpoint de " + arquivo + ": " + e.getMessage());
+        }
+    }
+
+    private long anexar(byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(4 + payload.length + 8);
+        frame.putInt(payload.length).put(payload).putLong(crc32(payload)).flip();
+
+        anexar.lock();
+        try {
+            long pos = canal.size();
+            while (frame.hasRemaining()) pos += canal.write(frame, pos);
+            bytesEscritos.somar(frame.limit());
+            return ++ultimoLsn;
+        } finally {
+            anexar.unlock();
+        }
+    }
+
+    /**
+     * Group commit: returns once frame 'lsn' is durable, fsyncing the log if nobody else is.
+     */
+    private void aguardar(long lsn) throws IOException {
+        while (true) {
+            long alvo;
+            long desde;
+            monitor.lock();
+            try {
+                while (sincronizando && lsnDuravel < lsn) {
+                    try {
+                        duravel.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrompido aguardando o log");
+                    }
+                }
+                if (lsnDuravel >= lsn) return;
+                sincronizando = true;
+                // Every frame appended so far rides on this fsync
+                alvo = ultimoLsn;
+                desde = lsnDuravel;
+            } finally {
+                monitor.unlock();
+            }
+
+            boolean ok = false;
+            try {
+                long inicio = System.nanoTime();
+                canal.force(false);
+                tempoFsync.registrarDesde(inicio);
+                transacoesPorFsync.registrar(alvo - desde);
+                ok = true;
+            } finally {
+                monitor.lock();
+                try {
+                    sincronizando = false;
+                    if (ok) lsnDuravel = Math.max(lsnDuravel, alvo);
+                    duravel.signalAll();
+                } finally {
+                    monitor.unlock();
+                }
+            }
+        }
+    }
+
+    private byte[] serializar(Transacao tx) {
+        List<Transacao.Escrita> escritas = tx.escritas();
+        byte[] dados = tx.dados();
+
+        int tamanho = 4;
+        for (Transacao.Escrita e : escritas) tamanho += 1 + 8 + 4 + (e.fim - e.inicio);
+
+        ByteBuffer b = ByteBuffer.allocate(tamanho);
+        b.putInt(escritas.size());
+        for (Transacao.Escrita e : escritas) {
+            int alvo = alvos.indexOf(e.arquivo);
+            if (alvo < 0) throw new IllegalArgumentException("Arquivo fora do log: " + e.arquivo);
+            b.put((byte) (alvo | (e.adiada ? ADIADA : 0))).putLong(e.pos).putInt(e.fim - e.inicio).put(dados, e.inicio, e.fim - e.inicio);
+        }
+        return b.array();
+    }
+
+    /**
+     * @param incluirAdiadas True during recovery; false on commit, where deferred writes are skipped.
+     */
+    private void aplicar(byte[] payload, boolean incluirAdiadas) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(payload);
+        int n = b.getInt();
+        List<BinOutput> abertos = new ArrayList<>();
+        BinOutput[] saidas = new BinOutput[alvos.size()];
+        try {
+            for (int i = 0; i < n; i++) {
+                int marca = b.get() & 0xFF;
+                int alvo = marca & ~ADIADA;
+                long pos = b.getLong();
+                int tamanho = b.getInt();
+                if ((marca & ADIADA) != 0 && !incluirAdiadas) {
+                    b.position(b.position() + tamanho);
+                    continue;
+                }
+                if (saidas[alvo] == null) {
+                    saidas[alvo] = new BinOutput(alvos.get(alvo), false);
+                    abertos.add(saidas[alvo]);
+                }
+                saidas[alvo].seek(pos);
+                saidas[alvo].write(payload, b.position(), tamanho);
+                b.position(b.position() + tamanho);
+            }
+        } finally {
+            for (BinOutput out : abertos) out.close();
+        }
+    }
+
+    private void sincronizarAlvos() throws IOException {
+        for (String alvo : alvos) Armazenamento.sincronizar(alvo);
+        for (String sidecar : sidecars) Armazenamento.sincronizar(sidecar);
+    }
+
+    private static long crc32(byte[] dados) {
+        CRC32 crc = new CRC32();
+        crc.update(dados, 0, dados.length);
+        return crc.getValue();
+    }
+}
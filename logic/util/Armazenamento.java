@@ -0,0 +1,113 @@
+package logic.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the storage engine used by BinInput and BinOutput.
+ * <ul>
+ *   <li>RAF (default): every BinInput/BinOutput opens its own RandomAccessFile.</li>
+ *   <li>MMAP: data files registered with {@link #registrarDados} are mapped into memory once
+ *       and shared; other files (e.g. the sidecar indexes) keep using RandomAccessFile.</li>
+ * </ul>
+ * Selected with -Dtodolist.armazenamento=raf|mmap.
+ */
+public class Armazenamento {
+
+    public enum Motor { RAF, MMAP }
+
+    private static final Motor MOTOR = Motor.valueOf(
+        System.getProperty("todolist.armazenamento", "raf").toUpperCase());
+
+    private static final Set<String> dados = ConcurrentHashMap.newKeySet();
+    private static final Map<String, ArquivoMapeado> mapeados = new ConcurrentHashMap<>();
+    private static volatile boolean encerrado; // After fecharTodos() files fall back to RandomAccessFile
+
+    static {
+        if (MOTOR == Motor.MMAP) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Armazenamento::fecharTodos));
+        }
+    }
+
+    public static Motor motor() {
+        return MOTOR;
+    }
+
+    /**
+     * Marks a file as a data file, eligible to be memory mapped.
+     */
+    public static void registrarDados(String arquivo) {
+        dados.add(chave(arquivo));
+    }
+
+    /**
+     * Returns the shared mapping of a file, or null if it must be accessed through RandomAccessFile.
+     */
+    static ArquivoMapeado mapeado(String arquivo) throws IOException {
+        if (MOTOR != Motor.MMAP || encerrado) return null;
+        String chave = chave(arquivo);
+        if (!dados.contains(chave)) return null;
+
+        ArquivoMapeado m = mapeados.get(chave);
+        if (m != null) return m;
+        synchronized (mapeados) {
+            m = mapeados.get(chave);
+            if (encerrado) return null;
+            if (m == null) {
+                m = new ArquivoMapeado(arquivo);
+                mapeados.put(chave, m);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * Closes the mapping of a file, if there is one, before the file is replaced on disk.
+     * The next access maps the new file.
+     */
+    public static void liberar(String arquivo) throws IOException {
+        synchronized (mapeados) {
+            ArquivoMapeado m = mapeados.remove(chave(arquivo));
+            if (m != null) m.fechar();
+        }
+    }
+
+    /**
+     * Forces the written contents of a file to the storage device, whichever engine wrote them.
+     */
+    public static void sincronizar(String arquivo) throws IOException {
+        ArquivoMapeado m = mapeado(arquivo);
+        if (m != null) m.forcar();
+        if (!new File(arquivo).exists()) return;
+        try (FileChannel canal = FileChannel.open(Paths.get(arquivo), StandardOpenOption.WRITE)) {
+            canal.force(true);
+        }
+    }
+
+    /**
+     * Flushes every mapping and trims the files to their logical length.
+     */
+    public static void fecharTodos() {
+        synchronized (mapeados) {
+            encerrado = true;
+            for (ArquivoMapeado m : mapeados.values()) {
+                try {
+                    m.fechar();
+                } catch (IOException e) {
+                    System.err.println("Erro ao fechar arquivo mapeado: " + e.getMessage());
+                }
+            }
+            mapeados.clear();
+        }
+    }
+
+    private static String chave(String arquivo) {
+        return new File(arquivo).getAbsolutePath();
+    }
+}
@@ -0,0 +1,173 @@
+package logic.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A binary file mapped into memory once and shared by every BinInput/BinOutput that opens it.
+ * The mapping is made of fixed 64 MiB segments and grows one segment at a time, so files
+ * larger than 2 GiB are supported. Reads and writes use the same big-endian layout as
+ * RandomAccessFile, so files stay interchangeable between both engines.
+ */
+public class ArquivoMapeado {
+
+    private static final int BITS_SEGMENTO = 26;
+    private static final long TAM_SEGMENTO = 1L << BITS_SEGMENTO; // 64 MiB per chunk
+    private static final int MASCARA = (int) (TAM_SEGMENTO - 1);
+
+    private final RandomAccessFile raf;
+    private final FileChannel canal;
+    private volatile MappedByteBuffer[] segmentos;
+    private volatile long tamanho; // Logical length: the mapping itself is rounded up to whole segments
+
+    ArquivoMapeado(String arquivo) throws IOException {
+        this.raf = new RandomAccessFile(arquivo, "rw");
+        this.canal = raf.getChannel();
+        this.tamanho = raf.length();
+        this.segmentos = new MappedByteBuffer[0];
+        mapearAte(tamanho);
+    }
+
+    public long length() {
+        return tamanho;
+    }
+
+    /**
+     * Maps enough segments to cover the first 'fim' bytes of the file.
+     */
+    private synchronized void mapearAte(long fim) throws IOException {
+        int necessarios = (int) ((fim + TAM_SEGMENTO - 1) >>> BITS_SEGMENTO);
+        MappedByteBuffer[] atuais = segmentos;
+        if (necessarios <= atuais.length) return;
+
+        MappedByteBuffer[] novos = Arrays.copyOf(atuais, necessarios);
+        for (int i = atuais.length; i < necessarios; i++) {
+            novos[i] = canal.map(FileChannel.MapMode.READ_WRITE, i * TAM_SEGMENTO, TAM_SEGMENTO);
+        }
+        segmentos = novos;
+    }
+
+    /**
+     * Makes sure the bytes in [pos, pos + n) are mapped and counted in the logical length.
+     */
+    private void reservar(long pos, int n) throws IOException {
+        long fim = pos + n;
+        if (fim <= tamanho) return;
+        synchronized (this) {
+            if (fim > (long) segmentos.length << BITS_SEGMENTO) mapearAte(fim);
+            if (fim > tamanho) tamanho = fim;
+        }
+    }
+
+    private void verificarLimite(long pos, int n) throws EOFException {
+        if (pos < 0 || pos + n > tamanho) throw new EOFException();
+    }
+
+    public byte get(long pos) throws IOException {
+        verificarLimite(pos, 1);
+        return segmentos[(int) (pos >>> BITS_SEGMENTO)].get((int) pos & MASCARA);
+    }
+
+    public int getInt(long pos) throws IOException {
+        verificarLimite(pos, 4);
+        int off = (int) pos & MASCARA;
+        if (off <= MASCARA - 3) return segmentos[(int) (pos >>> BITS_SEGMENTO)].getInt(off);
+        // Value crosses a segment boundary
+        return ((get(pos) & 0xFF) << 24) | ((get(pos + 1) & 0xFF) << 16) | ((get(pos + 2) & 0xFF) << 8) | (get(pos + 3) & 0xFF);
+    }
+
+    public char getChar(long pos) throws IOException {
+        verificarLimite(pos, 2);
+        int off = (int) pos & MASCARA;
+        if (off <= MASCARA - 1) return segmentos[(int) (pos >>> BITS_SEGMENTO)].getChar(off);
+        return (char) (((get(pos) & 0xFF) << 8) | (get(pos + 1) & 0xFF));
+    }
+
+    /**
+     * Copies 'n' bytes starting at 'pos' into 'destino'.
+     */
+    public void get(long pos, byte[] destino, int inicio, int n) throws IOException {
+        verificarLimite(pos, n);
+        while (n > 0) {
+            int off = (int) pos & MASCARA;
+            int parte = (int) Math.min(n, TAM_SEGMENTO - off);
+            ByteBuffer seg = segmentos[(int) (pos >>> BITS_SEGMENTO)].duplicate();
+            seg.position(off);
+            seg.get(destino, inicio, parte);
+            pos += parte;
+            inicio += parte;
+            n -= parte;
+        }
+    }
+
+    public void put(long pos, byte valor) throws IOException {
+        reservar(pos, 1);
+        segmentos[(int) (pos >>> BITS_SEGMENTO)].put((int) pos & MASCARA, valor);
+    }
+
+    public void putInt(long pos, int valor) throws IOException {
+        reservar(pos, 4);
+        int off = (int) pos & MASCARA;
+        if (off <= MASCARA - 3) {
+            segmentos[(int) (pos >>> BITS_SEGMENTO)].putInt(off, valor);
+            return;
+        }
+        put(pos, (byte) (valor >>> 24));
+        put(pos + 1, (byte) (valor >>> 16));
+        put(pos + 2, (byte) (valor >>> 8));
+        put(pos + 3, (byte) valor);
+    }
+
+    public void putChar(long pos, char valor) throws IOException {
+        reservar(pos, 2);
+        int off = (int) pos & MASCARA;
+        if (off <= MASCARA - 1) {
+            segmentos[(int) (pos >>> BITS_SEGMENTO)].putChar(off, valor);
+            return;
+        }
+        put(pos, (byte) (valor >>> 8));
+        put(pos + 1, (byte) valor);
+    }
+
+    /**
+     * Copies 'n' bytes of 'origem' to the file starting at 'pos'.
+     */
+    public void put(long pos, byte[] origem, int inicio, int n) throws IOException {
+        reservar(pos, n);
+        while (n > 0) {
+            int off = (int) pos & MASCARA;
+            int parte = (int) Math.min(n, TAM_SEGMENTO - off);
+            ByteBuffer seg = segmentos[(int) (pos >>> BITS_SEGMENTO)].duplicate();
+            seg.position(off);
+            seg.put(origem, inicio, parte);
+            pos += parte;
+            inicio += parte;
+            n -= parte;
+        }
+    }
+
+    /**
+     * Flushes dirty pages of the mapping to the storage device.
+     */
+    public void forcar() {
+        for (MappedByteBuffer seg : segmentos) seg.force();
+    }
+
+    /**
+     * Flushes the mapping and trims the segment padding off the end of the file.
+     */
+    synchronized void fechar() throws IOException {
+        forcar();
+        try {
+            raf.setLength(tamanho);
+        } catch (IOException e) {
+            // Some platforms refuse to truncate a mapped file; the zero padding is harmless
+        }
+        raf.close();
+    }
+}
@@ -5,11 +5,20 @@ import java.io.RandomAccessFile;
 
 /**
  * Utility class for reading primitive types and structured data from a binary file.
- * Uses RandomAccessFile in read-only mode.
+ * Uses RandomAccessFile in read-only mode, or the shared memory mapping of the file
+ * when the MMAP engine is selected (see Armazenamento).
  */
 public class BinInput {
 
     private final RandomAccessFile raf;
+    private final ArquivoMapeado map;
+    private long posicao; // File pointer when reading from the mapping
+
+    // Exported at /api/metrics
+    private static final Metricas.Contador aberturas = Metricas.contador("todolist_arquivos_abertos_total",
+        "Files opened (a memory-mapped file is opened once)", Metricas.rotulos("via", "BinInput"));
+    private static final Metricas.Contador bytesLidos = Metricas.contador("todolist_bytes_lidos_total",
+        "Bytes read from data and index files", Metricas.rotulos("via", "BinInput"));
 
     /**
      * Initializes the reader for a specific file in read-only ("r") mode.
@@ -17,23 +26,46 @@ public class BinInput {
      * @throws IOException If the file cannot be opened.
      */
     public BinInput(String arquivo) throws IOException {
-        this.raf = new RandomAccessFile(arquivo, "r");
+        this.map = Armazenamento.mapeado(arquivo);
+        this.raf = map == null ? new RandomAccessFile(arquivo, "r") : null;
+        if (raf != null) aberturas.incrementar();
     }
 
     public int readInt() throws IOException {
-        return raf.readInt();
+        bytesLidos.somar(4);
+        if (map == null) return raf.readInt();
+        int v = map.getInt(posicao);
+        posicao += 4;
+        return v;
     }
 
     public float readFloat() throws IOException {
-        return raf.readFloat();
+        return Float.intBitsToFloat(readInt());
     }
 
     public double readDouble() throws IOException {
-        return raf.readDouble();
+        long alto = readInt() & 0xFFFFFFFFL;
+        long baixo = readInt() & 0xFFFFFFFFL;
+        return Double.longBitsToDouble((alto << 32) | baixo);
     }
 
     public boolean readBoolean() throws IOException {
-        return raf.readBoolean();
+        bytesLidos.somar(1);
+        if (map == null) return raf.readBoolean();
+        return map.get(posicao++) != 0;
+    }
+
+    /**
+     * Reads exactly 'n' raw bytes into 'destino'.
+     */
+    public void readFully(byte[] destino, int inicio, int n) throws IOException {
+        bytesLidos.somar(n);
+        if (map == null) {
+            raf.readFully(destino, inicio, n);
+            return;
+        }
+        map.get(posicao, destino, inicio, n);
+        posicao += n;
     }
 
     /**
@@ -42,10 +74,12 @@ public class BinInput {
      * @return The resulting string, stripped of trailing whitespace.
      */
     public String readString(int tam) throws IOException {
+        bytesLidos.somar(tam * 2L);
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < tam; i++) {
-            sb.append(raf.readChar());
+            sb.append(map == null ? raf.readChar() : map.getChar(posicao + i * 2L));
         }
+        if (map != null) posicao += tam * 2L;
         return sb.toString().trim();
     }
 
@@ -54,32 +88,37 @@ public class BinInput {
      * @return An integer array [day, month, year].
      */
     public int[] readDate() throws IOException {
-        return new int[]{ raf.readInt(), raf.readInt(), raf.readInt() };
+        return new int[]{ readInt(), readInt(), readInt() };
     }
 
     /**
      * Moves the file pointer to a specific byte offset.
      */
     public void seek(long posicao) throws IOException {
-        raf.seek(posicao);
+        if (map == null) raf.seek(posicao);
+        else this.posicao = posicao;
     }
 
     /**
      * Skips a specified number of bytes from the current position.
      */
     public void skip(int bytes) throws IOException {
-        raf.skipBytes(bytes);
+        if (map == null) raf.skipBytes(bytes);
+        else posicao = Math.min(posicao + bytes, map.length());
     }
 
     public long getFilePointer() throws IOException {
-        return raf.getFilePointer();
+        return map == null ? raf.getFilePointer() : posicao;
     }
 
     public long length() throws IOException {
-        return raf.length();
+        return map == null ? raf.length() : map.length();
     }
 
+    /**
+     * Closes the file. A shared mapping stays open until shutdown.
+     */
     public void close() throws IOException {
-        raf.close();
+        if (raf != null) raf.close();
     }
 }
\ No newline at end of file
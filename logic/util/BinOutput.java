@@ -5,11 +5,20 @@ import java.io.RandomAccessFile;
 
 /**
  * Utility class for writing primitive types and structured data to a binary file.
- * Supports both overwriting and appending.
+ * Supports both overwriting and appending. Writes go to a RandomAccessFile, or to the
+ * shared memory mapping of the file when the MMAP engine is selected (see Armazenamento).
  */
 public class BinOutput {
 
     private final RandomAccessFile raf;
+    private final ArquivoMapeado map;
+    private long posicao; // File pointer when writing to the mapping
+
+    // Exported at /api/metrics
+    private static final Metricas.Contador aberturas = Metricas.contador("todolist_arquivos_abertos_total",
+        "Files opened (a memory-mapped file is opened once)", Metricas.rotulos("via", "BinOutput"));
+    private static final Metricas.Contador bytesEscritos = Metricas.contador("todolist_bytes_escritos_total",
+        "Bytes written to data and index files", Metricas.rotulos("via", "BinOutput"));
 
     /**
      * Initializes the writer in read-write ("rw") mode.
@@ -17,26 +26,51 @@ public class BinOutput {
      * @param append If true, moves the pointer to the end of the file immediately.
      */
     public BinOutput(String arquivo, boolean append) throws IOException {
-        this.raf = new RandomAccessFile(arquivo, "rw");
+        this.map = Armazenamento.mapeado(arquivo);
+        this.raf = map == null ? new RandomAccessFile(arquivo, "rw") : null;
+        if (raf != null) aberturas.incrementar();
         if (append) {
-            raf.seek(raf.length());
+            seek(length());
         }
     }
 
     public void writeInt(int valor) throws IOException {
-        raf.writeInt(valor);
+        bytesEscritos.somar(4);
+        if (map == null) {
+            raf.writeInt(valor);
+            return;
+        }
+        map.putInt(posicao, valor);
+        posicao += 4;
     }
 
     public void writeFloat(float valor) throws IOException {
-        raf.writeFloat(valor);
+        writeInt(Float.floatToIntBits(valor));
     }
 
     public void writeDouble(double valor) throws IOException {
-        raf.writeDouble(valor);
+        long bits = Double.doubleToLongBits(valor);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
     }
 
     public void writeBoolean(boolean valor) throws IOException {
-        raf.writeBoolean(valor);
+        bytesEscritos.somar(1);
+        if (map == null) raf.writeBoolean(valor);
+        else map.put(posicao++, (byte) (valor ? 1 : 0));
+    }
+
+    /**
+     * Writes 'n' raw bytes from 'origem'.
+     */
+    public void write(byte[] origem, int inicio, int n) throws IOException {
+        bytesEscritos.somar(n);
+        if (map == null) {
+            raf.write(origem, inicio, n);
+            return;
+        }
+        map.put(posicao, origem, inicio, n);
+        posicao += n;
     }
 
     /**
@@ -47,6 +81,7 @@ public class BinOutput {
      */
     public void writeString(String s, int tam) throws IOException {
         if (s == null) s = "";
+        bytesEscritos.somar(tam * 2L);
         StringBuilder sb = new StringBuilder(s);
         
         // Pad with spaces if necessary
@@ -56,32 +91,38 @@ public class BinOutput {
         
         // Write exactly 'tam' characters
         for (int i = 0; i < tam; i++) {
-            raf.writeChar(sb.charAt(i));
+            if (map == null) raf.writeChar(sb.charAt(i));
+            else map.putChar(posicao + i * 2L, sb.charAt(i));
         }
+        if (map != null) posicao += tam * 2L;
     }
 
     /**
      * Writes a date as three distinct integers.
      */
     public void writeDate(int dia, int mes, int ano) throws IOException {
-        raf.writeInt(dia);
-        raf.writeInt(mes);
-        raf.writeInt(ano);
+        writeInt(dia);
+        writeInt(mes);
+        writeInt(ano);
     }
 
     public void seek(long posicao) throws IOException {
-        raf.seek(posicao);
+        if (map == null) raf.seek(posicao);
+        else this.posicao = posicao;
     }
 
     public long getFilePointer() throws IOException {
-        return raf.getFilePointer();
+        return map == null ? raf.getFilePointer() : posicao;
     }
 
     public long length() throws IOException {
-        return raf.length();
+        return map == null ? raf.length() : map.length();
     }
 
+    /**
+     * Closes the file. A shared mapping stays open until shutdown.
+     */
     public void close() throws IOException {
-        raf.close();
+        if (raf != null) raf.close();
     }
 }
\ No newline at end of file
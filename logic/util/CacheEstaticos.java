@@ -0,0 +1,229 @@
+package logic.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The files of a directory (the web client), loaded into memory once, each with its gzip
+ * variant (when that is smaller) and an ETag, so serving one never touches the disk.
+ * With observar(), a daemon thread reloads files as they change on disk, for development.
+ */
+public class CacheEstaticos {
+
+    // Below this size gzip framing eats most of the gain
+    private static final int MIN_COMPRIMIR = 256;
+
+    /**
+     * A cached file, ready to be sent.
+     */
+    public static class Arquivo {
+        public final String tipo;
+        public final byte[] corpo;
+        // Null when compressing does not pay off (already compressed types, tiny files)
+        public final byte[] gzip;
+        // Strong validators of each variant: the same URL has two representations
+        public final String etag;
+        public final String etagGzip;
+        // Off-heap copies, for channel writes that need no copy into a temporary direct buffer
+        private final ByteBuffer corpoDireto;
+        private final ByteBuffer gzipDireto;
+
+        Arquivo(String tipo, byte[] corpo, byte[] gzip, String etag) {
+            this.tipo = tipo;
+            this.corpo = corpo;
+            this.gzip = gzip;
+            this.etag = "\"" + etag + "\"";
+            this.etagGzip = "\"" + etag + "-gz\"";
+            this.corpoDireto = direto(corpo);
+            this.gzipDireto = gzip == null ? null : direto(gzip);
+        }
+
+        /**
+         * A read-only view of the body (or of its gzip variant) in direct memory, with its own position.
+         */
+        public ByteBuffer direto(boolean gzip) {
+            return (gzip ? gzipDireto : corpoDireto).duplicate();
+        }
+
+        private static ByteBuffer direto(byte[] dados) {
+            ByteBuffer b = ByteBuffer.allocateDirect(dados.length);
+            b.put(dados).flip();
+            return b.asReadOnlyBuffer();
+        }
+    }
+
+    private final Path raiz;
+    private final String prefixo;
+    private final Map<String, Arquivo> arquivos = new ConcurrentHashMap<>();
+
+    /**
+     * Loads every file under 'raiz'.
+     * @param prefixo URL path the directory is served under, e.g. "/view".
+     */
+    public CacheEstaticos(String raiz, String prefixo) throws IOException {
+        this.raiz = Paths.get(raiz).toAbsolutePath().normalize();
+        this.prefixo = prefixo;
+        if (!Files.isDirectory(this.raiz)) return;
+        try (Stream<Path> caminhos = Files.walk(this.raiz)) {
+            for (Path p : (Iterable<Path>) caminhos.filter(Files::isRegularFile)::iterator) carregar(p);
+        }
+    }
+
+    /**
+     * The cached file for a URL path, or null if there is none.
+     */
+    public Arquivo buscar(String caminho) {
+        return arquivos.get(caminho);
+    }
+
+    public int tamanho() {
+        return arquivos.size();
+    }
+
+    private void carregar(Path p) throws IOException {
+        byte[] corpo = Files.readAllBytes(p);
+        String tipo = tipo(p.getFileName().toString());
+        byte[] gzip = null;
+        if (corpo.length >= MIN_COMPRIMIR && compressivel(tipo)) {
+            gzip = gzip(corpo);
+            if (gzip.length >= corpo.length) gzip = null;
+        }
+        arquivos.put(url(p), new Arquivo(tipo, corpo, gzip, resumo(corpo)));
+    }
+
+    private String url(Path p) {
+        StringBuilder sb = new StringBuilder(prefixo);
+        for (Path parte : raiz.relativize(p)) sb.append('/').append(parte);
+        return sb.toString();
+    }
+
+    /**
+     * Starts a daemon thread that reloads files created or changed under the root (and drops
+     * deleted ones). Only the root directory itself is watched, not its subdirectories.
+     */
+    public void observar() throws IOException {
+        WatchService servico = FileSystems.getDefault().newWatchService();
+        raiz.register(servico, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey chave = servico.take();
+                    for (WatchEvent<?> evento : chave.pollEvents()) {
+                        if (evento.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                        Path p = raiz.resolve((Path) evento.context());
+                        try {
+                            if (Files.isRegularFile(p)) carregar(p);
+                            else arquivos.remove(url(p));
+                        } catch (IOException e) {
+                            // Usually a file caught mid-write; its next event reloads it
+                            System.err.println("Erro ao recarregar " + p + ": " + e.getMessage());
+                        }
+                    }
+                    if (!chave.reset()) return;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Shutting down
+            }
+        }, "estaticos-" + raiz.getFileName());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Whether an Accept-Encoding header admits gzip (explicitly, or through "*", with q > 0).
+     */
+    public static boolean aceitaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        double gzip = -1, qualquer = -1;
+        for (String parte : acceptEncoding.split(",")) {
+            String[] campos = parte.split(";");
+            String codificacao = campos[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < campos.length; i++) {
+                String c = campos[i].trim();
+                if (c.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(c.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (codificacao.equals("gzip") || codificacao.equals("x-gzip")) gzip = q;
+            else if (codificacao.equals("*")) qualquer = q;
+        }
+        return gzip >= 0 ? gzip > 0 : qualquer > 0;
+    }
+
+    /**
+     * Whether an If-None-Match header matches 'etag' (weak comparison, as RFC 9110 asks for).
+     */
+    public static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String parte : ifNoneMatch.split(",")) {
+            String e = parte.trim();
+            if (e.equals("*")) return true;
+            if (e.startsWith("W/")) e = e.substring(2);
+            if (e.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Content-Type for a file name.
+     */
+    public static String tipo(String nome) {
+        String n = nome.toLowerCase();
+        if (n.endsWith(".html")) return "text/html; charset=UTF-8";
+        if (n.endsWith(".css"))  return "text/css; charset=UTF-8";
+        if (n.endsWith(".js"))   return "application/javascript; charset=UTF-8";
+        if (n.endsWith(".json")) return "application/json; charset=UTF-8";
+        if (n.endsWith(".svg"))  return "image/svg+xml";
+        if (n.endsWith(".png"))  return "image/png";
+        if (n.endsWith(".jpg") || n.endsWith(".jpeg")) return "image/jpeg";
+        if (n.endsWith(".ico"))  return "image/x-icon";
+        return "text/plain; charset=UTF-8";
+    }
+
+    private static boolean compressivel(String tipo) {
+        return tipo.startsWith("text/") || tipo.startsWith("application/") || tipo.equals("image/svg+xml");
+    }
+
+    private static byte[] gzip(byte[] dados) throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(dados.length / 2);
+        // Compressed once per load, so the slowest level is worth it
+        try (GZIPOutputStream gz = new GZIPOutputStream(saida) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gz.write(dados);
+        }
+        return saida.toByteArray();
+    }
+
+    private static String resumo(byte[] dados) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(dados);
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) sb.append(Character.forDigit((h[i] >> 4) & 0xF, 16)).append(Character.forDigit(h[i] & 0xF, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JDK ships SHA-256
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package logic.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Streaming JSON writer that encodes straight to UTF-8 bytes.
+ * Values are escaped and encoded char by char into a byte buffer that is flushed to the
+ * underlying stream whenever it fills up, so no intermediate Strings or byte arrays are
+ * created per value. Buffers are recycled between writers through a small pool.
+ * Commas between members and elements are inserted automatically.
+ */
+public class EscritorJson implements Closeable {
+
+    private static final int TAM_BUFFER = 8192;
+    private static final ArrayBlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(64);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int PROFUNDIDADE_MAXIMA = 64;
+
+    private final OutputStream out;
+    private byte[] buf;
+    private int pos;
+
+    // Bit 'n' set: the container at depth n already has a member, so the next one needs a comma
+    private long comVirgula;
+    private int profundidade;
+    private boolean depoisDoCampo; // A member name was just written; its value takes no comma
+
+    public EscritorJson(OutputStream out) {
+        this.out = out;
+        byte[] b = BUFFERS.poll();
+        this.buf = b != null ? b : new byte[TAM_BUFFER];
+    }
+
+    public EscritorJson inicioObjeto() throws IOException {
+        separar();
+        abrir('{');
+        return this;
+    }
+
+    public EscritorJson fimObjeto() throws IOException {
+        fechar('}');
+        return this;
+    }
+
+    public EscritorJson inicioLista() throws IOException {
+        separar();
+        abrir('[');
+        return this;
+    }
+
+    public EscritorJson fimLista() throws IOException {
+        fechar(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     */
+    public EscritorJson campo(String nome) throws IOException {
+        separar();
+        string(nome);
+        byte1(':');
+        depoisDoCampo = true;
+        return this;
+    }
+
+    public EscritorJson valor(String s) throws IOException {
+        separar();
+        if (s == null) ascii("null");
+        else string(s);
+        return this;
+    }
+
+    public EscritorJson valor(boolean b) throws IOException {
+        separar();
+        ascii(b ? "true" : "false");
+        return this;
+    }
+
+    public EscritorJson valor(long n) throws IOException {
+        separar();
+        if (n == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return this;
+        }
+        if (n < 0) {
+            byte1('-');
+            n = -n;
+        }
+        garantir(20);
+        // Digits are produced backwards, then written in place
+        int fim = pos + digitos(n);
+        int i = fim;
+        do {
+            buf[--i] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        pos = fim;
+        return this;
+    }
+
+    /**
+     * Shortcut for campo(nome).valor(v).
+     */
+    public EscritorJson campo(String nome, String v) throws IOException {
+        return campo(nome).valor(v);
+    }
+
+    public EscritorJson campo(String nome, long v) throws IOException {
+        return campo(nome).valor(v);
+    }
+
+    public EscritorJson campo(String nome, boolean v) throws IOException {
+        return campo(nome).valor(v);
+    }
+
+    /**
+     * Sends the buffered bytes to the underlying stream.
+     */
+    public void flush() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Flushes, closes the underlying stream and returns the buffer to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buf == null) return;
+        try {
+            flush();
+            out.close();
+        } finally {
+            BUFFERS.offer(buf);
+            buf = null;
+        }
+    }
+
+    private void separar() throws IOException {
+        if (depoisDoCampo) {
+            depoisDoCampo = false;
+            return;
+        }
+        if (profundidade == 0) return;
+        long bit = 1L << (profundidade - 1);
+        if ((comVirgula & bit) != 0) byte1(',');
+        else comVirgula |= bit;
+    }
+
+    private void abrir(char c) throws IOException {
+        if (profundidade == PROFUNDIDADE_MAXIMA) throw new IllegalStateException("JSON aninhado demais");
+        byte1(c);
+        profundidade++;
+        comVirgula &= ~(1L << (profundidade - 1));
+    }
+
+    private void fechar(char c) throws IOException {
+        profundidade--;
+        byte1(c);
+    }
+
+    /**
+     * Writes a quoted, escaped string, encoding it to UTF-8 on the fly.
+     */
+    private void string(String s) throws IOException {
+        byte1('"');
+        byte[] buf = this.buf;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            // Room for the longest output of one char (6 bytes, an escaped control char), so the cases below write directly
+            if (buf.length - pos < 6) descarregar();
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') buf[pos++] = '\\';
+                buf[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                escaparControle(c);
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[pos++] = '?'; // Unpaired surrogate, replaced like String.getBytes does
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        byte1('"');
+    }
+
+    /**
+     * Caller guarantees room for 6 bytes.
+     */
+    private void escaparControle(char c) {
+        buf[pos++] = '\\';
+        switch (c) {
+            case '\n': buf[pos++] = 'n'; break;
+            case '\r': buf[pos++] = 'r'; break;
+            case '\t': buf[pos++] = 't'; break;
+            case '\b': buf[pos++] = 'b'; break;
+            case '\f': buf[pos++] = 'f'; break;
+            default:
+                buf[pos++] = 'u';
+                buf[pos++] = '0';
+                buf[pos++] = '0';
+                buf[pos++] = HEX[c >> 4];
+                buf[pos++] = HEX[c & 0xF];
+        }
+    }
+
+    private void ascii(String s) throws IOException {
+        garantir(s.length());
+        for (int i = 0; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+    }
+
+    private void byte1(int b) throws IOException {
+        if (pos == buf.length) descarregar();
+        buf[pos++] = (byte) b;
+    }
+
+    private void garantir(int n) throws IOException {
+        if (pos + n > buf.length) descarregar();
+    }
+
+    private void descarregar() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    private static int digitos(long n) {
+        int d = 1;
+        while (n >= 10) {
+            n /= 10;
+            d++;
+        }
+        return d;
+    }
+}
@@ -0,0 +1,24 @@
+package logic.util;
+
+import java.io.IOException;
+
+/**
+ * A request body that is not valid JSON, or lacks a field the request needs.
+ * The message is meant for the client (returned with a 400).
+ */
+public class JsonInvalidoException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JsonInvalidoException(String mensagem) {
+        super(mensagem);
+    }
+
+    /**
+     * No stack trace: these are client errors, and skipping it keeps rejecting a body cheap.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,441 @@
+package logic.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass parser for JSON request bodies: one object of named fields, possibly holding
+ * lists of such objects.
+ * The fields a request uses are declared once, each with its type; ler() then validates the
+ * raw UTF-8 bytes in one pass and decodes only the declared fields: integers are accumulated
+ * straight from the digits and strings are decoded once, unescaped. Other members (including
+ * nested objects and arrays) are validated and skipped. Any syntax error is reported at the
+ * first offending byte, without decoding anything else.
+ *
+ * Declared once and shared (immutable after the declarations):
+ * <pre>
+ * static final LeitorJson TAREFA = new LeitorJson().inteiro("id").texto("descricao");
+ * LeitorJson.Campos c = TAREFA.ler(corpo);
+ * c.inteiro("id"); c.texto("descricao");
+ * </pre>
+ */
+public class LeitorJson {
+
+    private static final int MAX_CAMPOS = 16;
+    private static final int PROFUNDIDADE_MAXIMA = 64;
+
+    private static final byte TEXTO = 0;
+    private static final byte INTEIRO = 1;
+    private static final byte LOGICO = 2;
+    private static final byte LISTA = 3;
+
+    private final String[] nomes = new String[MAX_CAMPOS];
+    private final byte[][] nomesBytes = new byte[MAX_CAMPOS][];
+    private final byte[] tipos = new byte[MAX_CAMPOS];
+    private final boolean[] obrigatorios = new boolean[MAX_CAMPOS];
+    private final LeitorJson[] elementos = new LeitorJson[MAX_CAMPOS];
+    private int quantidade;
+
+    /**
+     * Declares a string field. It is optional and reads as "" when absent or null.
+     */
+    public LeitorJson texto(String nome) {
+        return declarar(nome, TEXTO, false, null);
+    }
+
+    /**
+     * Declares an integer field. It is required and must fit an int; a quoted number
+     * ("12") is accepted as well.
+     */
+    public LeitorJson inteiro(String nome) {
+        return declarar(nome, INTEIRO, true, null);
+    }
+
+    /**
+     * Like inteiro, but the field may be absent (reads as 0).
+     */
+    public LeitorJson inteiroOpcional(String nome) {
+        return declarar(nome, INTEIRO, false, null);
+    }
+
+    /**
+     * Declares an optional true/false field (reads as false when absent).
+     */
+    public LeitorJson logico(String nome) {
+        return declarar(nome, LOGICO, false, null);
+    }
+
+    /**
+     * Declares a required array of objects, each one read with 'elemento'.
+     */
+    public LeitorJson lista(String nome, LeitorJson elemento) {
+        return declarar(nome, LISTA, true, elemento);
+    }
+
+    private LeitorJson declarar(String nome, byte tipo, boolean obrigatorio, LeitorJson elemento) {
+        if (quantidade == MAX_CAMPOS) throw new IllegalStateException("Campos demais");
+        nomes[quantidade] = nome;
+        nomesBytes[quantidade] = nome.getBytes(StandardCharsets.UTF_8);
+        tipos[quantidade] = tipo;
+        obrigatorios[quantidade] = obrigatorio;
+        elementos[quantidade] = elemento;
+        quantidade++;
+        return this;
+    }
+
+    /**
+     * Parses a request body.
+     * @throws JsonInvalidoException If it is not a valid JSON object, a field has the wrong
+     *         type, or a required field is missing.
+     */
+    public Campos ler(byte[] json) throws JsonInvalidoException {
+        Analise a = new Analise(json);
+        a.espacos();
+        Campos campos = a.objeto(this, 1);
+        a.espacos();
+        if (a.pos != json.length) throw a.erro("conteúdo após o objeto");
+        return campos;
+    }
+
+    private int indice(String nome) {
+        for (int i = 0; i < quantidade; i++) {
+            if (nomes[i].equals(nome)) return i;
+        }
+        throw new IllegalArgumentException("Campo não declarado: " + nome);
+    }
+
+    /**
+     * Decoded values of one object.
+     */
+    public static class Campos {
+
+        private final LeitorJson leitor;
+        private final Object[] objetos; // Strings and lists
+        private final int[] numeros;    // Integers, and booleans as 0/1
+        private final boolean[] presente;
+
+        private Campos(LeitorJson leitor) {
+            this.leitor = leitor;
+            this.objetos = new Object[leitor.quantidade];
+            this.numeros = new int[leitor.quantidade];
+            this.presente = new boolean[leitor.quantidade];
+        }
+
+        public String texto(String nome) {
+            Object s = objetos[leitor.indice(nome)];
+            return s != null ? (String) s : "";
+        }
+
+        public int inteiro(String nome) {
+            return numeros[leitor.indice(nome)];
+        }
+
+        public boolean logico(String nome) {
+            return numeros[leitor.indice(nome)] != 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<Campos> lista(String nome) {
+            return (List<Campos>) objetos[leitor.indice(nome)];
+        }
+
+        public boolean presente(String nome) {
+            return presente[leitor.indice(nome)];
+        }
+    }
+
+    /**
+     * State of one pass over a body.
+     */
+    private static class Analise {
+
+        private final byte[] b;
+        private int pos;
+
+        Analise(byte[] b) {
+            this.b = b;
+        }
+
+        /**
+         * Reads an object with the fields of 'formato', starting at its opening brace.
+         */
+        Campos objeto(LeitorJson formato, int profundidade) throws JsonInvalidoException {
+            if (profundidade > PROFUNDIDADE_MAXIMA) throw erro("JSON aninhado demais");
+            Campos campos = new Campos(formato);
+            esperar('{');
+            espacos();
+            if (!consumir('}')) {
+                do {
+                    espacos();
+                    int campo = nomeDoCampo(formato);
+                    espacos();
+                    esperar(':');
+                    espacos();
+                    if (campo < 0) pularValor(profundidade);
+                    else ler(formato, campos, campo, profundidade);
+                    espacos();
+                } while (consumir(','));
+                esperar('}');
+            }
+            for (int i = 0; i < formato.quantidade; i++) {
+                if (formato.obrigatorios[i] && !campos.presente[i]) throw erro("campo obrigatório ausente: " + formato.nomes[i]);
+            }
+            return campos;
+        }
+
+        private void ler(LeitorJson formato, Campos campos, int campo, int profundidade) throws JsonInvalidoException {
+            switch (formato.tipos[campo]) {
+                case INTEIRO: campos.numeros[campo] = lerInteiro(formato.nomes[campo]); break;
+                case LOGICO:  campos.numeros[campo] = lerLogico(formato.nomes[campo]) ? 1 : 0; break;
+                case LISTA:   campos.objetos[campo] = lerLista(formato.nomes[campo], formato.elementos[campo], profundidade); break;
+                default:      campos.objetos[campo] = lerTexto(formato.nomes[campo]);
+            }
+            campos.presente[campo] = true;
+        }
+
+        /**
+         * Reads a member name and matches it against the declared fields without decoding it.
+         * @return The field index, or -1 for a member nobody asked for.
+         */
+        private int nomeDoCampo(LeitorJson formato) throws JsonInvalidoException {
+            if (pos >= b.length || b[pos] != '"') throw erro("nome de campo esperado");
+            int inicio = pos + 1;
+            boolean escapado = pularString();
+            if (escapado) return -1; // Declared names never need escapes
+            int tam = pos - 1 - inicio;
+            for (int i = 0; i < formato.quantidade; i++) {
+                byte[] nome = formato.nomesBytes[i];
+                if (nome.length == tam && iguais(nome, inicio)) return i;
+            }
+            return -1;
+        }
+
+        private boolean iguais(byte[] nome, int inicio) {
+            for (int i = 0; i < nome.length; i++) {
+                if (b[inicio + i] != nome[i]) return false;
+            }
+            return true;
+        }
+
+        private int lerInteiro(String nome) throws JsonInvalidoException {
+            boolean aspas = consumir('"');
+            int inicio = pos;
+            boolean negativo = consumir('-');
+            long n = 0;
+            int digitos = 0;
+            while (pos < b.length && b[pos] >= '0' && b[pos] <= '9') {
+                n = n * 10 + (b[pos++] - '0');
+                if (++digitos > 10) break;
+            }
+            if (negativo) n = -n;
+            if (digitos == 0 || digitos > 10 || n < Integer.MIN_VALUE || n > Integer.MAX_VALUE
+                    || (aspas && !consumir('"'))) {
+                pos = inicio;
+                throw erro("campo " + nome + " deve ser um número inteiro");
+            }
+            if (!aspas && pos < b.length && (b[pos] == '.' || b[pos] == 'e' || b[pos] == 'E')) {
+                throw erro("campo " + nome + " deve ser um número inteiro");
+            }
+            return (int) n;
+        }
+
+        private boolean lerLogico(String nome) throws JsonInvalidoException {
+            if (literal("true")) return true;
+            if (literal("false")) return false;
+            throw erro("campo " + nome + " deve ser true ou false");
+        }
+
+        /**
+         * @return The decoded string, or null for a JSON null.
+         */
+        private String lerTexto(String nome) throws JsonInvalidoException {
+            if (pos >= b.length) throw erro("valor esperado");
+            int inicio = pos;
+            if (b[pos] == '"') {
+                boolean escapado = pularString();
+                return escapado
+                    ? decodificar(inicio + 1, pos - 1)
+                    : new String(b, inicio + 1, pos - 1 - inicio - 1, StandardCharsets.UTF_8);
+            }
+            if (b[pos] == '{' || b[pos] == '[') throw erro("campo " + nome + " deve ser um texto");
+            pularValor(1);
+            // Numbers and booleans read as their literal text, null as absent
+            return b[inicio] == 'n' ? null : new String(b, inicio, pos - inicio, StandardCharsets.US_ASCII);
+        }
+
+        private List<Campos> lerLista(String nome, LeitorJson elemento, int profundidade) throws JsonInvalidoException {
+            if (!consumir('[')) throw erro("campo " + nome + " deve ser uma lista");
+            List<Campos> lista = new ArrayList<>();
+            espacos();
+            if (consumir(']')) return lista;
+            do {
+                espacos();
+                if (pos >= b.length || b[pos] != '{') throw erro("campo " + nome + " deve conter objetos");
+                lista.add(objeto(elemento, profundidade + 2));
+                espacos();
+            } while (consumir(','));
+            esperar(']');
+            return lista;
+        }
+
+        /**
+         * Skips a string starting at the opening quote, validating its escapes.
+         * @return Whether it contains escapes.
+         */
+        private boolean pularString() throws JsonInvalidoException {
+            pos++;
+            boolean escapado = false;
+            while (pos < b.length) {
+                byte c = b[pos];
+                if (c == '"') {
+                    pos++;
+                    return escapado;
+                }
+                if (c == '\\') {
+                    escapado = true;
+                    if (pos + 1 >= b.length) break;
+                    byte e = b[pos + 1];
+                    if (e == 'u') {
+                        for (int i = 2; i < 6; i++) {
+                            if (pos + i >= b.length || hex(b[pos + i]) < 0) throw erro("escape \\u inválido");
+                        }
+                        pos += 6;
+                        continue;
+                    }
+                    if ("\"\\/bfnrt".indexOf(e) < 0) throw erro("escape inválido");
+                    pos += 2;
+                    continue;
+                }
+                if (c >= 0 && c < 0x20) throw erro("caractere de controle em texto");
+                pos++;
+            }
+            throw erro("texto não terminado");
+        }
+
+        /**
+         * Decodes the UTF-8 bytes [inicio, fim) of a string that has escapes.
+         * Runs between escapes are decoded as a whole.
+         */
+        private String decodificar(int inicio, int fim) {
+            StringBuilder sb = new StringBuilder(fim - inicio);
+            int trecho = inicio;
+            int i = inicio;
+            while (i < fim) {
+                if (b[i] != '\\') {
+                    i++;
+                    continue;
+                }
+                if (i > trecho) sb.append(new String(b, trecho, i - trecho, StandardCharsets.UTF_8));
+                byte e = b[i + 1];
+                switch (e) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        sb.append((char) (hex(b[i + 2]) << 12 | hex(b[i + 3]) << 8 | hex(b[i + 4]) << 4 | hex(b[i + 5])));
+                        i += 4;
+                        break;
+                    default: sb.append((char) e); // " \ /
+                }
+                i += 2;
+                trecho = i;
+            }
+            if (fim > trecho) sb.append(new String(b, trecho, fim - trecho, StandardCharsets.UTF_8));
+            return sb.toString();
+        }
+
+        /**
+         * Skips any JSON value, validating it.
+         */
+        private void pularValor(int profundidade) throws JsonInvalidoException {
+            if (pos >= b.length) throw erro("valor esperado");
+            byte c = b[pos];
+            if (c == '"') {
+                pularString();
+            } else if (c == '{' || c == '[') {
+                if (profundidade > PROFUNDIDADE_MAXIMA) throw erro("JSON aninhado demais");
+                pos++;
+                char fecho = c == '{' ? '}' : ']';
+                espacos();
+                if (consumir(fecho)) return;
+                do {
+                    espacos();
+                    if (c == '{') {
+                        if (pos >= b.length || b[pos] != '"') throw erro("nome de campo esperado");
+                        pularString();
+                        espacos();
+                        esperar(':');
+                        espacos();
+                    }
+                    pularValor(profundidade + 1);
+                    espacos();
+                } while (consumir(','));
+                esperar(fecho);
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                pularNumero();
+            } else if (!literal("true") && !literal("false") && !literal("null")) {
+                throw erro("valor inválido");
+            }
+        }
+
+        private void pularNumero() throws JsonInvalidoException {
+            consumir('-');
+            if (digitos() == 0) throw erro("número inválido");
+            if (consumir('.') && digitos() == 0) throw erro("número inválido");
+            if (pos < b.length && (b[pos] == 'e' || b[pos] == 'E')) {
+                pos++;
+                if (!consumir('+')) consumir('-');
+                if (digitos() == 0) throw erro("número inválido");
+            }
+        }
+
+        private int digitos() {
+            int inicio = pos;
+            while (pos < b.length && b[pos] >= '0' && b[pos] <= '9') pos++;
+            return pos - inicio;
+        }
+
+        private boolean literal(String s) {
+            if (pos + s.length() > b.length) return false;
+            for (int i = 0; i < s.length(); i++) {
+                if (b[pos + i] != s.charAt(i)) return false;
+            }
+            pos += s.length();
+            return true;
+        }
+
+        void espacos() {
+            while (pos < b.length) {
+                byte c = b[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+                pos++;
+            }
+        }
+
+        private boolean consumir(char c) {
+            if (pos < b.length && b[pos] == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void esperar(char c) throws JsonInvalidoException {
+            if (!consumir(c)) throw erro("'" + c + "' esperado");
+        }
+
+        JsonInvalidoException erro(String motivo) {
+            return new JsonInvalidoException("JSON inválido na posição " + pos + ": " + motivo);
+        }
+
+        private static int hex(byte c) {
+            if (c >= '0' && c <= '9') return c - '0';
+            if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+            if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package logic.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads fixed-size records in batches: each call to carregar() fills a reusable buffer
+ * with up to 'capacidade' consecutive records using a single FileChannel read (or a single
+ * copy from the memory mapping, see Armazenamento). Records are then decoded with absolute
+ * ByteBuffer gets at offset base(i).
+ */
+public class LeitorLote {
+
+    private final FileChannel canal;
+    private final ArquivoMapeado map;
+    private final long inicio;
+    private final int tamRegistro;
+    private final ByteBuffer buffer;
+    // Records loaded by this reader, recorded into 'registrosPorLeitor' on close()
+    private long registros;
+
+    // Exported at /api/metrics
+    private static final Metricas.Contador aberturas = Metricas.contador("todolist_arquivos_abertos_total",
+        "Files opened (a memory-mapped file is opened once)", Metricas.rotulos("via", "LeitorLote"));
+    private static final Metricas.Contador bytesLidos = Metricas.contador("todolist_bytes_lidos_total",
+        "Bytes read from data and index files", Metricas.rotulos("via", "LeitorLote"));
+    private static final Metricas.Contador registrosLidos = Metricas.contador("todolist_registros_lidos_total",
+        "Records loaded by batch readers", "");
+    private static final Metricas.Histograma registrosPorLeitor = Metricas.histograma("todolist_registros_por_leitor",
+        "Records loaded per batch reader (one reader per DAO call or per scan segment)", "");
+
+    /**
+     * @param arquivo Path to the binary file.
+     * @param inicio Byte offset of slot 0 (the header size).
+     * @param tamRegistro Size of one record in bytes.
+     * @param capacidade Maximum number of records loaded per call.
+     */
+    public LeitorLote(String arquivo, long inicio, int tamRegistro, int capacidade) throws IOException {
+        this.map = Armazenamento.mapeado(arquivo);
+        this.canal = map == null ? FileChannel.open(Paths.get(arquivo), StandardOpenOption.READ) : null;
+        if (canal != null) aberturas.incrementar();
+        this.inicio = inicio;
+        this.tamRegistro = tamRegistro;
+        this.buffer = ByteBuffer.allocate(tamRegistro * capacidade);
+    }
+
+    /**
+     * Loads up to 'n' records starting at 'primeiroSlot'.
+     * @return How many complete records were loaded (fewer than 'n' at the end of the file).
+     */
+    public int carregar(long primeiroSlot, int n) throws IOException {
+        n = Math.min(n, capacidade());
+        long pos = inicio + primeiroSlot * tamRegistro;
+        int bytes = n * tamRegistro;
+        buffer.clear();
+
+        if (map != null) {
+            long disponivel = Math.max(0, map.length() - pos);
+            bytes = (int) Math.min(bytes, disponivel - disponivel % tamRegistro);
+            if (bytes > 0) map.get(pos, buffer.array(), 0, bytes);
+            buffer.limit(bytes);
+            contar(bytes, bytes / tamRegistro);
+            return bytes / tamRegistro;
+        }
+
+        buffer.limit(bytes);
+        while (buffer.hasRemaining()) {
+            int lidos = canal.read(buffer, pos + buffer.position());
+            if (lidos < 0) break;
+        }
+        int completos = buffer.position() / tamRegistro;
+        contar(buffer.position(), completos);
+        buffer.flip();
+        return completos;
+    }
+
+    private void contar(int bytes, int n) {
+        bytesLidos.somar(bytes);
+        registrosLidos.somar(n);
+        registros += n;
+    }
+
+    /**
+     * Loads exactly one record, failing if the file ends before it.
+     */
+    public void carregarUm(long slot) throws IOException {
+        if (carregar(slot, 1) != 1) throw new EOFException();
+    }
+
+    public int capacidade() {
+        return buffer.capacity() / tamRegistro;
+    }
+
+    /**
+     * Buffer holding the last loaded records; only absolute gets should be used on it.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Offset of the i-th loaded record inside the buffer.
+     */
+    public int base(int i) {
+        return i * tamRegistro;
+    }
+
+    public void close() throws IOException {
+        registrosPorLeitor.registrar(registros);
+        registros = 0;
+        if (canal != null) canal.close();
+    }
+
+    /**
+     * Decodes a fixed-length UTF-16 string written by BinOutput.writeString, trimming the padding.
+     */
+    public static String lerString(ByteBuffer b, int pos, int tam) {
+        char[] cs = new char[tam];
+        for (int i = 0; i < tam; i++) cs[i] = b.getChar(pos + i * 2);
+        return new String(cs).trim();
+    }
+}
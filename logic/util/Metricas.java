@@ -0,0 +1,209 @@
+package logic.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide counters and latency histograms, exported in the Prometheus text format
+ * (served at /api/metrics).
+ *
+ * Series are created once, when their owner class loads, and kept in static fields; recording
+ * into them only touches LongAdders, so the hot path takes no lock and allocates nothing.
+ * Histograms use one bucket per power of two (HDR-style: fixed memory, constant-time recording,
+ * relative error bounded by 2x), exported as cumulative 'le' buckets.
+ */
+public class Metricas {
+
+    // Bucket i holds values v with 2^(i-1) < v <= 2^i (bucket 0 holds 0 and 1); the last one is unbounded
+    private static final int BALDES = 40;
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Contador {
+        private final LongAdder valor = new LongAdder();
+
+        public void incrementar() {
+            valor.increment();
+        }
+
+        public void somar(long n) {
+            valor.add(n);
+        }
+
+        public long valor() {
+            return valor.sum();
+        }
+    }
+
+    /**
+     * Distribution of non-negative values (durations in nanoseconds, record counts...).
+     */
+    public static class Histograma {
+        private final LongAdder[] baldes = new LongAdder[BALDES];
+        private final LongAdder soma = new LongAdder();
+        // Exported value = recorded value / 10^casas (9 turns nanoseconds into seconds)
+        private final int casas;
+        // Buckets exported as 'le' lines (a fixed set, so every scrape has the same ones)
+        private final int primeiro;
+        private final int ultimo;
+        // 'le' of each exported bucket, exact in decimal
+        private final String[] limites = new String[BALDES];
+
+        Histograma(int casas, int primeiro, int ultimo) {
+            this.casas = casas;
+            this.primeiro = primeiro;
+            this.ultimo = ultimo;
+            for (int i = 0; i < BALDES; i++) baldes[i] = new LongAdder();
+            // Bucket i ends at 2^i
+            for (int i = primeiro; i <= ultimo; i++) {
+                limites[i] = BigDecimal.valueOf(1L << i).movePointLeft(casas).stripTrailingZeros().toPlainString();
+            }
+        }
+
+        public void registrar(long valor) {
+            if (valor < 0) valor = 0;
+            int balde = valor <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(valor - 1);
+            baldes[Math.min(BALDES - 1, balde)].increment();
+            soma.add(valor);
+        }
+
+        /**
+         * Records the time elapsed since 'inicio', a System.nanoTime() reading.
+         */
+        public void registrarDesde(long inicio) {
+            registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Series of one metric name, which share the HELP and TYPE lines.
+     */
+    private static class Familia {
+        final String tipo;
+        final String ajuda;
+        final List<String> rotulos = new ArrayList<>();
+        final List<Object> series = new ArrayList<>();
+
+        Familia(String tipo, String ajuda) {
+            this.tipo = tipo;
+            this.ajuda = ajuda;
+        }
+    }
+
+    private static final Map<String, Familia> familias = new LinkedHashMap<>();
+
+    private static synchronized void registrar(String nome, String tipo, String ajuda, String rotulos, Object serie) {
+        Familia f = familias.computeIfAbsent(nome, n -> new Familia(tipo, ajuda));
+        if (!f.tipo.equals(tipo)) throw new IllegalArgumentException("Metrica " + nome + " ja registrada como " + f.tipo);
+        f.rotulos.add(rotulos);
+        f.series.add(serie);
+    }
+
+    /**
+     * @param rotulos Label pairs of the series, e.g. rotulos("rota", "/api/login"); "" for none.
+     */
+    public static Contador contador(String nome, String ajuda, String rotulos) {
+        Contador c = new Contador();
+        registrar(nome, "counter", ajuda, rotulos, c);
+        return c;
+    }
+
+    /**
+     * A counter kept elsewhere (e.g. the hit counters of a cache), read when exporting.
+     */
+    public static void contador(String nome, String ajuda, String rotulos, LongSupplier valor) {
+        registrar(nome, "counter", ajuda, rotulos, valor);
+    }
+
+    /**
+     * A current value, read when exporting.
+     */
+    public static void medidor(String nome, String ajuda, String rotulos, LongSupplier valor) {
+        registrar(nome, "gauge", ajuda, rotulos, valor);
+    }
+
+    /**
+     * Histogram of durations recorded in nanoseconds, exported in seconds (buckets from ~1 us to ~34 s).
+     */
+    public static Histograma duracao(String nome, String ajuda, String rotulos) {
+        Histograma h = new Histograma(9, 10, 35);
+        registrar(nome, "histogram", ajuda, rotulos, h);
+        return h;
+    }
+
+    /**
+     * Histogram of counts (buckets from 1 to 2^24).
+     */
+    public static Histograma histograma(String nome, String ajuda, String rotulos) {
+        Histograma h = new Histograma(0, 0, 24);
+        registrar(nome, "histogram", ajuda, rotulos, h);
+        return h;
+    }
+
+    /**
+     * Builds a label set from name/value pairs, escaping the values.
+     */
+    public static String rotulos(String... pares) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < pares.length; i += 2) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(pares[i]).append("=\"")
+              .append(pares[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+              .append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Every series in the Prometheus text exposition format (version 0.0.4).
+     */
+    public static synchronized String exportar() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        for (Map.Entry<String, Familia> e : familias.entrySet()) {
+            String nome = e.getKey();
+            Familia f = e.getValue();
+            sb.append("# HELP ").append(nome).append(' ').append(f.ajuda).append('\n');
+            sb.append("# TYPE ").append(nome).append(' ').append(f.tipo).append('\n');
+            for (int i = 0; i < f.series.size(); i++) {
+                String rotulos = f.rotulos.get(i);
+                Object s = f.series.get(i);
+                if (s instanceof Histograma) {
+                    exportar(sb, nome, rotulos, (Histograma) s);
+                } else {
+                    long v = s instanceof Contador ? ((Contador) s).valor() : ((LongSupplier) s).getAsLong();
+                    linha(sb, nome, rotulos, null, Long.toString(v));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void exportar(StringBuilder sb, String nome, String rotulos, Histograma h) {
+        // Buckets are read one by one while others record; the count is taken from them, so it matches +Inf
+        long acumulado = 0;
+        for (int i = 0; i < BALDES - 1; i++) {
+            acumulado += h.baldes[i].sum();
+            if (h.limites[i] != null) linha(sb, nome + "_bucket", rotulos, h.limites[i], Long.toString(acumulado));
+        }
+        acumulado += h.baldes[BALDES - 1].sum();
+        linha(sb, nome + "_bucket", rotulos, "+Inf", Long.toString(acumulado));
+        linha(sb, nome + "_sum", rotulos, null, BigDecimal.valueOf(h.soma.sum()).movePointLeft(h.casas).toPlainString());
+        linha(sb, nome + "_count", rotulos, null, Long.toString(acumulado));
+    }
+
+    private static void linha(StringBuilder sb, String nome, String rotulos, String le, String valor) {
+        sb.append(nome);
+        if (!rotulos.isEmpty() || le != null) {
+            sb.append('{').append(rotulos);
+            if (le != null) sb.append(rotulos.isEmpty() ? "" : ",").append("le=\"").append(le).append('"');
+            sb.append('}');
+        }
+        sb.append(' ').append(valor).append('\n');
+    }
+}
@@ -0,0 +1,154 @@
+package logic.util;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * In-memory session table. Login issues a token: 16 random bytes and the user's id, signed
+ * with an HMAC under a key that lives only in this process (48 URL-safe characters).
+ * Resolving a token checks the signature, then looks the session up in a hash table, so a
+ * request is authenticated without touching the user file.
+ *
+ * Sessions expire after a period without use and are swept by a daemon thread; all of them
+ * end when the server restarts.
+ */
+public class Sessoes {
+
+    public static final int SEM_SESSAO = -1;
+
+    private static final int TAM_ID = 16;
+    private static final int TAM_ASSINATURA = 16;
+    // Expiry is pushed forward at most once per interval, so most requests only read it
+    private static final long RENOVACAO_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static class Sessao {
+        final int idUsuario;
+        volatile long expira;
+
+        Sessao(int idUsuario, long expira) {
+            this.idUsuario = idUsuario;
+            this.expira = expira;
+        }
+    }
+
+    private final Map<String, Sessao> sessoes = new ConcurrentHashMap<>();
+    private final SecureRandom aleatorio = new SecureRandom();
+    private final SecretKeySpec chave;
+    private final long validadeNanos;
+
+    private final Metricas.Contador recusadas = Metricas.contador("todolist_sessoes_recusadas_total",
+        "Requests with a missing, forged or expired session token", "");
+
+    /**
+     * @param minutos How long a session lives without being used.
+     */
+    public Sessoes(long minutos) {
+        byte[] k = new byte[32];
+        aleatorio.nextBytes(k);
+        chave = new SecretKeySpec(k, "HmacSHA256");
+        validadeNanos = TimeUnit.MINUTES.toNanos(minutos);
+        Metricas.medidor("todolist_sessoes_ativas", "Sessions in the session table", "", sessoes::size);
+    }
+
+    /**
+     * Opens a session for a user who just authenticated.
+     * @return Its token.
+     */
+    public String criar(int idUsuario) {
+        ByteBuffer b = ByteBuffer.allocate(TAM_ID + 4 + TAM_ASSINATURA);
+        byte[] id = new byte[TAM_ID];
+        aleatorio.nextBytes(id);
+        b.put(id).putInt(idUsuario);
+        b.put(assinar(b.array(), TAM_ID + 4));
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(b.array());
+        sessoes.put(token, new Sessao(idUsuario, System.nanoTime() + validadeNanos));
+        return token;
+    }
+
+    /**
+     * @return The user of a live session, or SEM_SESSAO if the token is missing, forged or expired.
+     */
+    public int resolver(String token) {
+        int id = verificar(token);
+        if (id == SEM_SESSAO) {
+            recusadas.incrementar();
+            return SEM_SESSAO;
+        }
+        Sessao s = sessoes.get(token);
+        long agora = System.nanoTime();
+        if (s == null || s.idUsuario != id || agora - s.expira >= 0) {
+            if (s != null) sessoes.remove(token, s);
+            recusadas.incrementar();
+            return SEM_SESSAO;
+        }
+        if (s.expira - agora < validadeNanos - RENOVACAO_NANOS) s.expira = agora + validadeNanos;
+        return id;
+    }
+
+    /**
+     * Ends a session (logout).
+     */
+    public void encerrar(String token) {
+        if (token != null) sessoes.remove(token);
+    }
+
+    /**
+     * Starts a daemon thread that drops expired sessions every minute.
+     */
+    public void iniciarLimpeza() {
+        ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sessoes");
+            t.setDaemon(true);
+            return t;
+        });
+        agendador.scheduleWithFixedDelay(this::limpar, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Drops every expired session.
+     */
+    public void limpar() {
+        long agora = System.nanoTime();
+        sessoes.values().removeIf(s -> agora - s.expira >= 0);
+    }
+
+    /**
+     * Checks a token's shape and signature.
+     * @return The user id it carries, or SEM_SESSAO.
+     */
+    private int verificar(String token) {
+        if (token == null) return SEM_SESSAO;
+        byte[] b;
+        try {
+            b = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return SEM_SESSAO;
+        }
+        if (b.length != TAM_ID + 4 + TAM_ASSINATURA) return SEM_SESSAO;
+        byte[] assinatura = Arrays.copyOfRange(b, TAM_ID + 4, b.length);
+        if (!MessageDigest.isEqual(assinar(b, TAM_ID + 4), assinatura)) return SEM_SESSAO;
+        return ByteBuffer.wrap(b).getInt(TAM_ID);
+    }
+
+    private byte[] assinar(byte[] dados, int n) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(chave);
+            mac.update(dados, 0, n);
+            return Arrays.copyOf(mac.doFinal(), TAM_ASSINATURA);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e); // Every JDK ships HmacSHA256
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package logic.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Parallel full scan of fixed-size record files. The slots of every file are cut into
+ * record-aligned segments of SEGMENTO records, which a fork-join pool reads concurrently,
+ * each segment through its own LeitorLote (its own channel, or its own copy out of the
+ * memory mapping). Every segment folds its records into a fresh accumulator; accumulators
+ * are then joined in file order, so order-sensitive results (filtrar) come out as a
+ * sequential scan would produce them.
+ *
+ * Scans take no lock, like the DAOs' other reads: a record written meanwhile may or may not be seen.
+ * Pool size: -Dtodolist.varredura.paralelismo (default: number of cores).
+ */
+public class Varredura {
+
+    // Records per segment (~750 KB of tasks), the unit of parallel work
+    private static final int SEGMENTO = 16384;
+    // Records per read inside a segment
+    private static final int LOTE = 4096;
+
+    private static final ForkJoinPool pool = new ForkJoinPool(
+        Integer.getInteger("todolist.varredura.paralelismo", Runtime.getRuntime().availableProcessors()));
+
+    private static final Metricas.Histograma registrosPorVarredura = Metricas.histograma("todolist_registros_por_varredura",
+        "Record slots read per full scan", "");
+
+    /**
+     * The first 'total' slots of a data file.
+     */
+    public static class Fonte {
+        final String arquivo;
+        final long inicio;
+        final int tamRegistro;
+        final int total;
+
+        /**
+         * @param inicio Byte offset of slot 0 (the header size).
+         */
+        public Fonte(String arquivo, long inicio, int tamRegistro, int total) {
+            this.arquivo = arquivo;
+            this.inicio = inicio;
+            this.tamRegistro = tamRegistro;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Folds the record at 'base' of 'b' into an accumulator.
+     */
+    public interface Visita<A> {
+        void registro(A acumulador, ByteBuffer b, int base) throws IOException;
+    }
+
+    public interface Filtro {
+        boolean aceita(ByteBuffer b, int base) throws IOException;
+    }
+
+    public interface Chave {
+        int de(ByteBuffer b, int base) throws IOException;
+    }
+
+    public interface Decodificador<T> {
+        T ler(ByteBuffer b, int base) throws IOException;
+    }
+
+    private static class Segmento {
+        final Fonte fonte;
+        final int primeiro;
+        final int n;
+
+        Segmento(Fonte fonte, int primeiro, int n) {
+            this.fonte = fonte;
+            this.primeiro = primeiro;
+            this.n = n;
+        }
+    }
+
+    /**
+     * Scans every slot of the sources in parallel.
+     * @param novo Creates the (empty) accumulator of a segment.
+     * @param juntar Joins the accumulators of two consecutive runs of segments, left first.
+     * @return The accumulator of the whole scan.
+     */
+    public static <A> A executar(List<Fonte> fontes, Supplier<A> novo, Visita<A> visita, BinaryOperator<A> juntar)
+            throws IOException {
+        List<Segmento> segmentos = new ArrayList<>();
+        long registros = 0;
+        for (Fonte f : fontes) {
+            registros += f.total;
+            for (int s = 0; s < f.total; s += SEGMENTO) segmentos.add(new Segmento(f, s, Math.min(SEGMENTO, f.total - s)));
+        }
+        registrosPorVarredura.registrar(registros);
+        if (segmentos.isEmpty()) return novo.get();
+        try {
+            return pool.invoke(new Trabalho<>(segmentos, 0, segmentos.size(), novo, visita, juntar));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits a run of segments in halves down to a single segment, which it reads.
+     */
+    private static class Trabalho<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Segmento> segmentos;
+        private final int de;
+        private final int ate;
+        private final Supplier<A> novo;
+        private final Visita<A> visita;
+        private final BinaryOperator<A> juntar;
+
+        Trabalho(List<Segmento> segmentos, int de, int ate, Supplier<A> novo, Visita<A> visita, BinaryOperator<A> juntar) {
+            this.segmentos = segmentos;
+            this.de = de;
+            this.ate = ate;
+            this.novo = novo;
+            this.visita = visita;
+            this.juntar = juntar;
+        }
+
+        @Override
+        protected A compute() {
+            if (ate - de == 1) {
+                try {
+                    return ler(segmentos.get(de));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int meio = (de + ate) >>> 1;
+            Trabalho<A> esquerda = new Trabalho<>(segmentos, de, meio, novo, visita, juntar);
+            esquerda.fork();
+            A direita = new Trabalho<>(segmentos, meio, ate, novo, visita, juntar).compute();
+            return juntar.apply(esquerda.join(), direita);
+        }
+
+        private A ler(Segmento s) throws IOException {
+            A acumulador = novo.get();
+            LeitorLote lote = new LeitorLote(s.fonte.arquivo, s.fonte.inicio, s.fonte.tamRegistro, Math.min(LOTE, s.n));
+            ByteBuffer b = lote.buffer();
+            try {
+                for (int i = 0; i < s.n; ) {
+                    int n = lote.carregar(s.primeiro + i, Math.min(LOTE, s.n - i));
+                    if (n == 0) break;
+                    for (int k = 0; k < n; k++) visita.registro(acumulador, b, lote.base(k));
+                    i += n;
+                }
+            } finally {
+                lote.close();
+            }
+            return acumulador;
+        }
+    }
+
+    /**
+     * Number of records that pass 'filtro'.
+     */
+    public static long contar(List<Fonte> fontes, Filtro filtro) throws IOException {
+        long[] total = executar(fontes, () -> new long[1],
+            (n, b, base) -> { if (filtro.aceita(b, base)) n[0]++; },
+            (a, c) -> { a[0] += c[0]; return a; });
+        return total[0];
+    }
+
+    /**
+     * Number of records that pass 'filtro', grouped by a key (e.g. the owner's id).
+     */
+    public static HashMap<Integer, Long> contarPor(List<Fonte> fontes, Filtro filtro, Chave chave) throws IOException {
+        return executar(fontes, HashMap<Integer, Long>::new,
+            (m, b, base) -> { if (filtro.aceita(b, base)) m.merge(chave.de(b, base), 1L, Long::sum); },
+            (a, c) -> {
+                if (a.size() < c.size()) {
+                    HashMap<Integer, Long> t = a;
+                    a = c;
+                    c = t;
+                }
+                for (Map.Entry<Integer, Long> e : c.entrySet()) a.merge(e.getKey(), e.getValue(), Long::sum);
+                return a;
+            });
+    }
+
+    /**
+     * Decodes the records that pass 'filtro', in file order.
+     */
+    public static <T> List<T> filtrar(List<Fonte> fontes, Filtro filtro, Decodificador<T> decodificador)
+            throws IOException {
+        return executar(fontes, ArrayList::new,
+            (l, b, base) -> { if (filtro.aceita(b, base)) l.add(decodificador.ler(b, base)); },
+            (a, c) -> {
+                a.addAll(c);
+                return a;
+            });
+    }
+}
@@ -3,6 +3,7 @@ const API = 'http://localhost:8080/api';
 let usuarioAtual = null;
 let todasTarefas = [];
 let filtroAtual  = 'todas';
+let versaoAtual  = 0; // Cursor of /tarefas/changes; 0 loads everything
 
 document.querySelectorAll('.tab').forEach(tab => {
     tab.addEventListener('click', () => {
@@ -57,24 +58,40 @@ async function fazerCadastro() {
 }
 
 function fazerLogout() {
+    if (usuarioAtual) post('/logout', {}).catch(() => {});
     usuarioAtual = null;
     todasTarefas = [];
+    versaoAtual  = 0;
     irParaTela('auth-screen');
     document.getElementById('login-email').value = '';
     document.getElementById('login-senha').value = '';
 }
 
 async function entrarNoApp() {
+    versaoAtual = 0;
     document.getElementById('user-greeting').textContent = `olá, ${usuarioAtual.nome}`;
     await carregarTarefas();
     irParaTela('app-screen');
 }
 
+// Fetches only what changed since the last call and merges it into todasTarefas
 async function carregarTarefas() {
     try {
-        const res  = await fetch(`${API}/tarefas?idUsuario=${usuarioAtual.id}`);
+        const res  = await get(`/tarefas/changes?since=${versaoAtual}`);
+        if (res.status === 401) { fazerLogout(); return; }
         const data = await res.json();
-        todasTarefas = data.filter(t => t.ativo);
+        if (data.completo) {
+            todasTarefas = data.tarefas.filter(t => t.ativo);
+        } else {
+            const removidas = new Set(data.removidas);
+            const alteradas = new Map(data.tarefas.map(t => [t.id, t]));
+            todasTarefas = todasTarefas
+                .filter(t => !removidas.has(t.id))
+                .map(t => alteradas.get(t.id) || t);
+            const conhecidas = new Set(todasTarefas.map(t => t.id));
+            data.tarefas.forEach(t => { if (!conhecidas.has(t.id)) todasTarefas.push(t); });
+        }
+        versaoAtual = data.versao;
         renderTarefas();
     } catch (e) {
         console.error('Erro ao carregar tarefas', e);
@@ -90,7 +107,7 @@ async function adicionarTarefa() {
     if (!descricao) { alert('escreva uma descrição.'); return; }
 
     try {
-        const res = await post('/tarefas', { idUsuario: usuarioAtual.id, descricao, dia, mes, ano });
+        const res = await post('/tarefas', { descricao, dia, mes, ano });
         if (res.ok) {
             document.getElementById('nova-desc').value = '';
             document.getElementById('nova-dia').value  = '';
@@ -198,10 +215,21 @@ function renderTarefas() {
     });
 }
 
+// Requests carry the session token from login; the server takes the user from it
+function cabecalhos() {
+    const h = { 'Content-Type': 'application/json' };
+    if (usuarioAtual) h['Authorization'] = 'Bearer ' + usuarioAtual.token;
+    return h;
+}
+
+function get(path) {
+    return fetch(API + path, { headers: cabecalhos() });
+}
+
 function post(path, body) {
     return fetch(API + path, {
         method:  'POST',
-        headers: { 'Content-Type': 'application/json' },
+        headers: cabecalhos(),
         body:    JSON.stringify(body)
     });
 }